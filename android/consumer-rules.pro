@@ -0,0 +1,4 @@
+# PrintResultCallbacks must keep its name in android.print to reach the hidden constructors
+# of the print adapter result callbacks; renaming or repackaging it breaks print mode.
+-keep class android.print.PrintResultCallbacks { *; }
+-keep class android.print.PrintResultCallbacks$* { *; }
@@ -0,0 +1,93 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import static org.junit.Assert.*;
+
+import android.content.Context;
+import android.graphics.Paint;
+import android.graphics.pdf.PdfDocument;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Instrumented test, PdfDocument only records pages on a device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class IncrementalPageSinkTest {
+
+    private File pageDir;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        pageDir = IncrementalPageSink.pageDir(context.getCacheDir(), "IncrementalPageSinkTest");
+        IncrementalPageSink.deleteDirectory(pageDir);
+    }
+
+    @After
+    public void tearDown() {
+        IncrementalPageSink.deleteDirectory(pageDir);
+    }
+
+    private IncrementalPageSink export(String... labels) {
+        // Runs the chunk writes inline, so writeTo may follow the last finishPage directly
+        IncrementalPageSink sink = new IncrementalPageSink(pageDir, Runnable::run, new MemoryWatermark(), null);
+        Paint paint = new Paint();
+        for (int i = 0; i < labels.length; i++) {
+            PdfDocument.Page page = sink.startPage(new PdfDocument.PageInfo.Builder(200, 200, i + 1).create());
+            page.getCanvas().drawText(labels[i], 20, 100, paint);
+            sink.finishPage(page, () -> { });
+        }
+        return sink;
+    }
+
+    private static byte[] write(IncrementalPageSink sink) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long bytes = sink.writeTo(out, new StageTimer());
+        assertEquals(out.size(), bytes);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void writesTwiceUntilClosed() throws IOException {
+        IncrementalPageSink sink = export("first", "second");
+        byte[] first = write(sink);
+        byte[] second = write(sink);
+        assertTrue(first.length > 0);
+        assertTrue(Arrays.equals(first, second));
+
+        // Claimed chunks keep the directory from being deleted
+        assertFalse(IncrementalPageSink.deleteDirectory(pageDir));
+        sink.close();
+        try {
+            write(sink);
+            fail("writeTo after close");
+        } catch (IOException expected) {
+            // released
+        }
+        assertTrue(IncrementalPageSink.deleteDirectory(pageDir));
+    }
+
+    @Test
+    public void otherExportDoesNotPruneUnclosedChunks() throws IOException {
+        IncrementalPageSink streamed = export("first", "second");
+        byte[] before = write(streamed);
+
+        // A later export of the same document with different pages prunes between two reads
+        IncrementalPageSink later = export("changed");
+        write(later);
+        later.close();
+
+        assertTrue(Arrays.equals(before, write(streamed)));
+        streamed.close();
+    }
+}
@@ -0,0 +1,63 @@
+package android.print;
+
+/**
+ * Factories for the print adapter result callbacks.
+ *
+ * Their constructors are public at runtime but hidden from the SDK, so the only way to
+ * drive a {@link PrintDocumentAdapter} without the system print UI is from this package.
+ */
+public final class PrintResultCallbacks {
+
+    public interface LayoutListener {
+        void onLayoutFinished(PrintDocumentInfo info, boolean changed);
+
+        void onLayoutFailed(CharSequence error);
+    }
+
+    public interface WriteListener {
+        void onWriteFinished(PageRange[] pages);
+
+        void onWriteFailed(CharSequence error);
+    }
+
+    private PrintResultCallbacks() {
+    }
+
+    public static PrintDocumentAdapter.LayoutResultCallback layout(LayoutListener listener) {
+        return new PrintDocumentAdapter.LayoutResultCallback() {
+            @Override
+            public void onLayoutFinished(PrintDocumentInfo info, boolean changed) {
+                listener.onLayoutFinished(info, changed);
+            }
+
+            @Override
+            public void onLayoutFailed(CharSequence error) {
+                listener.onLayoutFailed(error);
+            }
+
+            @Override
+            public void onLayoutCancelled() {
+                listener.onLayoutFailed("Layout cancelled");
+            }
+        };
+    }
+
+    public static PrintDocumentAdapter.WriteResultCallback write(WriteListener listener) {
+        return new PrintDocumentAdapter.WriteResultCallback() {
+            @Override
+            public void onWriteFinished(PageRange[] pages) {
+                listener.onWriteFinished(pages);
+            }
+
+            @Override
+            public void onWriteFailed(CharSequence error) {
+                listener.onWriteFailed(error);
+            }
+
+            @Override
+            public void onWriteCancelled() {
+                listener.onWriteFailed("Write cancelled");
+            }
+        };
+    }
+}
@@ -0,0 +1,69 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * {@link PdfImageOptimizer.ImageEncoder} backed by Android bitmaps
+ */
+public class BitmapImageEncoder implements PdfImageOptimizer.ImageEncoder {
+
+    @Override
+    public byte[] encodeJpeg(PdfImageOptimizer.Image image, int targetWidth, int targetHeight, int quality) throws IOException {
+        Bitmap source = image.jpeg != null ? decodeJpeg(image, targetWidth, targetHeight) : fromSamples(image);
+        if (source == null) {
+            return null;
+        }
+
+        Bitmap scaled = source;
+        if (source.getWidth() != targetWidth || source.getHeight() != targetHeight) {
+            scaled = Bitmap.createScaledBitmap(source, targetWidth, targetHeight, true);
+            source.recycle();
+        }
+
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (!scaled.compress(Bitmap.CompressFormat.JPEG, quality, out)) {
+                throw new IOException("JPEG encoding failed");
+            }
+            return out.toByteArray();
+        } finally {
+            scaled.recycle();
+        }
+    }
+
+    /**
+     * Decode with the largest power-of-two subsampling that stays above the target size
+     */
+    private static Bitmap decodeJpeg(PdfImageOptimizer.Image image, int targetWidth, int targetHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = 1;
+        while (image.width / (options.inSampleSize * 2) >= targetWidth
+                && image.height / (options.inSampleSize * 2) >= targetHeight) {
+            options.inSampleSize *= 2;
+        }
+        return BitmapFactory.decodeByteArray(image.jpeg, 0, image.jpeg.length, options);
+    }
+
+    private static Bitmap fromSamples(PdfImageOptimizer.Image image) {
+        int[] pixels = new int[image.width * image.height];
+        byte[] samples = image.samples;
+        for (int i = 0, s = 0; i < pixels.length; i++) {
+            int r;
+            int g;
+            int b;
+            if (image.components == 3) {
+                r = samples[s++] & 0xFF;
+                g = samples[s++] & 0xFF;
+                b = samples[s++] & 0xFF;
+            } else {
+                r = g = b = samples[s++] & 0xFF;
+            }
+            pixels[i] = 0xFF000000 | (r << 16) | (g << 8) | b;
+        }
+        return Bitmap.createBitmap(pixels, image.width, image.height, Bitmap.Config.ARGB_8888);
+    }
+}
@@ -0,0 +1,79 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+import java.util.ArrayDeque;
+
+/**
+ * Reusable square tile bitmaps for raster capture.
+ *
+ * The pool lives as long as the plugin, so after the first raster export tiles are recycled
+ * instead of allocated. At most {@code maxSize} idle tiles are kept; tiles released beyond
+ * that are recycled immediately.
+ *
+ * All methods must be called on the main thread.
+ */
+public class BitmapPool {
+
+    public static final class Tile {
+        public final Bitmap bitmap;
+        public final Canvas canvas;
+
+        Tile(Bitmap bitmap) {
+            this.bitmap = bitmap;
+            this.canvas = new Canvas(bitmap);
+        }
+    }
+
+    public final int tileSize;
+    public final int maxSize;
+
+    private final ArrayDeque<Tile> idle = new ArrayDeque<>();
+    private long allocations;
+    private long reuses;
+
+    public BitmapPool(int tileSize, int maxSize) {
+        this.tileSize = Math.max(64, tileSize);
+        this.maxSize = Math.max(1, maxSize);
+    }
+
+    public Tile acquire() {
+        Tile tile = idle.poll();
+        if (tile != null) {
+            reuses++;
+            return tile;
+        }
+        allocations++;
+        return new Tile(Bitmap.createBitmap(tileSize, tileSize, Bitmap.Config.ARGB_8888));
+    }
+
+    public void release(Tile tile) {
+        if (idle.size() < maxSize) {
+            idle.push(tile);
+        } else {
+            tile.bitmap.recycle();
+        }
+    }
+
+    /**
+     * Bitmaps created since the pool was made
+     */
+    public long getAllocations() {
+        return allocations;
+    }
+
+    /**
+     * Tiles served from the pool since it was made
+     */
+    public long getReuses() {
+        return reuses;
+    }
+
+    public void clear() {
+        for (Tile tile : idle) {
+            tile.bitmap.recycle();
+        }
+        idle.clear();
+    }
+}
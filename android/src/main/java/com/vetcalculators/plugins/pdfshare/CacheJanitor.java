@@ -0,0 +1,260 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Background cleanup of the PDFs this plugin writes into the cache dir, and of the page
+ * directories of incremental exports ({@link IncrementalPageSink#DIR}).
+ *
+ * Generated files are registered in a small index (persisted next to them), so a sweep
+ * only looks at the files it knows about instead of listing the whole cache dir. Sweeps
+ * run on their own low-priority thread, at most once per interval, and enforce a maximum
+ * age, total size and file count, deleting the oldest files first. A page directory counts
+ * as one file of its total size, last modified by the export that tracked it.
+ */
+public class CacheJanitor {
+    private static final String TAG = "CacheJanitor";
+    private static final String INDEX_NAME = "pdfshare-index";
+
+    // Size and count limits never delete files this young, they may still be shared
+    private static final long MIN_AGE_MS = 60 * 1000;
+
+    public static class Limits {
+        public final long maxAgeMillis;
+        public final long maxTotalBytes;
+        public final int maxFileCount;
+        public final long intervalMillis;
+
+        public Limits(long maxAgeMillis, long maxTotalBytes, int maxFileCount, long intervalMillis) {
+            this.maxAgeMillis = maxAgeMillis;
+            this.maxTotalBytes = maxTotalBytes;
+            this.maxFileCount = maxFileCount;
+            this.intervalMillis = intervalMillis;
+        }
+    }
+
+    private static final class Tracked {
+        final long bytes;
+        final long modified;
+
+        Tracked(long bytes, long modified) {
+            this.bytes = bytes;
+            this.modified = modified;
+        }
+    }
+
+    private final File dir;
+    private final File indexFile;
+    private final Limits limits;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "PdfShare-janitor");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    // File name -> size and mtime, oldest first; guarded by this
+    private final LinkedHashMap<String, Tracked> index = new LinkedHashMap<>();
+    private boolean indexLoaded;
+
+    // Separate from the index lock so scheduling never waits for a running sweep
+    private final Object scheduleLock = new Object();
+    private long lastSweep = -1;
+
+    public CacheJanitor(File dir, Limits limits) {
+        this.dir = dir;
+        this.indexFile = new File(dir, INDEX_NAME);
+        this.limits = limits;
+    }
+
+    /**
+     * Register a file written by the plugin, or a page directory after an export used it
+     */
+    public void track(File file) {
+        boolean directory = file.isDirectory();
+        long bytes = directory ? directorySize(file) : file.length();
+        long modified = directory ? System.currentTimeMillis() : file.lastModified();
+        String name = dir.equals(file.getParentFile())
+            ? file.getName() : file.getParentFile().getName() + "/" + file.getName();
+        executor.execute(() -> {
+            synchronized (this) {
+                loadIndex();
+                index.remove(name);
+                index.put(name, new Tracked(bytes, modified));
+                saveIndex();
+            }
+        });
+    }
+
+    private static long directorySize(File directory) {
+        long bytes = 0;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                bytes += file.length();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Delete a tracked file; page directories in use by an export are kept
+     */
+    private static boolean remove(File file) {
+        return file.isDirectory() ? IncrementalPageSink.deleteDirectory(file) : file.delete();
+    }
+
+    /**
+     * Schedule a sweep unless one ran within the configured interval
+     */
+    public void requestCleanup() {
+        synchronized (scheduleLock) {
+            long now = SystemClock.elapsedRealtime();
+            if (lastSweep >= 0 && now - lastSweep < limits.intervalMillis) {
+                return;
+            }
+            lastSweep = now;
+        }
+        executor.execute(this::sweep);
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Enforce the limits now on the calling thread; package-private for the benchmarks
+     */
+    synchronized void sweep() {
+        try {
+            loadIndex();
+            long now = System.currentTimeMillis();
+            int deleted = 0;
+            long totalBytes = 0;
+
+            // Drop vanished files and everything past the maximum age
+            Iterator<Map.Entry<String, Tracked>> it = index.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Tracked> entry = it.next();
+                File file = new File(dir, entry.getKey());
+                if (!file.exists()) {
+                    it.remove();
+                } else if (now - entry.getValue().modified > limits.maxAgeMillis) {
+                    // A page directory still in use is tracked again when its export finishes
+                    if (remove(file)) {
+                        deleted++;
+                    }
+                    it.remove();
+                } else {
+                    totalBytes += entry.getValue().bytes;
+                }
+            }
+
+            // Then the oldest files until the count and size budgets are met
+            it = index.entrySet().iterator();
+            while ((index.size() > limits.maxFileCount || totalBytes > limits.maxTotalBytes) && it.hasNext()) {
+                Map.Entry<String, Tracked> entry = it.next();
+                if (now - entry.getValue().modified < MIN_AGE_MS) {
+                    break;
+                }
+                if (remove(new File(dir, entry.getKey()))) {
+                    deleted++;
+                }
+                totalBytes -= entry.getValue().bytes;
+                it.remove();
+            }
+
+            saveIndex();
+            if (deleted > 0) {
+                Log.d(TAG, "Cleaned up " + deleted + " old PDF files and page directories");
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Error cleaning up old files", e);
+        }
+    }
+
+    /**
+     * Load the index once; without one, adopt the PDFs already in the directory
+     */
+    private void loadIndex() {
+        if (indexLoaded) {
+            return;
+        }
+        indexLoaded = true;
+
+        List<String[]> rows = new ArrayList<>();
+        if (indexFile.isFile()) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(indexFile))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] row = line.split("\t");
+                    if (row.length == 3) {
+                        rows.add(row);
+                    }
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Unreadable cache index, rebuilding", e);
+                rows.clear();
+            }
+        }
+
+        if (rows.isEmpty()) {
+            // One-time scan for files written before the index existed
+            File[] files = dir.listFiles((d, name) -> name.endsWith(".pdf"));
+            if (files != null) {
+                for (File file : files) {
+                    rows.add(new String[] { file.getName(), Long.toString(file.length()), Long.toString(file.lastModified()) });
+                }
+            }
+            File[] pageDirs = new File(dir, IncrementalPageSink.DIR).listFiles(File::isDirectory);
+            if (pageDirs != null) {
+                for (File pageDir : pageDirs) {
+                    rows.add(new String[] { IncrementalPageSink.DIR + "/" + pageDir.getName(),
+                        Long.toString(directorySize(pageDir)), Long.toString(pageDir.lastModified()) });
+                }
+            }
+        }
+
+        rows.sort((a, b) -> Long.compare(parseLong(a[2]), parseLong(b[2])));
+        for (String[] row : rows) {
+            index.put(row[0], new Tracked(parseLong(row[1]), parseLong(row[2])));
+        }
+    }
+
+    private void saveIndex() {
+        File tmp = new File(dir, INDEX_NAME + ".tmp");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(tmp))) {
+            for (Map.Entry<String, Tracked> entry : index.entrySet()) {
+                writer.write(entry.getKey() + "\t" + entry.getValue().bytes + "\t" + entry.getValue().modified + "\n");
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not save cache index", e);
+            return;
+        }
+        if (!tmp.renameTo(indexFile)) {
+            Log.w(TAG, "Could not replace cache index");
+        }
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Hands the app's WebView to one capture at a time.
+ *
+ * Jobs are started in submission order. A job holds the WebView from its start until it is
+ * released, which the plugin does once the capture is done (the styles are restored and the
+ * scroll position is back) or the job failed. Encoding and writing of released jobs carry on
+ * in the background while the next job captures.
+ *
+ * Jobs that are still queued can be looked up by their coalescing key, so an identical
+ * request can share their result instead of capturing the same page again.
+ *
+ * All methods must be called on the main thread.
+ */
+public class CaptureScheduler {
+
+    private static class Entry {
+        final PdfJob job;
+        final Runnable start;
+
+        Entry(PdfJob job, Runnable start) {
+            this.job = job;
+            this.start = start;
+        }
+    }
+
+    private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+    private PdfJob active;
+
+    /**
+     * Run {@code start} once every job submitted before {@code job} has been released
+     */
+    public void submit(PdfJob job, Runnable start) {
+        queue.add(new Entry(job, start));
+        startNext();
+    }
+
+    /**
+     * A queued job that has not started yet with the given coalescing key, or null
+     */
+    public PdfJob findQueued(String coalesceKey) {
+        for (Entry entry : queue) {
+            if (coalesceKey.equals(entry.job.coalesceKey)) {
+                return entry.job;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Give the WebView back, or drop the job if it has not started yet; safe to call more than once
+     */
+    public void release(PdfJob job) {
+        if (active == job) {
+            active = null;
+            startNext();
+            return;
+        }
+        Iterator<Entry> it = queue.iterator();
+        while (it.hasNext()) {
+            if (it.next().job == job) {
+                it.remove();
+                return;
+            }
+        }
+    }
+
+    public int getQueueLength() {
+        return queue.size();
+    }
+
+    private void startNext() {
+        // A start that releases synchronously (e.g. a cache hit) starts the next job itself
+        while (active == null && !queue.isEmpty()) {
+            Entry entry = queue.poll();
+            active = entry.job;
+            entry.start.run();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream that counts bytes and the time spent in the underlying stream,
+ * so the PDF serialization cost can be separated from the disk write cost.
+ */
+public class CountingOutputStream extends FilterOutputStream {
+    private long bytesWritten;
+    private long ioNanos;
+
+    public CountingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        long start = System.nanoTime();
+        out.write(b);
+        ioNanos += System.nanoTime() - start;
+        bytesWritten++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        long start = System.nanoTime();
+        out.write(b, off, len);
+        ioNanos += System.nanoTime() - start;
+        bytesWritten += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        long start = System.nanoTime();
+        out.flush();
+        ioNanos += System.nanoTime() - start;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getIoMillis() {
+        return ioNanos / 1000000L;
+    }
+}
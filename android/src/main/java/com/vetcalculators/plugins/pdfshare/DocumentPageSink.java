@@ -0,0 +1,51 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import android.graphics.pdf.PdfDocument;
+import android.os.SystemClock;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Collects all pages in a single in-memory PdfDocument and serializes it at the end
+ */
+public class DocumentPageSink implements PdfPageSink {
+    private final PdfDocument document = new PdfDocument();
+    private boolean closed;
+
+    @Override
+    public PdfDocument.Page startPage(PdfDocument.PageInfo pageInfo) {
+        return document.startPage(pageInfo);
+    }
+
+    @Override
+    public void finishPage(PdfDocument.Page page, Runnable onReady) {
+        document.finishPage(page);
+        onReady.run();
+    }
+
+    @Override
+    public synchronized long writeTo(OutputStream output, StageTimer timer) throws IOException {
+        if (closed) {
+            throw new IOException("Document already released");
+        }
+        long writeStart = SystemClock.elapsedRealtime();
+        CountingOutputStream out = new CountingOutputStream(output);
+        document.writeTo(out);
+        out.flush();
+
+        // Split the stage into PDF serialization and the time spent in I/O
+        long ioMillis = out.getIoMillis();
+        timer.record("encode", Math.max(0, SystemClock.elapsedRealtime() - writeStart - ioMillis));
+        timer.record("write", ioMillis);
+        return out.getBytesWritten();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            document.close();
+        }
+    }
+}
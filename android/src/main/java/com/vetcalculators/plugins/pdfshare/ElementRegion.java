@@ -0,0 +1,60 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import android.graphics.RectF;
+import android.util.Log;
+import android.webkit.WebView;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Locates the element to capture in WebView content pixels with one script call.
+ *
+ * The bounding rect is taken in document coordinates and scaled by the device pixel ratio,
+ * which is what {@link WebView#draw} uses at the default zoom. The height covers the
+ * element's full scroll height, not just the part laid out on screen.
+ *
+ * All methods must be called on the main thread.
+ */
+public class ElementRegion {
+    private static final String TAG = "ElementRegion";
+
+    public interface Callback {
+        /**
+         * @param region element bounds in content pixels, null if the element does not exist
+         */
+        void onMeasured(RectF region);
+    }
+
+    private static final String MEASURE_JS =
+        "(function (id) {\n" +
+        "  var el = document.getElementById(id);\n" +
+        "  if (!el) { return null; }\n" +
+        "  var r = el.getBoundingClientRect();\n" +
+        "  var dpr = window.devicePixelRatio || 1;\n" +
+        "  return {\n" +
+        "    left: (r.left + window.scrollX) * dpr,\n" +
+        "    top: (r.top + window.scrollY) * dpr,\n" +
+        "    width: r.width * dpr,\n" +
+        "    height: Math.max(r.height, el.scrollHeight) * dpr\n" +
+        "  };\n" +
+        "})";
+
+    public static void measure(WebView webView, String elementId, Callback callback) {
+        webView.evaluateJavascript(MEASURE_JS + "(" + JSONObject.quote(elementId) + ")", result -> {
+            RectF region = null;
+            if (result != null && !"null".equals(result)) {
+                try {
+                    JSONObject rect = new JSONObject(result);
+                    float left = (float) rect.getDouble("left");
+                    float top = (float) rect.getDouble("top");
+                    region = new RectF(left, top,
+                        left + (float) rect.getDouble("width"), top + (float) rect.getDouble("height"));
+                } catch (JSONException e) {
+                    Log.w(TAG, "Unexpected element bounds: " + result, e);
+                }
+            }
+            callback.onMeasured(region);
+        });
+    }
+}
@@ -0,0 +1,283 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import android.graphics.pdf.PdfDocument;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Serializes only the pages whose content changed since the last export of the same document.
+ *
+ * Pages are kept as single-page chunk files in a per-document directory, named by a SHA-256
+ * of their exact content. Raster pages are named by their {@link PageFingerprinter}
+ * fingerprint, so a page whose chunk already exists is dropped without being serialized.
+ * Vector pages have no pixels to fingerprint; they are serialized and named by a digest of
+ * the bytes, so an unchanged page reuses its chunk but is still encoded. Reuse does not
+ * depend on the page number, so unchanged pages after an inserted one are still found.
+ *
+ * After the chunks are concatenated in page order, chunks that neither this export nor
+ * another unclosed export of the same directory uses are deleted, so the directory holds the
+ * pages of the latest export only. An export keeps its chunks until {@link #close}, so it can
+ * be written more than once (a streamed share serializes it per reader). Whole directories are aged out through the
+ * {@link CacheJanitor}, which goes through {@link #deleteDirectory}.
+ */
+public class IncrementalPageSink implements PdfPageSink {
+    private static final String TAG = "IncrementalPageSink";
+
+    public static final String DIR = "pdfshare-pages";
+
+    // Chunk writes, merges, pruning and directory deletion of all documents
+    private static final Object CHUNK_LOCK = new Object();
+    // Unclosed exports by directory, guarded by CHUNK_LOCK
+    private static final Map<File, List<IncrementalPageSink>> ACTIVE = new HashMap<>();
+
+    private final File pageDir;
+    private final Executor executor;
+    private final MemoryWatermark watermark;
+    private final PageFingerprinter fingerprinter;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private PdfDocument currentChunk;
+
+    // Chunk files in page order, appended by the executor; writeTo reads them after the last onReady
+    private final List<File> chunks = new ArrayList<>();
+    // Names of the chunks, guarded by CHUNK_LOCK; pruning by other exports leaves them alone
+    private final Set<String> claimed = new HashSet<>();
+    private long encodeMillis;
+    private int reusedPages;
+    private IOException failure;
+    private boolean closed;
+
+    /**
+     * @param executor serial executor, chunks are appended in the order pages are finished
+     * @param fingerprinter fingerprints raster pages as they are captured, read in
+     *                      {@link #finishPage}; null to digest the serialized pages instead
+     */
+    public IncrementalPageSink(File pageDir, Executor executor, MemoryWatermark watermark, PageFingerprinter fingerprinter) {
+        this.pageDir = pageDir;
+        this.executor = executor;
+        this.watermark = watermark;
+        this.fingerprinter = fingerprinter;
+        synchronized (CHUNK_LOCK) {
+            List<IncrementalPageSink> active = ACTIVE.get(pageDir);
+            if (active == null) {
+                active = new ArrayList<>();
+                ACTIVE.put(pageDir, active);
+            }
+            active.add(this);
+        }
+    }
+
+    /**
+     * Page directory of a documentKey under {@code cacheDir}, named by a digest of the key
+     */
+    public static File pageDir(File cacheDir, String documentKey) {
+        byte[] hash = PageFingerprinter.newDigest().digest(documentKey.getBytes(StandardCharsets.UTF_8));
+        return new File(new File(cacheDir, DIR), PageFingerprinter.hex(hash).substring(0, 32));
+    }
+
+    @Override
+    public PdfDocument.Page startPage(PdfDocument.PageInfo pageInfo) {
+        currentChunk = new PdfDocument();
+        return currentChunk.startPage(pageInfo);
+    }
+
+    @Override
+    public void finishPage(PdfDocument.Page page, Runnable onReady) {
+        PdfDocument chunk = currentChunk;
+        currentChunk = null;
+        chunk.finishPage(page);
+        String fingerprint = fingerprinter != null ? fingerprinter.getLastFingerprint() : null;
+
+        executor.execute(() -> {
+            long start = SystemClock.elapsedRealtime();
+            try {
+                if (failure == null) {
+                    if (fingerprint != null) {
+                        storeFingerprinted(chunk, fingerprint);
+                    } else {
+                        storeSerialized(chunk);
+                    }
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "❌ Error writing page chunk", e);
+                failure = e;
+            } finally {
+                chunk.close();
+                encodeMillis += SystemClock.elapsedRealtime() - start;
+                watermark.sample();
+                mainHandler.post(onReady);
+            }
+        });
+    }
+
+    /**
+     * Reuse the chunk of a raster page with the same fingerprint, or serialize it (executor only)
+     */
+    private void storeFingerprinted(PdfDocument chunk, String fingerprint) throws IOException {
+        File chunkFile = new File(pageDir, fingerprint + ".pdf");
+        synchronized (CHUNK_LOCK) {
+            claim(chunkFile);
+            if (chunkFile.isFile()) {
+                reusedPages++;
+                return;
+            }
+            write(chunkFile, chunk::writeTo);
+        }
+    }
+
+    /**
+     * Serialize the page and reuse the chunk with the same bytes, if any (executor only)
+     */
+    private void storeSerialized(PdfDocument chunk) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        chunk.writeTo(bytes);
+        byte[] hash = PageFingerprinter.newDigest().digest(bytes.toByteArray());
+        File chunkFile = new File(pageDir, PageFingerprinter.hex(hash) + ".pdf");
+        synchronized (CHUNK_LOCK) {
+            claim(chunkFile);
+            if (chunkFile.isFile()) {
+                reusedPages++;
+                return;
+            }
+            write(chunkFile, bytes::writeTo);
+        }
+    }
+
+    private void claim(File chunkFile) {
+        chunks.add(chunkFile);
+        claimed.add(chunkFile.getName());
+    }
+
+    private interface ChunkWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private void write(File chunkFile, ChunkWriter writer) throws IOException {
+        if (!pageDir.isDirectory() && !pageDir.mkdirs()) {
+            throw new IOException("Cannot create " + pageDir.getAbsolutePath());
+        }
+        // Written aside so an interrupted write never leaves a reusable half chunk
+        File partial = new File(pageDir, chunkFile.getName() + ".part");
+        try (FileOutputStream out = new FileOutputStream(partial)) {
+            writer.writeTo(out);
+        }
+        if (!partial.renameTo(chunkFile)) {
+            partial.delete();
+            throw new IOException("Cannot rename " + partial.getName());
+        }
+    }
+
+    @Override
+    public synchronized long writeTo(OutputStream output, StageTimer timer) throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        if (closed) {
+            throw new IOException("Page chunks already released");
+        }
+        timer.record("encode", encodeMillis);
+
+        // The chunks stay claimed until close, a streamed share merges them again per reader
+        long mergeStart = SystemClock.elapsedRealtime();
+        PdfMerger.Result result;
+        synchronized (CHUNK_LOCK) {
+            result = PdfMerger.merge(chunks, output);
+            prune();
+        }
+        timer.record("merge", SystemClock.elapsedRealtime() - mergeStart);
+        return result.bytes;
+    }
+
+    /**
+     * Delete the chunks that no export of this directory still uses (holding CHUNK_LOCK)
+     */
+    private void prune() {
+        File[] files = pageDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Set<String> used = new HashSet<>(claimed);
+        List<IncrementalPageSink> active = ACTIVE.get(pageDir);
+        if (active != null) {
+            for (IncrementalPageSink sink : active) {
+                used.addAll(sink.claimed);
+            }
+        }
+        for (File file : files) {
+            if (!used.contains(file.getName())) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Stop protecting this export's chunks from pruning and directory deletion (close only)
+     */
+    private void release() {
+        synchronized (CHUNK_LOCK) {
+            List<IncrementalPageSink> active = ACTIVE.get(pageDir);
+            if (active != null && active.remove(this) && active.isEmpty()) {
+                ACTIVE.remove(pageDir);
+            }
+        }
+    }
+
+    /**
+     * Delete a page directory unless an export is using it; false if it was kept
+     */
+    public static boolean deleteDirectory(File dir) {
+        synchronized (CHUNK_LOCK) {
+            if (ACTIVE.containsKey(dir)) {
+                return false;
+            }
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            return dir.delete();
+        }
+    }
+
+    /**
+     * Pages served from chunks of an earlier export
+     */
+    public int getReusedPages() {
+        return reusedPages;
+    }
+
+    public File getPageDir() {
+        return pageDir;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (currentChunk != null) {
+            currentChunk.close();
+            currentChunk = null;
+        }
+        release();
+        // The chunks stay for the next export of this document
+    }
+}
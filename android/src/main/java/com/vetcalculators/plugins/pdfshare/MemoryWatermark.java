@@ -0,0 +1,53 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import android.os.Debug;
+
+import com.getcapacitor.JSObject;
+
+/**
+ * Tracks the peak Java and native heap usage of the process during a job.
+ * PdfDocument page recordings live on the native heap, so both are sampled.
+ */
+public class MemoryWatermark {
+    private final long baselineJava;
+    private final long baselineNative;
+    private long peakJava;
+    private long peakNative;
+
+    public MemoryWatermark() {
+        baselineJava = javaHeapUsed();
+        baselineNative = Debug.getNativeHeapAllocatedSize();
+        peakJava = baselineJava;
+        peakNative = baselineNative;
+    }
+
+    public synchronized void sample() {
+        peakJava = Math.max(peakJava, javaHeapUsed());
+        peakNative = Math.max(peakNative, Debug.getNativeHeapAllocatedSize());
+    }
+
+    /**
+     * Peaks as { javaHeapBytes, nativeHeapBytes } plus their growth over the job baseline
+     */
+    public synchronized JSObject toJSObject() {
+        JSObject ret = new JSObject();
+        ret.put("javaHeapBytes", peakJava);
+        ret.put("nativeHeapBytes", peakNative);
+        ret.put("javaHeapDeltaBytes", peakJava - baselineJava);
+        ret.put("nativeHeapDeltaBytes", peakNative - baselineNative);
+        return ret;
+    }
+
+    public synchronized long getPeakJava() {
+        return peakJava;
+    }
+
+    public synchronized long getPeakNative() {
+        return peakNative;
+    }
+
+    private static long javaHeapUsed() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
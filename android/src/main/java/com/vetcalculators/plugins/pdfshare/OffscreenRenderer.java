@@ -0,0 +1,214 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import android.app.Activity;
+import android.graphics.Color;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+import android.webkit.MimeTypeMap;
+import android.webkit.WebResourceError;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+import android.widget.FrameLayout;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+
+/**
+ * A WebView outside the user's page for rendering HTML strings and bundled pages.
+ *
+ * The view is attached to the activity and {@link View#VISIBLE} so it is laid out and commits
+ * frames like the live WebView (a detached or invisible WebView does not reliably draw). It
+ * is translated left of the window by its own width, so it cannot show through transparent
+ * app content, and pre-rasters while offscreen. It is hidden from accessibility services
+ * and focus. Captures draw it explicitly. Its fixed layout size keeps its measure passes
+ * trivial. The user's page is never mutated.
+ *
+ * Content is loaded on the app's own origin: requests below {@code localUrl} are answered
+ * from the web bundle ({@code assets/public}), so HTML strings can reference the app's
+ * CSS, fonts and images with relative URLs.
+ *
+ * All methods must be called on the main thread.
+ */
+public class OffscreenRenderer {
+    private static final String TAG = "OffscreenRenderer";
+
+    private static final long LOAD_TIMEOUT_MS = 15000;
+
+    // Capacitor copies the web bundle here
+    private static final String BUNDLE_ASSETS = "public";
+
+    public interface LoadCallback {
+        void onLoaded(WebView webView);
+
+        void onError(String message);
+    }
+
+    private final Activity activity;
+    private final String localUrl;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private WebView webView;
+    private ViewGroup parent;
+    private LoadCallback pending;
+    private Runnable timeout;
+
+    /**
+     * @param localUrl origin of the app's web bundle, e.g. {@code https://localhost}
+     */
+    public OffscreenRenderer(Activity activity, String localUrl) {
+        this.activity = activity;
+        this.localUrl = localUrl.endsWith("/") ? localUrl.substring(0, localUrl.length() - 1) : localUrl;
+    }
+
+    /**
+     * Load {@code html} at the given layout size; the callback runs once the page is drawn
+     */
+    public void loadHtml(String html, int widthPx, int heightPx, LoadCallback callback) {
+        ensureWebView(widthPx, heightPx);
+        begin(callback);
+        webView.loadDataWithBaseURL(localUrl + "/", html, "text/html", "UTF-8", null);
+    }
+
+    /**
+     * Load a page of the web bundle, given as a path relative to its root or as a URL on the app's origin
+     */
+    public void loadBundleUrl(String url, int widthPx, int heightPx, LoadCallback callback) {
+        String target = url.startsWith(localUrl + "/") ? url : localUrl + "/" + (url.startsWith("/") ? url.substring(1) : url);
+        ensureWebView(widthPx, heightPx);
+        begin(callback);
+        webView.loadUrl(target);
+    }
+
+    /**
+     * Drop the pending load without calling back, so the renderer can be handed to another job
+     */
+    public void cancel() {
+        if (pending == null) {
+            return;
+        }
+        pending = null;
+        handler.removeCallbacks(timeout);
+        webView.stopLoading();
+    }
+
+    public void destroy() {
+        handler.removeCallbacksAndMessages(null);
+        pending = null;
+        if (webView != null) {
+            if (parent != null) {
+                parent.removeView(webView);
+            }
+            webView.destroy();
+            webView = null;
+        }
+    }
+
+    private void begin(LoadCallback callback) {
+        pending = callback;
+        timeout = () -> fail("Timed out loading offscreen content");
+        handler.postDelayed(timeout, LOAD_TIMEOUT_MS);
+    }
+
+    private void ensureWebView(int widthPx, int heightPx) {
+        if (webView == null) {
+            webView = new WebView(activity);
+            webView.getSettings().setJavaScriptEnabled(true);
+            webView.setBackgroundColor(Color.WHITE);
+            webView.setVerticalScrollBarEnabled(false);
+            // Tiles are rastered although the view is outside the window
+            webView.getSettings().setOffscreenPreRaster(true);
+            webView.setImportantForAccessibility(View.IMPORTANT_FOR_ACCESSIBILITY_NO_HIDE_DESCENDANTS);
+            webView.setFocusable(false);
+            webView.setWebViewClient(new WebViewClient() {
+                @Override
+                public void onPageFinished(WebView view, String url) {
+                    // Report once the loaded content has been committed for drawing
+                    view.postVisualStateCallback(0, new WebView.VisualStateCallback() {
+                        @Override
+                        public void onComplete(long requestId) {
+                            succeed();
+                        }
+                    });
+                }
+
+                @Override
+                public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+                    return openBundleAsset(request.getUrl());
+                }
+
+                @Override
+                public void onReceivedError(WebView view, WebResourceRequest request, WebResourceError error) {
+                    if (request.isForMainFrame()) {
+                        fail("Error loading offscreen content: " + error.getDescription());
+                    }
+                }
+            });
+
+            parent = activity.findViewById(android.R.id.content);
+            // Index 0 keeps it behind the app content
+            parent.addView(webView, 0, new FrameLayout.LayoutParams(widthPx, heightPx));
+        } else {
+            ViewGroup.LayoutParams params = webView.getLayoutParams();
+            if (params.width != widthPx || params.height != heightPx) {
+                params.width = widthPx;
+                params.height = heightPx;
+                webView.setLayoutParams(params);
+            }
+        }
+        // Visible for the frame pipeline, but entirely outside the window
+        webView.setTranslationX(-widthPx);
+    }
+
+    /**
+     * Serve requests on the app's origin from the web bundle, everything else from the network
+     */
+    private WebResourceResponse openBundleAsset(Uri uri) {
+        String url = uri.toString();
+        if (!url.startsWith(localUrl + "/")) {
+            return null;
+        }
+        String path = uri.getPath() == null ? "" : uri.getPath();
+        if (path.isEmpty() || path.endsWith("/")) {
+            path += "index.html";
+        }
+        String extension = MimeTypeMap.getFileExtensionFromUrl(path);
+        String mimeType = MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension);
+        if (mimeType == null) {
+            mimeType = "application/octet-stream";
+        }
+        try {
+            InputStream stream = activity.getAssets().open(BUNDLE_ASSETS + path);
+            return new WebResourceResponse(mimeType, null, stream);
+        } catch (IOException e) {
+            Log.w(TAG, "Bundle asset not found: " + path);
+            return new WebResourceResponse(mimeType, null, 404, "Not Found", Collections.emptyMap(), null);
+        }
+    }
+
+    private void succeed() {
+        LoadCallback callback = pending;
+        if (callback == null) {
+            return;
+        }
+        pending = null;
+        handler.removeCallbacks(timeout);
+        callback.onLoaded(webView);
+    }
+
+    private void fail(String message) {
+        LoadCallback callback = pending;
+        if (callback == null) {
+            return;
+        }
+        pending = null;
+        handler.removeCallbacks(timeout);
+        Log.e(TAG, "❌ " + message);
+        callback.onError(message);
+    }
+}
@@ -0,0 +1,98 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import android.app.Activity;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A small pool of {@link OffscreenRenderer}s.
+ *
+ * Creating a WebView costs tens of milliseconds and loads the renderer process, so released
+ * renderers are kept for reuse and only destroyed after they have been idle for a while. At
+ * most {@code maxSize} exist at once; further requests wait for a release.
+ *
+ * All methods must be called on the main thread.
+ */
+public class OffscreenRendererPool {
+    // Idle renderers are destroyed after this long without use
+    private static final long IDLE_TIMEOUT_MS = 60 * 1000;
+
+    public interface Callback {
+        void onAcquired(OffscreenRenderer renderer);
+    }
+
+    private final Activity activity;
+    private final String localUrl;
+    private final int maxSize;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable trim = this::destroyIdle;
+
+    private final ArrayDeque<OffscreenRenderer> idle = new ArrayDeque<>();
+    private final ArrayDeque<Callback> waiting = new ArrayDeque<>();
+    private final List<OffscreenRenderer> all = new ArrayList<>();
+
+    public OffscreenRendererPool(Activity activity, String localUrl, int maxSize) {
+        this.activity = activity;
+        this.localUrl = localUrl;
+        this.maxSize = Math.max(1, maxSize);
+    }
+
+    /**
+     * Hand a renderer to {@code callback} now, or as soon as one is released
+     */
+    public void acquire(Callback callback) {
+        if (!idle.isEmpty()) {
+            callback.onAcquired(idle.pop());
+        } else if (all.size() < maxSize) {
+            OffscreenRenderer renderer = new OffscreenRenderer(activity, localUrl);
+            all.add(renderer);
+            callback.onAcquired(renderer);
+        } else {
+            waiting.add(callback);
+        }
+    }
+
+    /**
+     * Renderers currently alive, busy or idle
+     */
+    public int size() {
+        return all.size();
+    }
+
+    public void release(OffscreenRenderer renderer) {
+        if (!all.contains(renderer)) {
+            return;
+        }
+        Callback next = waiting.poll();
+        if (next != null) {
+            // Post so the releasing job unwinds before the next one starts loading
+            handler.post(() -> next.onAcquired(renderer));
+            return;
+        }
+        idle.push(renderer);
+        handler.removeCallbacks(trim);
+        handler.postDelayed(trim, IDLE_TIMEOUT_MS);
+    }
+
+    private void destroyIdle() {
+        for (OffscreenRenderer renderer : idle) {
+            renderer.destroy();
+            all.remove(renderer);
+        }
+        idle.clear();
+    }
+
+    public void destroy() {
+        handler.removeCallbacksAndMessages(null);
+        waiting.clear();
+        idle.clear();
+        for (OffscreenRenderer renderer : all) {
+            renderer.destroy();
+        }
+        all.clear();
+    }
+}
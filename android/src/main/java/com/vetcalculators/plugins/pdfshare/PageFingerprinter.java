@@ -0,0 +1,103 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import android.graphics.Bitmap;
+import android.graphics.RectF;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Content fingerprints of raster pages.
+ *
+ * A raster page consists of nothing but the tiles {@link WebViewPageCapture} draws into it,
+ * so the fingerprint hashes exactly those pixels, at the capture resolution, together with
+ * where each tile is placed. The seed covers everything else that affects a page (geometry,
+ * render mode, resolution). Equal fingerprints therefore mean identical pages, not pages
+ * that merely look alike; a single changed pixel gives a different fingerprint.
+ *
+ * Hashing costs one pass over the tile pixels on the main thread, far less than the page
+ * compression a reused page saves. Vector pages have no pixels to hash,
+ * {@link IncrementalPageSink} fingerprints their serialized bytes instead.
+ *
+ * All methods must be called on the main thread.
+ */
+public class PageFingerprinter {
+    // dst rect as four floats plus the tile width and height
+    private static final int TILE_HEADER_BYTES = 24;
+
+    private final byte[] seed;
+    private final MessageDigest digest;
+    private int[] pixels;
+    private ByteBuffer buffer;
+    private String lastFingerprint;
+
+    public PageFingerprinter(String settings) {
+        this.seed = settings.getBytes(StandardCharsets.UTF_8);
+        this.digest = newDigest();
+    }
+
+    public void startPage() {
+        digest.reset();
+        digest.update(seed);
+    }
+
+    /**
+     * Add the top-left {@code width} x {@code height} pixels of a tile drawn at {@code dst}
+     */
+    public void addTile(Bitmap tile, int width, int height, RectF dst) {
+        int count = width * height;
+        if (pixels == null || pixels.length < count) {
+            pixels = new int[count];
+            // Also holds the 24 byte tile header, which is larger than a tile under 6 pixels
+            buffer = ByteBuffer.allocate(Math.max(TILE_HEADER_BYTES, count * 4));
+        }
+        buffer.clear();
+        buffer.putFloat(dst.left).putFloat(dst.top).putFloat(dst.right).putFloat(dst.bottom)
+            .putInt(width).putInt(height);
+        buffer.flip();
+        digest.update(buffer);
+
+        tile.getPixels(pixels, 0, width, 0, 0, width, height);
+        buffer.clear();
+        buffer.asIntBuffer().put(pixels, 0, count);
+        buffer.limit(count * 4);
+        digest.update(buffer);
+    }
+
+    /**
+     * Hash the page added since {@link #startPage}, see {@link #getLastFingerprint}
+     */
+    public void finishPage() {
+        lastFingerprint = hex(digest.digest());
+    }
+
+    /**
+     * SHA-256 of the last finished page, as 64 hex digits
+     */
+    public String getLastFingerprint() {
+        return lastFingerprint;
+    }
+
+    public void recycle() {
+        pixels = null;
+        buffer = null;
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String hex(byte[] hash) {
+        StringBuilder sb = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,209 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import android.graphics.Rect;
+import android.graphics.pdf.PdfDocument;
+import android.print.PrintAttributes;
+
+import org.json.JSONObject;
+
+/**
+ * Page geometry and render resolution derived from {@code PdfShareOptions}.
+ *
+ * Sizes are in PDF points (1/72 inch). Margins are given in mm by JS and rounded to whole
+ * points because PdfDocument content rects are integral.
+ */
+public class PageGeometry {
+    private static final float POINTS_PER_MM = 72f / 25.4f;
+
+    // Keep at least one inch of printable area whatever the margins are
+    private static final int MIN_CONTENT_POINTS = 72;
+
+    public enum RenderMode {
+        /** Draw the WebView straight into the PDF canvas */
+        VECTOR,
+        /** Draw into a bitmap at the requested density, then place the bitmap on the page */
+        RASTER,
+        /** Let the WebView lay out and print the document itself (selectable text, print CSS) */
+        PRINT
+    }
+
+    public final String format;
+    public final boolean landscape;
+    public final int pageWidth;
+    public final int pageHeight;
+    public final int marginTop;
+    public final int marginRight;
+    public final int marginBottom;
+    public final int marginLeft;
+    public final float scale;
+    public final float quality;
+    public final RenderMode renderMode;
+
+    private PageGeometry(String format, boolean landscape, int pageWidth, int pageHeight,
+                         int marginTop, int marginRight, int marginBottom, int marginLeft,
+                         float scale, float quality, RenderMode renderMode) {
+        this.format = format;
+        this.landscape = landscape;
+        this.pageWidth = pageWidth;
+        this.pageHeight = pageHeight;
+        this.marginTop = marginTop;
+        this.marginRight = marginRight;
+        this.marginBottom = marginBottom;
+        this.marginLeft = marginLeft;
+        this.scale = scale;
+        this.quality = quality;
+        this.renderMode = renderMode;
+    }
+
+    /**
+     * Parse format, orientation, margins, scale, quality and renderMode with the documented defaults
+     */
+    public static PageGeometry fromOptions(JSONObject options) {
+        String format = options.optString("format", "a4").toLowerCase(java.util.Locale.US);
+        int width;
+        int height;
+        switch (format) {
+            case "a4":
+                width = 595;
+                height = 842;
+                break;
+            case "letter":
+                width = 612;
+                height = 792;
+                break;
+            case "legal":
+                width = 612;
+                height = 1008;
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported format: " + format);
+        }
+
+        String orientation = options.optString("orientation", "portrait");
+        boolean landscape = "landscape".equals(orientation);
+        if (!landscape && !"portrait".equals(orientation)) {
+            throw new IllegalArgumentException("Unsupported orientation: " + orientation);
+        }
+        if (landscape) {
+            int swap = width;
+            width = height;
+            height = swap;
+        }
+
+        JSONObject margins = options.optJSONObject("margins");
+        int top = marginPoints(margins, "top");
+        int right = marginPoints(margins, "right");
+        int bottom = marginPoints(margins, "bottom");
+        int left = marginPoints(margins, "left");
+
+        // Shrink oversized margins proportionally instead of producing an empty page
+        if (width - left - right < MIN_CONTENT_POINTS) {
+            float factor = (float) (width - MIN_CONTENT_POINTS) / (left + right);
+            left = (int) (left * factor);
+            right = (int) (right * factor);
+        }
+        if (height - top - bottom < MIN_CONTENT_POINTS) {
+            float factor = (float) (height - MIN_CONTENT_POINTS) / (top + bottom);
+            top = (int) (top * factor);
+            bottom = (int) (bottom * factor);
+        }
+
+        float scale = clamp((float) options.optDouble("scale", 2), 0.5f, 4f);
+        float quality = clamp((float) options.optDouble("quality", 0.98), 0.1f, 1f);
+
+        String mode = options.optString("renderMode", "vector");
+        RenderMode renderMode;
+        if ("vector".equals(mode)) {
+            renderMode = RenderMode.VECTOR;
+        } else if ("raster".equals(mode)) {
+            renderMode = RenderMode.RASTER;
+        } else if ("print".equals(mode)) {
+            // Print mode relies on hidden framework constructors, raster is the closest fallback
+            renderMode = PdfPrintDocumentAdapter.isSupported() ? RenderMode.PRINT : RenderMode.RASTER;
+        } else {
+            throw new IllegalArgumentException("Unsupported renderMode: " + mode);
+        }
+
+        return new PageGeometry(format, landscape, width, height, top, right, bottom, left,
+            scale, quality, renderMode);
+    }
+
+    private static int marginPoints(JSONObject margins, String side) {
+        double mm = margins != null ? margins.optDouble(side, 20) : 20;
+        if (Double.isNaN(mm) || mm < 0) {
+            mm = 0;
+        }
+        return Math.round((float) mm * POINTS_PER_MM);
+    }
+
+    private static float clamp(float value, float min, float max) {
+        if (Float.isNaN(value)) {
+            return max;
+        }
+        return Math.max(min, Math.min(max, value));
+    }
+
+    public int getContentWidth() {
+        return pageWidth - marginLeft - marginRight;
+    }
+
+    public int getContentHeight() {
+        return pageHeight - marginTop - marginBottom;
+    }
+
+    /**
+     * Canonical description of everything in the geometry that changes how pages are drawn
+     */
+    public String describe() {
+        return format + "|" + pageWidth + "x" + pageHeight
+            + "|" + marginTop + "," + marginRight + "," + marginBottom + "," + marginLeft
+            + "|" + renderMode + "|" + scale + "|" + quality;
+    }
+
+    /**
+     * Raster pixels per point: scale 1 renders at 72 dpi, quality reduces it further
+     */
+    public float getRasterDensity() {
+        return scale * quality;
+    }
+
+    /**
+     * Print attributes for the WebView print adapter; margins are given in mils (1/1000 inch)
+     */
+    public PrintAttributes createPrintAttributes() {
+        PrintAttributes.MediaSize mediaSize;
+        switch (format) {
+            case "letter":
+                mediaSize = PrintAttributes.MediaSize.NA_LETTER;
+                break;
+            case "legal":
+                mediaSize = PrintAttributes.MediaSize.NA_LEGAL;
+                break;
+            default:
+                mediaSize = PrintAttributes.MediaSize.ISO_A4;
+                break;
+        }
+        if (landscape) {
+            mediaSize = mediaSize.asLandscape();
+        }
+        return new PrintAttributes.Builder()
+            .setMediaSize(mediaSize)
+            .setResolution(new PrintAttributes.Resolution("pdf", "pdf", 600, 600))
+            .setColorMode(PrintAttributes.COLOR_MODE_COLOR)
+            .setMinMargins(new PrintAttributes.Margins(mils(marginLeft), mils(marginTop), mils(marginRight), mils(marginBottom)))
+            .build();
+    }
+
+    private static int mils(int points) {
+        return Math.round(points * 1000f / 72f);
+    }
+
+    /**
+     * PageInfo for page {@code pageNumber}; its canvas is translated and clipped to the margins
+     */
+    public PdfDocument.PageInfo createPageInfo(int pageNumber) {
+        return new PdfDocument.PageInfo.Builder(pageWidth, pageHeight, pageNumber)
+            .setContentRect(new Rect(marginLeft, marginTop, pageWidth - marginRight, pageHeight - marginBottom))
+            .create();
+    }
+}
@@ -0,0 +1,218 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import android.graphics.pdf.PdfDocument;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.getcapacitor.JSObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Serializes captured pages on several threads while the capture goes on.
+ *
+ * Like {@link StreamingPageSink}, each page is recorded into its own single-page
+ * PdfDocument and written to a chunk file, but up to {@code parallelism} chunks are
+ * encoded at once on a shared worker pool. This is where raster pages spend their time
+ * (compressing the page bitmaps). The capture only waits once that many pages are in flight.
+ * Chunks are named by page number and concatenated in page order with {@link PdfMerger},
+ * so the output does not depend on which worker finished first.
+ *
+ * Drawing the WebView itself stays on the main thread; only the serialization is parallel.
+ */
+public class ParallelPageSink implements PdfPageSink {
+    private static final String TAG = "ParallelPageSink";
+
+    private final File chunkDir;
+    private final Executor workers;
+    private final int parallelism;
+    private final MemoryWatermark watermark;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Chunk files in page order; only touched on the main thread before writeTo
+    private final List<File> chunks = new ArrayList<>();
+    private PdfDocument currentChunk;
+
+    // Guarded by this
+    private int inFlight;
+    private Runnable blockedOnReady;
+    private long busyMillis;
+    private long firstStart;
+    private long lastEnd;
+    private IOException failure;
+    private boolean closed;
+
+    /**
+     * @param parallelism chunks encoded at once, and finished pages held in memory at most
+     */
+    public ParallelPageSink(File chunkDir, Executor workers, int parallelism, MemoryWatermark watermark) {
+        this.chunkDir = chunkDir;
+        this.workers = workers;
+        this.parallelism = Math.max(1, parallelism);
+        this.watermark = watermark;
+    }
+
+    @Override
+    public PdfDocument.Page startPage(PdfDocument.PageInfo pageInfo) {
+        currentChunk = new PdfDocument();
+        return currentChunk.startPage(pageInfo);
+    }
+
+    @Override
+    public void finishPage(PdfDocument.Page page, Runnable onReady) {
+        PdfDocument chunk = currentChunk;
+        currentChunk = null;
+        chunk.finishPage(page);
+
+        File chunkFile = new File(chunkDir, "page-" + (chunks.size() + 1) + ".pdf");
+        chunks.add(chunkFile);
+
+        boolean ready;
+        synchronized (this) {
+            inFlight++;
+            ready = inFlight < parallelism;
+            if (!ready) {
+                blockedOnReady = onReady;
+            }
+        }
+        workers.execute(() -> encode(chunk, chunkFile));
+        if (ready) {
+            onReady.run();
+        }
+    }
+
+    private void encode(PdfDocument chunk, File chunkFile) {
+        long start = SystemClock.elapsedRealtime();
+        IOException error = null;
+        try {
+            if (!isClosedOrFailed()) {
+                if (!chunkDir.isDirectory() && !chunkDir.mkdirs() && !chunkDir.isDirectory()) {
+                    throw new IOException("Cannot create " + chunkDir.getAbsolutePath());
+                }
+                try (FileOutputStream out = new FileOutputStream(chunkFile)) {
+                    chunk.writeTo(out);
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "❌ Error writing page chunk", e);
+            error = e;
+        } finally {
+            chunk.close();
+        }
+        watermark.sample();
+
+        long end = SystemClock.elapsedRealtime();
+        Runnable onReady;
+        boolean cleanup;
+        synchronized (this) {
+            if (error != null && failure == null) {
+                failure = error;
+            }
+            busyMillis += end - start;
+            firstStart = firstStart == 0 ? start : Math.min(firstStart, start);
+            lastEnd = Math.max(lastEnd, end);
+            inFlight--;
+            onReady = blockedOnReady;
+            blockedOnReady = null;
+            cleanup = closed && inFlight == 0;
+            notifyAll();
+        }
+        if (onReady != null) {
+            mainHandler.post(onReady);
+        }
+        if (cleanup) {
+            deleteChunks();
+        }
+    }
+
+    private synchronized boolean isClosedOrFailed() {
+        return closed || failure != null;
+    }
+
+    @Override
+    public synchronized long writeTo(OutputStream output, StageTimer timer) throws IOException {
+        // Every page has been handed over, wait for the last chunks
+        while (inFlight > 0 && failure == null && !closed) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while encoding pages");
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        if (closed) {
+            throw new IOException("Page chunks already released");
+        }
+        timer.record("encode", getEncodeWallMillis());
+
+        long mergeStart = SystemClock.elapsedRealtime();
+        PdfMerger.Result result = PdfMerger.merge(chunks, output);
+        timer.record("merge", SystemClock.elapsedRealtime() - mergeStart);
+        return result.bytes;
+    }
+
+    private long getEncodeWallMillis() {
+        return firstStart == 0 ? 0 : lastEnd - firstStart;
+    }
+
+    /**
+     * { parallelism, pages, busyMs, wallMs, speedup }: summed and elapsed encode time; their
+     * ratio is the speedup over encoding the same pages one after the other
+     */
+    public synchronized JSObject getStats() {
+        long wall = getEncodeWallMillis();
+        JSObject stats = new JSObject();
+        stats.put("parallelism", parallelism);
+        stats.put("pages", chunks.size());
+        stats.put("busyMs", busyMillis);
+        stats.put("wallMs", wall);
+        stats.put("speedup", wall > 0 ? Math.round(busyMillis * 100.0 / wall) / 100.0 : 1.0);
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        boolean cleanup;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (currentChunk != null) {
+                currentChunk.close();
+                currentChunk = null;
+            }
+            cleanup = inFlight == 0;
+            notifyAll();
+        }
+        // Otherwise the last running chunk cleans up
+        if (cleanup) {
+            try {
+                workers.execute(this::deleteChunks);
+            } catch (RejectedExecutionException e) {
+                // The plugin is shutting down
+                deleteChunks();
+            }
+        }
+    }
+
+    private void deleteChunks() {
+        for (File chunk : chunks) {
+            chunk.delete();
+        }
+        chunkDir.delete();
+    }
+}
@@ -0,0 +1,163 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.PluginCall;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bookkeeping of a {@code generateBatch} call.
+ *
+ * Items are captured one at a time on the main thread (the WebViews are shared) while up to
+ * {@link #concurrency} captured items are encoded and written in parallel on a bounded
+ * worker pool. The scheduling counters are main-thread only; item results are written
+ * from the workers and guarded by this.
+ */
+public class PdfBatch {
+    public final String id;
+    public final PluginCall call;
+    public final int size;
+    public final int concurrency;
+    public final boolean merge;
+    public final String mergedFilename;
+    public final StageTimer timer = new StageTimer();
+    public final ThreadPoolExecutor workers;
+
+    private final JSArray jobs;
+    private final JSObject[] results;
+    private final File[] files;
+    private int completed;
+
+    // Main thread only
+    public int nextIndex;
+    public boolean capturing;
+    public int pendingWrites;
+    public boolean cancelled;
+
+    public PdfBatch(String id, PluginCall call, JSArray jobs, int concurrency) {
+        this.id = id;
+        this.call = call;
+        this.jobs = jobs;
+        this.size = jobs.length();
+        this.concurrency = concurrency;
+        JSObject data = call.getData();
+        this.merge = data.optBoolean("merge", false);
+        this.mergedFilename = data.optString("filename", "veterinary-dosage");
+        this.results = new JSObject[size];
+        this.files = new File[size];
+
+        // Queue capacity equals the pool size: captures wait instead of piling up in memory
+        this.workers = new ThreadPoolExecutor(concurrency, concurrency, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(concurrency), runnable -> {
+                Thread thread = new Thread(runnable, "PdfShare-batch");
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            });
+        this.workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Options of item {@code index}, named after the batch unless the item has its own filename
+     */
+    public JSObject itemOptions(int index) throws JSONException {
+        JSObject options = new JSObject();
+        JSONObject item = jobs.getJSONObject(index);
+        Iterator<String> keys = item.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            options.put(key, item.get(key));
+        }
+        if (!options.has("filename")) {
+            options.put("filename", mergedFilename + "-" + (index + 1));
+        }
+        // Items are always written to cache files, they are merged or returned as paths
+        options.remove("destinationUri");
+        options.remove("streamShare");
+        return options;
+    }
+
+    /**
+     * Record the outcome of an item
+     *
+     * @return true when this was the last outstanding item
+     */
+    public synchronized boolean complete(int index, PdfJob job, String error) {
+        JSObject result = new JSObject();
+        result.put("index", index);
+        result.put("success", error == null);
+        if (error == null) {
+            result.put("path", job.pdfFile.getAbsolutePath());
+            result.put("pageCount", job.pageCount);
+            result.put("bytes", job.bytes);
+            files[index] = job.pdfFile;
+        } else {
+            result.put("error", error);
+        }
+        results[index] = result;
+        completed++;
+        return completed == size;
+    }
+
+    /**
+     * Progress event for item {@code index}
+     */
+    public synchronized JSObject progress(int index) {
+        JSObject event = new JSObject();
+        event.put("batchId", id);
+        event.put("completed", completed);
+        event.put("total", size);
+        event.put("item", results[index]);
+        return event;
+    }
+
+    public synchronized List<File> writtenFiles() {
+        List<File> written = new ArrayList<>();
+        for (File file : files) {
+            if (file != null) {
+                written.add(file);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Final result; with {@code merged} the item files are gone and only the merged path is listed
+     */
+    public synchronized JSObject toResult(File merged) {
+        JSArray items = new JSArray();
+        JSArray paths = new JSArray();
+        int failed = 0;
+        for (JSObject result : results) {
+            if (!result.optBoolean("success", false)) {
+                failed++;
+            } else if (merged == null) {
+                paths.put(result.optString("path"));
+            } else {
+                result.remove("path");
+            }
+            items.put(result);
+        }
+        JSObject ret = new JSObject();
+        if (merged != null) {
+            paths.put(merged.getAbsolutePath());
+            ret.put("path", merged.getAbsolutePath());
+        }
+        ret.put("success", failed == 0);
+        ret.put("batchId", id);
+        ret.put("paths", paths);
+        ret.put("items", items);
+        ret.put("failed", failed);
+        ret.put("timings", timer.toJSObject());
+        return ret;
+    }
+}
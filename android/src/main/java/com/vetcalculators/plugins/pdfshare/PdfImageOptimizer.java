@@ -0,0 +1,506 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import com.vetcalculators.plugins.pdfshare.PdfObjectReader.Name;
+import com.vetcalculators.plugins.pdfshare.PdfObjectReader.PdfObject;
+import com.vetcalculators.plugins.pdfshare.PdfObjectReader.Raw;
+import com.vetcalculators.plugins.pdfshare.PdfObjectReader.Ref;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Downsamples and recompresses the raster images of a PDF.
+ *
+ * The page content streams are scanned for image draws ({@code cm} ... {@code Do}, through
+ * form XObjects too) to learn how large each image is shown. Images with more pixels than
+ * the target DPI needs at that size are scaled down, and Flate images are re-encoded as
+ * JPEG when that is smaller. Every other object is copied verbatim with its number.
+ *
+ * Only 8-bit DeviceRGB/DeviceGray images without soft masks, decode arrays or predictors
+ * are touched; JPEG images are only re-encoded when they are downsampled.
+ */
+public class PdfImageOptimizer {
+
+    /**
+     * Decoded or JPEG image data handed to the {@link ImageEncoder}
+     */
+    public static final class Image {
+        public final int width;
+        public final int height;
+        /** 1 (gray) or 3 (RGB) */
+        public final int components;
+        /** Raw 8-bit samples, row by row; null for JPEG sources */
+        public final byte[] samples;
+        /** Original JPEG data; null for Flate sources */
+        public final byte[] jpeg;
+
+        Image(int width, int height, int components, byte[] samples, byte[] jpeg) {
+            this.width = width;
+            this.height = height;
+            this.components = components;
+            this.samples = samples;
+            this.jpeg = jpeg;
+        }
+    }
+
+    public interface ImageEncoder {
+        /**
+         * Scale {@code image} to the target size and encode it as an RGB JPEG
+         */
+        byte[] encodeJpeg(Image image, int targetWidth, int targetHeight, int quality) throws IOException;
+    }
+
+    public static class Result {
+        public final long bytesBefore;
+        public final long bytesAfter;
+        public final int images;
+        public final int imagesOptimized;
+
+        Result(long bytesBefore, long bytesAfter, int images, int imagesOptimized) {
+            this.bytesBefore = bytesBefore;
+            this.bytesAfter = bytesAfter;
+            this.images = images;
+            this.imagesOptimized = imagesOptimized;
+        }
+    }
+
+    // Identity transform as a b c d e f
+    private static final double[] IDENTITY = { 1, 0, 0, 1, 0, 0 };
+
+    /**
+     * Write an optimized copy of {@code input} to {@code output}
+     *
+     * @param targetDpi   resolution images are scaled down to at their displayed size
+     * @param jpegQuality JPEG quality, 1 to 100
+     */
+    public static Result optimize(File input, File output, int targetDpi, int jpegQuality,
+                                  ImageEncoder encoder) throws IOException {
+        int images = 0;
+        int optimized = 0;
+
+        try (PdfObjectReader reader = new PdfObjectReader(input);
+             PdfObjectWriter writer = new PdfObjectWriter(new FileOutputStream(output))) {
+            // Image object number -> largest displayed width and height in points
+            Map<Integer, double[]> displayed = new HashMap<>();
+            Map<Integer, Map<String, Object>> pages = new LinkedHashMap<>();
+            PdfMerger.collectPages(reader, pages, new HashSet<>());
+            for (int pageNum : pages.keySet()) {
+                Map<String, Object> page = reader.readObject(pageNum).dict();
+                Object resources = page.containsKey("Resources") ? page.get("Resources") : pages.get(pageNum).get("Resources");
+                scanContent(reader, page.get("Contents"), resources, IDENTITY, displayed, new HashSet<>());
+            }
+
+            writer.writeHeader();
+            for (int num : reader.getObjectNumbersInFileOrder()) {
+                PdfObject object = reader.readObject(num);
+                if (object.hasStream() && isImage(object.dict())) {
+                    images++;
+                    if (writeOptimizedImage(reader, writer, object, displayed.get(num), targetDpi, jpegQuality, encoder)) {
+                        optimized++;
+                        continue;
+                    }
+                }
+                if (object.hasStream()) {
+                    writer.writeStreamObject(num, object.dict(), object.streamLength, PdfObjectWriter.IDENTITY,
+                        out -> reader.copyStream(object.streamOffset, object.streamLength, out));
+                } else {
+                    writer.writeObject(num, object.value, PdfObjectWriter.IDENTITY);
+                }
+            }
+
+            Map<String, Object> trailer = reader.getTrailer();
+            Object info = trailer.get("Info");
+            writer.finish(reader.getSize(), (Ref) trailer.get("Root"), info instanceof Ref ? (Ref) info : null);
+            return new Result(input.length(), writer.getPosition(), images, optimized);
+        }
+    }
+
+    private static boolean isImage(Map<String, Object> dict) {
+        return dict != null && new Name("Image").equals(dict.get("Subtype"));
+    }
+
+    /**
+     * @return false if the image is left as it is
+     */
+    private static boolean writeOptimizedImage(PdfObjectReader reader, PdfObjectWriter writer, PdfObject object,
+                                               double[] displayedSize, int targetDpi, int jpegQuality,
+                                               ImageEncoder encoder) throws IOException {
+        Map<String, Object> dict = object.dict();
+        Object filter = singleFilter(reader.resolve(dict.get("Filter")));
+        Object colorSpace = reader.resolve(dict.get("ColorSpace"));
+        Object bits = reader.resolve(dict.get("BitsPerComponent"));
+        Object width = reader.resolve(dict.get("Width"));
+        Object height = reader.resolve(dict.get("Height"));
+        if (dict.containsKey("SMask") || dict.containsKey("Mask") || dict.containsKey("Decode")
+                || dict.containsKey("DecodeParms") || dict.containsKey("ImageMask")
+                || !(width instanceof Long) || !(height instanceof Long) || !Long.valueOf(8).equals(bits)) {
+            return false;
+        }
+        int components;
+        if (new Name("DeviceRGB").equals(colorSpace)) {
+            components = 3;
+        } else if (new Name("DeviceGray").equals(colorSpace)) {
+            components = 1;
+        } else {
+            return false;
+        }
+
+        int w = ((Long) width).intValue();
+        int h = ((Long) height).intValue();
+        int[] target = targetSize(w, h, displayedSize, targetDpi);
+        boolean downsample = target[0] < w || target[1] < h;
+
+        Image image;
+        byte[] data = reader.readStream(object);
+        if (new Name("DCTDecode").equals(filter)) {
+            if (!downsample) {
+                // Re-encoding a JPEG at the same size only loses quality
+                return false;
+            }
+            image = new Image(w, h, components, null, data);
+        } else if (new Name("FlateDecode").equals(filter)) {
+            byte[] samples = inflate(data);
+            if (samples.length < (long) w * h * components) {
+                return false;
+            }
+            image = new Image(w, h, components, samples, null);
+        } else {
+            return false;
+        }
+
+        byte[] jpeg = encoder.encodeJpeg(image, target[0], target[1], jpegQuality);
+        if (jpeg == null || jpeg.length >= data.length) {
+            return false;
+        }
+
+        dict.put("Width", (long) target[0]);
+        dict.put("Height", (long) target[1]);
+        dict.put("ColorSpace", new Name("DeviceRGB"));
+        dict.put("BitsPerComponent", 8L);
+        dict.put("Filter", new Name("DCTDecode"));
+        writer.writeStreamObject(object.num, dict, jpeg.length, PdfObjectWriter.IDENTITY, out -> out.write(jpeg));
+        return true;
+    }
+
+    /**
+     * Pixel size needed for {@code targetDpi} at the displayed size, never larger than the image
+     */
+    static int[] targetSize(int width, int height, double[] displayedSize, int targetDpi) {
+        if (displayedSize == null) {
+            // Not drawn by any page we could follow, leave the resolution alone
+            return new int[] { width, height };
+        }
+        double factor = Math.max(displayedSize[0] * targetDpi / 72 / width, displayedSize[1] * targetDpi / 72 / height);
+        if (factor >= 1) {
+            return new int[] { width, height };
+        }
+        return new int[] { Math.max(1, (int) Math.ceil(width * factor)), Math.max(1, (int) Math.ceil(height * factor)) };
+    }
+
+    private static Object singleFilter(Object filter) {
+        if (filter instanceof List) {
+            List<?> filters = (List<?>) filter;
+            return filters.size() == 1 ? filters.get(0) : null;
+        }
+        return filter;
+    }
+
+    // --- Content streams ---
+
+    /**
+     * Follow the drawing operators of a content stream (or array of them) and record the
+     * displayed size of every image XObject
+     */
+    @SuppressWarnings("unchecked")
+    private static void scanContent(PdfObjectReader reader, Object contents, Object resources, double[] ctm,
+                                    Map<Integer, double[]> displayed, Set<Integer> visitedForms) throws IOException {
+        if (contents instanceof Ref) {
+            PdfObject object = reader.readObject(((Ref) contents).num);
+            if (object != null && !object.hasStream()) {
+                contents = object.value;
+            }
+        }
+        if (contents instanceof List) {
+            // Content arrays are one stream split into parts
+            ByteArrayOutputStream joined = new ByteArrayOutputStream();
+            for (Object part : (List<Object>) contents) {
+                byte[] data = streamData(reader, part);
+                if (data != null) {
+                    joined.write(data);
+                    joined.write('\n');
+                }
+            }
+            scanOperators(reader, joined.toByteArray(), resources, ctm, displayed, visitedForms);
+        } else {
+            byte[] data = streamData(reader, contents);
+            if (data != null) {
+                scanOperators(reader, data, resources, ctm, displayed, visitedForms);
+            }
+        }
+    }
+
+    private static byte[] streamData(PdfObjectReader reader, Object ref) throws IOException {
+        if (!(ref instanceof Ref)) {
+            return null;
+        }
+        PdfObject object = reader.readObject(((Ref) ref).num);
+        if (object == null || !object.hasStream()) {
+            return null;
+        }
+        byte[] data = reader.readStream(object);
+        Object filter = singleFilter(reader.resolve(object.dict().get("Filter")));
+        if (filter == null && !object.dict().containsKey("Filter")) {
+            return data;
+        }
+        return new Name("FlateDecode").equals(filter) ? inflate(data) : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void scanOperators(PdfObjectReader reader, byte[] content, Object resources, double[] ctm,
+                                      Map<Integer, double[]> displayed, Set<Integer> visitedForms) throws IOException {
+        Object resolvedResources = reader.resolve(resources);
+        Object xObjects = resolvedResources instanceof Map ? reader.resolve(((Map<String, Object>) resolvedResources).get("XObject")) : null;
+
+        ContentLexer lexer = new ContentLexer(content);
+        ArrayDeque<double[]> stack = new ArrayDeque<>();
+        List<Double> operands = new ArrayList<>();
+        String lastName = null;
+        double[] current = ctm;
+
+        Object token;
+        while ((token = lexer.next()) != null) {
+            if (token instanceof Double) {
+                operands.add((Double) token);
+                continue;
+            }
+            if (token instanceof Name) {
+                lastName = ((Name) token).value;
+                continue;
+            }
+            String op = (String) token;
+            switch (op) {
+                case "q":
+                    stack.push(current);
+                    break;
+                case "Q":
+                    if (!stack.isEmpty()) {
+                        current = stack.pop();
+                    }
+                    break;
+                case "cm":
+                    if (operands.size() >= 6) {
+                        int n = operands.size();
+                        double[] m = new double[6];
+                        for (int i = 0; i < 6; i++) {
+                            m[i] = operands.get(n - 6 + i);
+                        }
+                        current = multiply(m, current);
+                    }
+                    break;
+                case "Do":
+                    if (lastName != null && xObjects instanceof Map) {
+                        Object ref = ((Map<String, Object>) xObjects).get(lastName);
+                        if (ref instanceof Ref) {
+                            drawXObject(reader, (Ref) ref, resources, current, displayed, visitedForms);
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+            operands.clear();
+            lastName = null;
+        }
+    }
+
+    private static void drawXObject(PdfObjectReader reader, Ref ref, Object parentResources, double[] ctm,
+                                    Map<Integer, double[]> displayed, Set<Integer> visitedForms) throws IOException {
+        PdfObject object = reader.readObject(ref.num);
+        Map<String, Object> dict = object == null ? null : object.dict();
+        if (dict == null) {
+            return;
+        }
+        if (isImage(dict)) {
+            // Images fill the unit square, the CTM gives their size on the page
+            double shownWidth = Math.hypot(ctm[0], ctm[1]);
+            double shownHeight = Math.hypot(ctm[2], ctm[3]);
+            double[] size = displayed.get(ref.num);
+            if (size == null) {
+                displayed.put(ref.num, new double[] { shownWidth, shownHeight });
+            } else {
+                size[0] = Math.max(size[0], shownWidth);
+                size[1] = Math.max(size[1], shownHeight);
+            }
+        } else if (new Name("Form").equals(dict.get("Subtype")) && visitedForms.add(ref.num)) {
+            double[] matrix = IDENTITY;
+            Object m = reader.resolve(dict.get("Matrix"));
+            if (m instanceof List && ((List<?>) m).size() == 6) {
+                matrix = new double[6];
+                for (int i = 0; i < 6; i++) {
+                    matrix[i] = number(((List<?>) m).get(i));
+                }
+            }
+            Object resources = dict.containsKey("Resources") ? dict.get("Resources") : parentResources;
+            scanContent(reader, ref, resources, multiply(matrix, ctm), displayed, visitedForms);
+            visitedForms.remove(ref.num);
+        }
+    }
+
+    private static double number(Object value) {
+        if (value instanceof Long) {
+            return (Long) value;
+        }
+        if (value instanceof Raw) {
+            try {
+                return Double.parseDouble(new String(((Raw) value).bytes, StandardCharsets.ISO_8859_1));
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * m × n for matrices given as a b c d e f
+     */
+    private static double[] multiply(double[] m, double[] n) {
+        return new double[] {
+            m[0] * n[0] + m[1] * n[2],
+            m[0] * n[1] + m[1] * n[3],
+            m[2] * n[0] + m[3] * n[2],
+            m[2] * n[1] + m[3] * n[3],
+            m[4] * n[0] + m[5] * n[2] + n[4],
+            m[4] * n[1] + m[5] * n[3] + n[5],
+        };
+    }
+
+    private static byte[] inflate(byte[] data) throws IOException {
+        try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(data))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] chunk = new byte[16 * 1024];
+            int n;
+            while ((n = in.read(chunk)) > 0) {
+                out.write(chunk, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Tokens of a content stream: Double operands, Names, and operator Strings. Strings,
+     * arrays, dictionaries and inline image data are skipped.
+     */
+    private static final class ContentLexer {
+        private final byte[] data;
+        private int pos;
+
+        ContentLexer(byte[] data) {
+            this.data = data;
+        }
+
+        Object next() {
+            while (pos < data.length) {
+                int c = data[pos] & 0xFF;
+                if (isWhitespace(c)) {
+                    pos++;
+                } else if (c == '%') {
+                    while (pos < data.length && data[pos] != '\n' && data[pos] != '\r') {
+                        pos++;
+                    }
+                } else if (c == '(') {
+                    skipLiteralString();
+                } else if (c == '<' || c == '>' || c == '[' || c == ']' || c == '{' || c == '}') {
+                    // Array and dictionary operands are never needed here
+                    pos++;
+                    if (c == '<' && pos < data.length && data[pos] != '<') {
+                        while (pos < data.length && data[pos] != '>') {
+                            pos++;
+                        }
+                        pos++;
+                    }
+                } else if (c == '/') {
+                    pos++;
+                    return new Name(word());
+                } else {
+                    String word = word();
+                    if (word.isEmpty()) {
+                        pos++;
+                        continue;
+                    }
+                    char first = word.charAt(0);
+                    if ((first >= '0' && first <= '9') || first == '-' || first == '+' || first == '.') {
+                        try {
+                            return Double.parseDouble(word);
+                        } catch (NumberFormatException e) {
+                            continue;
+                        }
+                    }
+                    if ("BI".equals(word)) {
+                        skipInlineImage();
+                        continue;
+                    }
+                    return word;
+                }
+            }
+            return null;
+        }
+
+        private String word() {
+            int start = pos;
+            while (pos < data.length) {
+                int c = data[pos] & 0xFF;
+                if (isWhitespace(c) || c == '(' || c == ')' || c == '<' || c == '>' || c == '[' || c == ']'
+                        || c == '{' || c == '}' || c == '/' || c == '%') {
+                    break;
+                }
+                pos++;
+            }
+            return new String(data, start, pos - start, StandardCharsets.ISO_8859_1);
+        }
+
+        private void skipLiteralString() {
+            int depth = 0;
+            while (pos < data.length) {
+                int c = data[pos++];
+                if (c == '\\') {
+                    pos++;
+                } else if (c == '(') {
+                    depth++;
+                } else if (c == ')' && --depth == 0) {
+                    return;
+                }
+            }
+        }
+
+        private void skipInlineImage() {
+            // Binary data follows "ID" and ends with whitespace + "EI"
+            while (pos + 1 < data.length) {
+                if (data[pos] == 'E' && data[pos + 1] == 'I' && pos > 0 && isWhitespace(data[pos - 1] & 0xFF)
+                        && (pos + 2 >= data.length || isWhitespace(data[pos + 2] & 0xFF))) {
+                    pos += 2;
+                    return;
+                }
+                pos++;
+            }
+            pos = data.length;
+        }
+
+        private static boolean isWhitespace(int c) {
+            return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f' || c == 0;
+        }
+    }
+}
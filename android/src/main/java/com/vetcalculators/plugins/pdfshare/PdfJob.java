@@ -0,0 +1,221 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import android.net.Uri;
+import android.os.CancellationSignal;
+
+import com.getcapacitor.JSObject;
+import com.getcapacitor.PluginCall;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * State of one generation request as it moves through the pipeline stages.
+ * A job is owned by one thread at a time: the main thread while preparing and
+ * capturing, then a background executor while encoding and writing.
+ *
+ * A job settles exactly once: {@link #written} and {@link #fail} forward to the
+ * {@link Completion} only for the first outcome, so a job that was cancelled or timed out
+ * ignores whatever its stages report afterwards. Stages check {@link #isCancelled} before
+ * they start and the write stage aborts mid-stream.
+ */
+public class PdfJob {
+
+    /**
+     * Outcome of a job; a single call resolves its promise, a batch collects items
+     */
+    public interface Completion {
+        /**
+         * The capture stage is done and the WebView is free again (main thread)
+         */
+        default void onCaptured(PdfJob job) {
+        }
+
+        /**
+         * The PDF is written to {@link PdfJob#pdfFile} (write executor)
+         */
+        void onWritten(PdfJob job);
+
+        /**
+         * The job failed in any stage (main thread or write executor)
+         */
+        void onFailed(PdfJob job, String message);
+    }
+
+    private static final AtomicLong idCounter = new AtomicLong();
+
+    public final String id;
+    public final PluginCall call;
+    public final JSObject options;
+    public final boolean share;
+    public final StageTimer timer = new StageTimer();
+    public final MemoryWatermark watermark = new MemoryWatermark();
+    public final CancellationSignal cancellation = new CancellationSignal();
+    private final AtomicBoolean settled = new AtomicBoolean();
+    private volatile String cancelReason;
+
+    public Completion completion;
+    public Executor writeExecutor;
+
+    // Set while queued in the CaptureScheduler; identical requests queued after this one
+    // become followers and settle with it (added on the main thread before the job starts)
+    public String coalesceKey;
+    public final List<PluginCall> followers = new ArrayList<>();
+
+    public PageGeometry geometry;
+    // Named cache file; only written when the PDF goes to a file (see writesToFile)
+    public File pdfFile;
+    // Caller-provided document the PDF is written to instead of pdfFile
+    public Uri destinationUri;
+    // Share a pipe-backed URI instead of writing a file, set once published
+    public boolean streamShare;
+    public Uri streamUri;
+    public String styleToken;
+    // What PrintStyles.prepare changed in the page, null if it did not answer
+    public JSONObject printStyles;
+    public String cacheKey;
+    // Canvas capture in progress, stopped when the job is cancelled (main thread)
+    public WebViewPageCapture capture;
+    public boolean captured;
+    public int pagesRendered;
+    public int pageCount;
+    public long bytes;
+    public JSObject tiles;
+    public JSObject imageOptimization;
+    // Encode stats of a "parallel" capture
+    public JSObject parallel;
+    // Pages taken over from the previous export of the documentKey, -1 without one
+    public int pagesReused = -1;
+
+    public PdfJob(PluginCall call, boolean share) {
+        this(call, call.getData(), share);
+    }
+
+    public PdfJob(PluginCall call, JSObject options, boolean share) {
+        this.call = call;
+        this.options = options;
+        this.share = share;
+        String jobId = options.optString("jobId", "");
+        this.id = jobId.isEmpty() ? "pdf-" + System.currentTimeMillis() + "-" + idCounter.incrementAndGet() : jobId;
+    }
+
+    /**
+     * Cancel the job; the first reason wins and becomes the rejection message
+     */
+    public void cancel(String reason) {
+        synchronized (this) {
+            if (cancelReason == null) {
+                cancelReason = reason;
+            }
+        }
+        cancellation.cancel();
+    }
+
+    public boolean isCancelled() {
+        return cancellation.isCanceled();
+    }
+
+    public String getCancelReason() {
+        return cancelReason;
+    }
+
+    /**
+     * Report the end of the capture stage, unless the job already settled
+     */
+    public void notifyCaptured() {
+        if (!settled.get()) {
+            completion.onCaptured(this);
+        }
+    }
+
+    /**
+     * Report the written PDF; ignored if the job already settled
+     */
+    public void written() {
+        if (settle()) {
+            completion.onWritten(this);
+        }
+    }
+
+    /**
+     * Report a failure; ignored if the job already settled
+     */
+    public void fail(String message) {
+        if (settle()) {
+            completion.onFailed(this, message);
+        }
+    }
+
+    /**
+     * Settle the job without its completion (e.g. served from the render cache)
+     *
+     * @return false if it had already settled
+     */
+    public boolean settle() {
+        return settled.compareAndSet(false, true);
+    }
+
+    public boolean writesToFile() {
+        return destinationUri == null && !streamShare;
+    }
+
+    /**
+     * Where the PDF ended up: the caller's URI, the stream URI or the cache file path
+     */
+    public String getOutputPath() {
+        if (destinationUri != null) {
+            return destinationUri.toString();
+        }
+        if (streamUri != null) {
+            return streamUri.toString();
+        }
+        return pdfFile.getAbsolutePath();
+    }
+
+    /**
+     * Result object shared by all successful outcomes; "path" and "success" are added on resolve
+     */
+    public JSObject toResult() {
+        JSObject ret = new JSObject();
+        ret.put("jobId", id);
+        ret.put("pageCount", pageCount);
+        ret.put("bytes", bytes);
+        ret.put("timings", timer.toJSObject());
+        ret.put("peakMemory", watermark.toJSObject());
+        if (tiles != null) {
+            ret.put("tiles", tiles);
+        }
+        if (imageOptimization != null) {
+            ret.put("imageOptimization", imageOptimization);
+        }
+        if (pagesReused >= 0) {
+            ret.put("pagesReused", pagesReused);
+        }
+        if (parallel != null) {
+            ret.put("parallel", parallel);
+        }
+        if (printStyles != null) {
+            ret.put("printStyles", printStyles);
+        }
+        return ret;
+    }
+
+    /**
+     * "generationProgress" event for {@code stage} ("capture" or "write")
+     */
+    public JSObject toProgress(String stage, long bytesWritten) {
+        JSObject event = new JSObject();
+        event.put("jobId", id);
+        event.put("stage", stage);
+        event.put("pagesRendered", pagesRendered);
+        event.put("pageCount", pageCount);
+        event.put("bytesWritten", bytesWritten);
+        return event;
+    }
+}
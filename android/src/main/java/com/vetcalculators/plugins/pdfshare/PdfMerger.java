@@ -0,0 +1,201 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import com.vetcalculators.plugins.pdfshare.PdfObjectReader.Name;
+import com.vetcalculators.plugins.pdfshare.PdfObjectReader.PdfObject;
+import com.vetcalculators.plugins.pdfshare.PdfObjectReader.Ref;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Concatenates PDF files at the object level without re-rendering.
+ *
+ * Every input is copied object by object in file order, renumbered into its own
+ * range of the output. The source catalogs and page tree nodes are dropped and all
+ * pages are re-parented under a single new page tree, so memory use is bounded by the
+ * largest single object dictionary plus one object number per input object.
+ */
+public class PdfMerger {
+
+    // Page attributes that may be inherited from page tree nodes
+    private static final String[] INHERITABLE = { "Resources", "MediaBox", "CropBox", "Rotate" };
+
+    private static final int PAGES_ROOT = 1;
+    private static final int CATALOG = 2;
+
+    public static class Result {
+        public final int pageCount;
+        public final long bytes;
+
+        Result(int pageCount, long bytes) {
+            this.pageCount = pageCount;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Concatenate {@code inputs} into {@code output}, pages in input order
+     */
+    public static Result merge(List<File> inputs, File output) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(output)) {
+            return merge(inputs, out);
+        }
+    }
+
+    /**
+     * Concatenate {@code inputs} into {@code output}; the stream is flushed but not closed
+     */
+    public static Result merge(List<File> inputs, OutputStream output) throws IOException {
+        List<Integer> pageRefs = new ArrayList<>();
+        int nextNum = CATALOG + 1;
+
+        // Not closed, the caller owns the stream; finish flushes the buffer
+        PdfObjectWriter writer = new PdfObjectWriter(output);
+        writer.writeHeader();
+
+        for (File input : inputs) {
+            try (PdfObjectReader reader = new PdfObjectReader(input)) {
+                int base = nextNum - 1;
+                appendDocument(reader, writer, base, pageRefs);
+                nextNum = base + reader.getSize();
+            } catch (IOException e) {
+                throw new IOException(input.getName() + ": " + e.getMessage(), e);
+            }
+        }
+
+        List<Object> kids = new ArrayList<>();
+        for (int num : pageRefs) {
+            kids.add(new Ref(num, 0));
+        }
+        Map<String, Object> pages = new LinkedHashMap<>();
+        pages.put("Type", new Name("Pages"));
+        pages.put("Kids", kids);
+        pages.put("Count", (long) pageRefs.size());
+        writer.writeObject(PAGES_ROOT, pages, PdfObjectWriter.IDENTITY);
+
+        Map<String, Object> catalog = new LinkedHashMap<>();
+        catalog.put("Type", new Name("Catalog"));
+        catalog.put("Pages", new Ref(PAGES_ROOT, 0));
+        writer.writeObject(CATALOG, catalog, PdfObjectWriter.IDENTITY);
+
+        writer.finish(nextNum, new Ref(CATALOG, 0), null);
+        return new Result(pageRefs.size(), writer.getPosition());
+    }
+
+    /**
+     * Count the pages of a document by walking its page tree
+     */
+    public static int countPages(File input) throws IOException {
+        try (PdfObjectReader reader = new PdfObjectReader(input)) {
+            Map<Integer, Map<String, Object>> pages = new LinkedHashMap<>();
+            collectPages(reader, pages, new HashSet<>());
+            return pages.size();
+        }
+    }
+
+    private static void appendDocument(PdfObjectReader reader, PdfObjectWriter writer, int base,
+                                       List<Integer> pageRefs) throws IOException {
+        // Page object number -> attributes inherited from its ancestors, in page order
+        Map<Integer, Map<String, Object>> pages = new LinkedHashMap<>();
+        Set<Integer> dropped = new HashSet<>();
+        collectPages(reader, pages, dropped);
+
+        PdfObjectWriter.RefMapper mapper = num -> num + base;
+
+        for (int num : reader.getObjectNumbersInFileOrder()) {
+            if (dropped.contains(num)) {
+                continue;
+            }
+            PdfObject object = reader.readObject(num);
+            Map<String, Object> dict = object.dict();
+
+            Map<String, Object> inherited = pages.get(num);
+            if (inherited != null && dict != null) {
+                // Pre-compensated so the mapper below resolves it to the new root
+                dict.put("Parent", new Ref(PAGES_ROOT - base, 0));
+                for (Map.Entry<String, Object> entry : inherited.entrySet()) {
+                    if (!dict.containsKey(entry.getKey())) {
+                        dict.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+
+            if (object.hasStream()) {
+                writer.writeStreamObject(num + base, dict, object.streamLength, mapper,
+                    out -> reader.copyStream(object.streamOffset, object.streamLength, out));
+            } else {
+                writer.writeObject(num + base, object.value, mapper);
+            }
+        }
+
+        for (int num : pages.keySet()) {
+            pageRefs.add(num + base);
+        }
+    }
+
+    /**
+     * Walk the page tree; fills {@code pages} with leaf pages and their inherited
+     * attributes, and {@code dropped} with the catalog and intermediate nodes
+     */
+    @SuppressWarnings("unchecked")
+    static void collectPages(PdfObjectReader reader, Map<Integer, Map<String, Object>> pages,
+                                     Set<Integer> dropped) throws IOException {
+        Object root = reader.getTrailer().get("Root");
+        if (!(root instanceof Ref)) {
+            throw new IOException("Document catalog not found");
+        }
+        dropped.add(((Ref) root).num);
+        Object catalog = reader.resolve(root);
+        if (!(catalog instanceof Map)) {
+            throw new IOException("Document catalog not found");
+        }
+        Object pagesRef = ((Map<String, Object>) catalog).get("Pages");
+        if (!(pagesRef instanceof Ref)) {
+            throw new IOException("Page tree not found");
+        }
+        walkPageTree(reader, (Ref) pagesRef, new HashMap<>(), pages, dropped, new HashSet<>());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void walkPageTree(PdfObjectReader reader, Ref nodeRef, Map<String, Object> inherited,
+                                     Map<Integer, Map<String, Object>> pages, Set<Integer> dropped,
+                                     Set<Integer> visited) throws IOException {
+        if (!visited.add(nodeRef.num)) {
+            throw new IOException("Cyclic page tree");
+        }
+        PdfObject node = reader.readObject(nodeRef.num);
+        Map<String, Object> dict = node == null ? null : node.dict();
+        if (dict == null) {
+            return;
+        }
+
+        Object kids = dict.get("Kids");
+        boolean isPage = new Name("Page").equals(dict.get("Type")) || !(kids instanceof List);
+        if (isPage) {
+            pages.put(nodeRef.num, inherited);
+            return;
+        }
+
+        dropped.add(nodeRef.num);
+        Map<String, Object> childInherited = new HashMap<>(inherited);
+        for (String key : INHERITABLE) {
+            if (dict.containsKey(key)) {
+                childInherited.put(key, dict.get(key));
+            }
+        }
+        for (Object kid : (List<Object>) kids) {
+            if (kid instanceof Ref) {
+                walkPageTree(reader, (Ref) kid, childInherited, pages, dropped, visited);
+            }
+        }
+    }
+}
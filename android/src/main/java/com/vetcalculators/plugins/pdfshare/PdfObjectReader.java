@@ -0,0 +1,952 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Minimal random-access PDF object reader.
+ *
+ * Parses the cross-reference (classic tables, cross-reference streams or both) and reads
+ * individual indirect objects on demand, so callers can walk a document without loading it
+ * into memory. Stream data is never parsed, only located, and can be copied verbatim with
+ * {@link #copyStream}. Objects stored in object streams are returned like any other
+ * object; the object streams and cross-reference streams themselves are bookkeeping of the
+ * file and are left out of {@link #getObjectNumbersInFileOrder}. Only FlateDecode (with PNG
+ * predictors) is decoded, which is what those streams use in practice.
+ *
+ * Values are modelled as: {@code Map<String, Object>} (dictionary, keys without the
+ * leading slash), {@code List<Object>} (array), {@link Ref}, {@link Name}, {@link Long}
+ * and {@link Raw} (strings, reals, booleans and null, kept byte-for-byte).
+ */
+public class PdfObjectReader implements Closeable {
+
+    /**
+     * Indirect reference "num gen R"
+     */
+    public static final class Ref {
+        public final int num;
+        public final int gen;
+
+        public Ref(int num, int gen) {
+            this.num = num;
+            this.gen = gen;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Ref && ((Ref) o).num == num && ((Ref) o).gen == gen;
+        }
+
+        @Override
+        public int hashCode() {
+            return num * 31 + gen;
+        }
+
+        @Override
+        public String toString() {
+            return num + " " + gen + " R";
+        }
+    }
+
+    /**
+     * Name object, stored without the leading slash
+     */
+    public static final class Name {
+        public final String value;
+
+        public Name(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Name && ((Name) o).value.equals(value);
+        }
+
+        @Override
+        public int hashCode() {
+            return value.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "/" + value;
+        }
+    }
+
+    /**
+     * Token kept exactly as it appeared in the file
+     */
+    public static final class Raw {
+        public final byte[] bytes;
+
+        public Raw(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        public Raw(String text) {
+            this(text.getBytes(StandardCharsets.ISO_8859_1));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Raw && Arrays.equals(((Raw) o).bytes, bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    /**
+     * An indirect object; {@code streamOffset} is -1 when the object has no stream
+     */
+    public static final class PdfObject {
+        public final int num;
+        public final int gen;
+        public final Object value;
+        public final long streamOffset;
+        public final long streamLength;
+
+        PdfObject(int num, int gen, Object value, long streamOffset, long streamLength) {
+            this.num = num;
+            this.gen = gen;
+            this.value = value;
+            this.streamOffset = streamOffset;
+            this.streamLength = streamLength;
+        }
+
+        public boolean hasStream() {
+            return streamOffset >= 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Map<String, Object> dict() {
+            return value instanceof Map ? (Map<String, Object>) value : null;
+        }
+    }
+
+    private static final Object DICT_END = new Object();
+    private static final Object ARRAY_END = new Object();
+
+    // offsets[] marker of an object stored in an object stream
+    private static final long COMPRESSED = -2;
+
+    private final RandomAccessFile file;
+    private final long fileLength;
+    private final byte[] buffer = new byte[8192];
+    private long bufferStart;
+    private int bufferLength;
+    private long position;
+
+    // 0 not seen yet, -1 free, COMPRESSED, or the file offset
+    private long[] offsets = new long[0];
+    private int[] generations = new int[0];
+    // Object stream number and index of COMPRESSED objects
+    private int[] containers = new int[0];
+    private int[] containerIndexes = new int[0];
+    // Cross-reference and object streams
+    private final Set<Integer> structural = new HashSet<>();
+    private Map<String, Object> trailer;
+
+    // Decoded object stream that compressed objects were last read from
+    private int cachedContainer;
+    private byte[] cachedContainerData;
+    private long[] cachedContainerEntries;
+
+    // While set, the tokenizer reads this buffer instead of the file
+    private byte[] memory;
+
+    public PdfObjectReader(File input) throws IOException {
+        this.file = new RandomAccessFile(input, "r");
+        this.fileLength = file.length();
+        try {
+            readCrossReference();
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e instanceof IOException ? (IOException) e : new IOException("Malformed PDF: " + input.getName(), e);
+        }
+    }
+
+    public Map<String, Object> getTrailer() {
+        return trailer;
+    }
+
+    /**
+     * One past the highest object number in use
+     */
+    public int getSize() {
+        return offsets.length;
+    }
+
+    public boolean isInUse(int num) {
+        return num > 0 && num < offsets.length && (offsets[num] > 0 || offsets[num] == COMPRESSED);
+    }
+
+    /**
+     * File offset of an object, -1 if it is not in use or stored in an object stream
+     */
+    public long getOffset(int num) {
+        return isInUse(num) && offsets[num] > 0 ? offsets[num] : -1;
+    }
+
+    /**
+     * Object numbers in use, ordered by their position in the file (objects in an object
+     * stream at the position of the stream, in stream order)
+     */
+    public List<Integer> getObjectNumbersInFileOrder() {
+        List<Integer> nums = new ArrayList<>();
+        for (int i = 1; i < offsets.length; i++) {
+            if (isInUse(i) && !structural.contains(i)) {
+                nums.add(i);
+            }
+        }
+        nums.sort((a, b) -> {
+            int byPosition = Long.compare(filePosition(a), filePosition(b));
+            return byPosition != 0 ? byPosition : Integer.compare(streamIndex(a), streamIndex(b));
+        });
+        return nums;
+    }
+
+    private long filePosition(int num) {
+        return offsets[num] == COMPRESSED ? getOffset(containers[num]) : offsets[num];
+    }
+
+    private int streamIndex(int num) {
+        return offsets[num] == COMPRESSED ? containerIndexes[num] + 1 : 0;
+    }
+
+    public PdfObject readObject(int num) throws IOException {
+        if (!isInUse(num)) {
+            return null;
+        }
+        if (offsets[num] == COMPRESSED) {
+            return readCompressedObject(num);
+        }
+        return readObjectAt(offsets[num], num);
+    }
+
+    /**
+     * Parse the indirect object at {@code offset}; {@code expectedNum} is checked unless negative
+     */
+    private PdfObject readObjectAt(long offset, int expectedNum) throws IOException {
+        seek(offset);
+        Object parsedNum = nextToken();
+        Object parsedGen = nextToken();
+        Object keyword = nextToken();
+        if (!(parsedNum instanceof Long) || (expectedNum >= 0 && ((Long) parsedNum).intValue() != expectedNum)
+                || !(parsedGen instanceof Long) || !"obj".equals(keyword)) {
+            throw new IOException(expectedNum >= 0 ? "Broken cross-reference entry for object " + expectedNum
+                : "No object at offset " + offset);
+        }
+        int num = ((Long) parsedNum).intValue();
+
+        Object value = parseValue(nextToken());
+        long mark = position;
+        Object next = nextToken();
+        if (!"stream".equals(next)) {
+            seek(mark);
+            return new PdfObject(num, ((Long) parsedGen).intValue(), value, -1, 0);
+        }
+
+        // Stream data starts after the EOL following the keyword
+        int c = read();
+        if (c == '\r') {
+            if (peek() == '\n') {
+                read();
+            }
+        } else if (c != '\n') {
+            position--;
+        }
+        long streamOffset = position;
+
+        if (!(value instanceof Map)) {
+            throw new IOException("Stream without dictionary in object " + num);
+        }
+        Object length = ((Map<?, ?>) value).get("Length");
+        long streamLength = resolveLength(length, num);
+        return new PdfObject(num, ((Long) parsedGen).intValue(), value, streamOffset, streamLength);
+    }
+
+    /**
+     * Parse an object stored in an object stream; the decoded stream is kept for its neighbours
+     */
+    private PdfObject readCompressedObject(int num) throws IOException {
+        int container = containers[num];
+        if (container != cachedContainer) {
+            loadObjectStream(container);
+        }
+        int index = containerIndexes[num];
+        int count = cachedContainerEntries.length / 2 - 1;
+        if (index < 0 || index >= count || cachedContainerEntries[2 * index + 2] != num) {
+            throw new IOException("Broken cross-reference entry for object " + num);
+        }
+        long first = cachedContainerEntries[0];
+        Object value = parseInMemory(cachedContainerData, first + cachedContainerEntries[2 * index + 3]);
+        return new PdfObject(num, 0, value, -1, 0);
+    }
+
+    /**
+     * Decode an object stream; its header lists "num offset" pairs relative to /First.
+     * Entries are stored as [first, unused, num0, offset0, num1, offset1, ...]
+     */
+    private void loadObjectStream(int container) throws IOException {
+        PdfObject stream = getOffset(container) > 0 ? readObject(container) : null;
+        Map<String, Object> dict = stream == null ? null : stream.dict();
+        if (dict == null || !stream.hasStream() || !(dict.get("N") instanceof Long) || !(dict.get("First") instanceof Long)) {
+            throw new IOException("Object stream " + container + " not found");
+        }
+        int count = ((Long) dict.get("N")).intValue();
+        byte[] data = decodeStream(stream);
+
+        long[] entries = new long[2 * count + 2];
+        entries[0] = (Long) dict.get("First");
+        byte[] saved = memory;
+        long savedPosition = position;
+        try {
+            memory = data;
+            seek(0);
+            for (int i = 0; i < 2 * count; i++) {
+                Object token = nextToken();
+                if (!(token instanceof Long)) {
+                    throw new IOException("Malformed object stream " + container);
+                }
+                entries[i + 2] = (Long) token;
+            }
+        } finally {
+            memory = saved;
+            position = savedPosition;
+        }
+        cachedContainer = container;
+        cachedContainerData = data;
+        cachedContainerEntries = entries;
+    }
+
+    private Object parseInMemory(byte[] data, long offset) throws IOException {
+        byte[] saved = memory;
+        long savedPosition = position;
+        try {
+            memory = data;
+            seek(offset);
+            return parseValue(nextToken());
+        } finally {
+            memory = saved;
+            position = savedPosition;
+        }
+    }
+
+    /**
+     * Stream data with its filters undone; only FlateDecode with optional PNG predictors is
+     * supported (for small streams only)
+     */
+    byte[] decodeStream(PdfObject object) throws IOException {
+        Map<String, Object> dict = object.dict();
+        byte[] data = readStream(object);
+        Object filter = resolve(dict.get("Filter"));
+        if (filter instanceof List && ((List<?>) filter).size() == 1) {
+            filter = ((List<?>) filter).get(0);
+        }
+        if (filter == null) {
+            return data;
+        }
+        if (!new Name("FlateDecode").equals(filter)) {
+            throw new IOException("Unsupported filter " + filter + " in object " + object.num);
+        }
+        data = inflate(data);
+
+        Object parms = resolve(dict.get("DecodeParms"));
+        if (parms instanceof List && ((List<?>) parms).size() == 1) {
+            parms = resolve(((List<?>) parms).get(0));
+        }
+        if (!(parms instanceof Map)) {
+            return data;
+        }
+        Map<?, ?> decodeParms = (Map<?, ?>) parms;
+        int predictor = intParam(decodeParms, "Predictor", 1);
+        if (predictor == 1) {
+            return data;
+        }
+        if (predictor < 10) {
+            throw new IOException("Unsupported predictor " + predictor + " in object " + object.num);
+        }
+        int colors = intParam(decodeParms, "Colors", 1);
+        int bitsPerComponent = intParam(decodeParms, "BitsPerComponent", 8);
+        int columns = intParam(decodeParms, "Columns", 1);
+        int bytesPerPixel = Math.max(1, (colors * bitsPerComponent + 7) / 8);
+        int rowLength = (columns * colors * bitsPerComponent + 7) / 8;
+        return unpredictPng(data, rowLength, bytesPerPixel);
+    }
+
+    private static int intParam(Map<?, ?> parms, String key, int defaultValue) {
+        Object value = parms.get(key);
+        return value instanceof Long ? ((Long) value).intValue() : defaultValue;
+    }
+
+    private static byte[] inflate(byte[] data) throws IOException {
+        try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(data))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] chunk = new byte[16 * 1024];
+            int n;
+            while ((n = in.read(chunk)) > 0) {
+                out.write(chunk, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Undo PNG row filters: every row of {@code rowLength} bytes is preceded by its filter type
+     */
+    static byte[] unpredictPng(byte[] data, int rowLength, int bytesPerPixel) throws IOException {
+        int rows = data.length / (rowLength + 1);
+        byte[] out = new byte[rows * rowLength];
+        for (int row = 0; row < rows; row++) {
+            int in = row * (rowLength + 1);
+            int filter = data[in++] & 0xff;
+            int start = row * rowLength;
+            for (int i = 0; i < rowLength; i++) {
+                int raw = data[in + i] & 0xff;
+                int left = i >= bytesPerPixel ? out[start + i - bytesPerPixel] & 0xff : 0;
+                int up = row > 0 ? out[start - rowLength + i] & 0xff : 0;
+                int upLeft = row > 0 && i >= bytesPerPixel ? out[start - rowLength + i - bytesPerPixel] & 0xff : 0;
+                int value;
+                switch (filter) {
+                    case 0:
+                        value = raw;
+                        break;
+                    case 1:
+                        value = raw + left;
+                        break;
+                    case 2:
+                        value = raw + up;
+                        break;
+                    case 3:
+                        value = raw + (left + up) / 2;
+                        break;
+                    case 4:
+                        value = raw + paeth(left, up, upLeft);
+                        break;
+                    default:
+                        throw new IOException("Unsupported PNG filter " + filter);
+                }
+                out[start + i] = (byte) value;
+            }
+        }
+        return out;
+    }
+
+    private static int paeth(int left, int up, int upLeft) {
+        int p = left + up - upLeft;
+        int pa = Math.abs(p - left);
+        int pb = Math.abs(p - up);
+        int pc = Math.abs(p - upLeft);
+        if (pa <= pb && pa <= pc) {
+            return left;
+        }
+        return pb <= pc ? up : upLeft;
+    }
+
+    /**
+     * Follow a reference to a direct value; non-references are returned as is
+     */
+    public Object resolve(Object value) throws IOException {
+        int depth = 0;
+        while (value instanceof Ref && depth++ < 32) {
+            PdfObject object = readObject(((Ref) value).num);
+            value = object == null ? null : object.value;
+        }
+        return value;
+    }
+
+    /**
+     * Copy {@code length} bytes of raw stream data starting at {@code offset}
+     */
+    public void copyStream(long offset, long length, OutputStream out) throws IOException {
+        byte[] chunk = new byte[64 * 1024];
+        file.seek(offset);
+        long remaining = length;
+        while (remaining > 0) {
+            int n = file.read(chunk, 0, (int) Math.min(chunk.length, remaining));
+            if (n < 0) {
+                throw new IOException("Unexpected end of file in stream data");
+            }
+            out.write(chunk, 0, n);
+            remaining -= n;
+        }
+        // Invalidate the parse buffer, the file pointer moved
+        bufferLength = 0;
+    }
+
+    /**
+     * Read raw stream data into memory (for small streams only)
+     */
+    public byte[] readStream(PdfObject object) throws IOException {
+        if (!object.hasStream() || object.streamLength > Integer.MAX_VALUE) {
+            throw new IOException("Object " + object.num + " has no readable stream");
+        }
+        byte[] data = new byte[(int) object.streamLength];
+        file.seek(object.streamOffset);
+        file.readFully(data);
+        bufferLength = 0;
+        return data;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private long resolveLength(Object length, int num) throws IOException {
+        if (length instanceof Long) {
+            return (Long) length;
+        }
+        if (length instanceof Ref) {
+            long mark = position;
+            Object resolved = resolve(length);
+            seek(mark);
+            if (resolved instanceof Long) {
+                return (Long) resolved;
+            }
+        }
+        throw new IOException("Missing stream length in object " + num);
+    }
+
+    // --- Cross-reference table ---
+
+    private void readCrossReference() throws IOException {
+        long startXref = findStartXref();
+        long sectionOffset = startXref;
+        int sections = 0;
+
+        while (sectionOffset > 0 && sections++ < 64) {
+            seek(sectionOffset);
+            Object keyword = nextToken();
+            Map<String, Object> sectionTrailer;
+            if (keyword instanceof Long) {
+                // "num gen obj" of a cross-reference stream, whose dictionary is the trailer
+                sectionTrailer = readXrefStream(sectionOffset, Collections.emptySet());
+            } else if ("xref".equals(keyword)) {
+                Set<Integer> freed = readXrefSection();
+
+                Object trailerKeyword = nextToken();
+                if (!"trailer".equals(trailerKeyword)) {
+                    throw new IOException("Trailer not found");
+                }
+                @SuppressWarnings("unchecked")
+                Map<String, Object> parsed = (Map<String, Object>) parseValue(nextToken());
+                sectionTrailer = parsed;
+                // Hybrid file: the stream holds what the table leaves out, before older sections.
+                // The table lists the objects in object streams as free, the stream locates them.
+                Object xrefStream = sectionTrailer.get("XRefStm");
+                if (xrefStream instanceof Long) {
+                    readXrefStream((Long) xrefStream, freed);
+                }
+            } else {
+                throw new IOException("Cross-reference table not found");
+            }
+            if (trailer == null) {
+                // The newest trailer wins, older sections only fill gaps
+                trailer = sectionTrailer;
+            }
+            Object prev = sectionTrailer.get("Prev");
+            sectionOffset = prev instanceof Long ? (Long) prev : -1;
+        }
+
+        if (trailer == null) {
+            throw new IOException("Trailer not found");
+        }
+        if (trailer.containsKey("Encrypt")) {
+            throw new IOException("Encrypted PDFs are not supported");
+        }
+    }
+
+    /**
+     * Read the entries of the table at the current position, returning the objects it freed
+     */
+    private Set<Integer> readXrefSection() throws IOException {
+        Set<Integer> freed = new HashSet<>();
+        while (true) {
+            long mark = position;
+            Object first = nextToken();
+            if (!(first instanceof Long)) {
+                seek(mark);
+                return freed;
+            }
+            Object count = nextToken();
+            if (!(count instanceof Long)) {
+                throw new IOException("Malformed cross-reference subsection");
+            }
+            int start = ((Long) first).intValue();
+            int n = ((Long) count).intValue();
+            ensureCapacity(start + n);
+
+            for (int i = 0; i < n; i++) {
+                Object offset = nextToken();
+                Object gen = nextToken();
+                Object type = nextToken();
+                if (!(offset instanceof Long) || !(gen instanceof Long)) {
+                    throw new IOException("Malformed cross-reference entry");
+                }
+                int num = start + i;
+                // Entries already seen belong to a newer section
+                if (offsets[num] != 0) {
+                    continue;
+                }
+                if ("n".equals(type) && num > 0) {
+                    offsets[num] = (Long) offset;
+                    generations[num] = ((Long) gen).intValue();
+                } else {
+                    offsets[num] = -1;
+                    freed.add(num);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the entries of the cross-reference stream at {@code offset}, returning its dictionary
+     *
+     * @param overridable free entries of the same section that the stream's entries replace
+     */
+    private Map<String, Object> readXrefStream(long offset, Set<Integer> overridable) throws IOException {
+        PdfObject stream = readObjectAt(offset, -1);
+        Map<String, Object> dict = stream.dict();
+        if (dict == null || !stream.hasStream() || !new Name("XRef").equals(dict.get("Type"))) {
+            throw new IOException("Cross-reference stream not found");
+        }
+        Object w = dict.get("W");
+        if (!(w instanceof List) || ((List<?>) w).size() != 3) {
+            throw new IOException("Malformed cross-reference stream");
+        }
+        int[] widths = new int[3];
+        for (int i = 0; i < 3; i++) {
+            Object width = ((List<?>) w).get(i);
+            widths[i] = width instanceof Long ? ((Long) width).intValue() : -1;
+            if (widths[i] < 0 || widths[i] > 8) {
+                throw new IOException("Malformed cross-reference stream");
+            }
+        }
+        int entryLength = widths[0] + widths[1] + widths[2];
+
+        List<?> index = dict.get("Index") instanceof List ? (List<?>) dict.get("Index")
+            : Arrays.asList(0L, dict.get("Size"));
+        byte[] data = decodeStream(stream);
+        structural.add(stream.num);
+
+        int pos = 0;
+        for (int s = 0; s + 1 < index.size(); s += 2) {
+            if (!(index.get(s) instanceof Long) || !(index.get(s + 1) instanceof Long)) {
+                throw new IOException("Malformed cross-reference stream");
+            }
+            int start = ((Long) index.get(s)).intValue();
+            int n = ((Long) index.get(s + 1)).intValue();
+            ensureCapacity(start + n);
+            for (int i = 0; i < n; i++, pos += entryLength) {
+                if (pos + entryLength > data.length) {
+                    throw new IOException("Truncated cross-reference stream");
+                }
+                // A missing type field means type 1
+                long type = widths[0] == 0 ? 1 : field(data, pos, widths[0]);
+                long second = field(data, pos + widths[0], widths[1]);
+                long third = field(data, pos + widths[0] + widths[1], widths[2]);
+                int num = start + i;
+                if (offsets[num] != 0 && !(type != 0 && overridable.contains(num))) {
+                    continue;
+                }
+                if (type == 1 && num > 0) {
+                    offsets[num] = second;
+                    generations[num] = (int) third;
+                } else if (type == 2 && num > 0) {
+                    offsets[num] = COMPRESSED;
+                    containers[num] = (int) second;
+                    containerIndexes[num] = (int) third;
+                    structural.add((int) second);
+                } else {
+                    offsets[num] = -1;
+                }
+            }
+        }
+        return dict;
+    }
+
+    private static long field(byte[] data, int pos, int width) {
+        long value = 0;
+        for (int i = 0; i < width; i++) {
+            value = (value << 8) | (data[pos + i] & 0xff);
+        }
+        return value;
+    }
+
+    private void ensureCapacity(int size) {
+        if (size > offsets.length) {
+            offsets = Arrays.copyOf(offsets, size);
+            generations = Arrays.copyOf(generations, size);
+            containers = Arrays.copyOf(containers, size);
+            containerIndexes = Arrays.copyOf(containerIndexes, size);
+        }
+    }
+
+    private long findStartXref() throws IOException {
+        int tailLength = (int) Math.min(fileLength, 2048);
+        byte[] tail = new byte[tailLength];
+        file.seek(fileLength - tailLength);
+        file.readFully(tail);
+        String text = new String(tail, StandardCharsets.ISO_8859_1);
+        int index = text.lastIndexOf("startxref");
+        if (index < 0) {
+            throw new IOException("startxref not found");
+        }
+        seek(fileLength - tailLength + index + "startxref".length());
+        Object offset = nextToken();
+        if (!(offset instanceof Long)) {
+            throw new IOException("Malformed startxref");
+        }
+        return (Long) offset;
+    }
+
+    // --- Tokenizer ---
+
+    private Object parseValue(Object token) throws IOException {
+        if (token == DICT_END || token == ARRAY_END) {
+            throw new IOException("Unexpected delimiter at " + position);
+        }
+        if ("<<".equals(token)) {
+            Map<String, Object> dict = new LinkedHashMap<>();
+            while (true) {
+                Object key = nextToken();
+                if (key == DICT_END) {
+                    return dict;
+                }
+                if (!(key instanceof Name)) {
+                    throw new IOException("Dictionary key expected at " + position);
+                }
+                dict.put(((Name) key).value, parseValue(nextToken()));
+            }
+        }
+        if ("[".equals(token)) {
+            List<Object> array = new ArrayList<>();
+            while (true) {
+                Object item = nextToken();
+                if (item == ARRAY_END) {
+                    return array;
+                }
+                array.add(parseValue(item));
+            }
+        }
+        if (token instanceof Long) {
+            // "num gen R" is only known after looking two tokens ahead
+            long mark = position;
+            Object gen = nextToken();
+            if (gen instanceof Long) {
+                Object r = nextToken();
+                if ("R".equals(r)) {
+                    return new Ref(((Long) token).intValue(), ((Long) gen).intValue());
+                }
+            }
+            seek(mark);
+            return token;
+        }
+        if (token instanceof String) {
+            // Bare keyword (true, false, null)
+            return new Raw((String) token);
+        }
+        if (token == null) {
+            throw new IOException("Unexpected end of file");
+        }
+        return token;
+    }
+
+    /**
+     * Next token: Long, Name, Raw (strings/reals), String (keywords and "<<", "["),
+     * DICT_END, ARRAY_END, or null at end of file
+     */
+    private Object nextToken() throws IOException {
+        int c = skipWhitespaceAndComments();
+        if (c < 0) {
+            return null;
+        }
+        switch (c) {
+            case '<':
+                if (peek() == '<') {
+                    read();
+                    return "<<";
+                }
+                return readHexString();
+            case '>':
+                if (peek() == '>') {
+                    read();
+                    return DICT_END;
+                }
+                throw new IOException("Unexpected '>' at " + position);
+            case '[':
+                return "[";
+            case ']':
+                return ARRAY_END;
+            case '(':
+                return readLiteralString();
+            case '/':
+                return new Name(readRegular(new StringBuilder()));
+            default:
+                StringBuilder sb = new StringBuilder();
+                sb.append((char) c);
+                String word = readRegular(sb);
+                if (isNumeric(word)) {
+                    if (word.indexOf('.') < 0) {
+                        try {
+                            return Long.parseLong(word);
+                        } catch (NumberFormatException ignored) {
+                            // Out of range, keep the literal
+                        }
+                    }
+                    return new Raw(word);
+                }
+                return word;
+        }
+    }
+
+    private static boolean isNumeric(String word) {
+        if (word.isEmpty()) {
+            return false;
+        }
+        boolean digit = false;
+        for (int i = 0; i < word.length(); i++) {
+            char ch = word.charAt(i);
+            if (ch >= '0' && ch <= '9') {
+                digit = true;
+            } else if (!(ch == '.' || ((ch == '-' || ch == '+') && i == 0))) {
+                return false;
+            }
+        }
+        return digit;
+    }
+
+    private String readRegular(StringBuilder sb) throws IOException {
+        while (true) {
+            int c = peek();
+            if (c < 0 || isWhitespace(c) || isDelimiter(c)) {
+                return sb.toString();
+            }
+            sb.append((char) read());
+        }
+    }
+
+    private Raw readHexString() throws IOException {
+        StringBuilder sb = new StringBuilder("<");
+        while (true) {
+            int c = read();
+            if (c < 0) {
+                throw new IOException("Unterminated hex string");
+            }
+            sb.append((char) c);
+            if (c == '>') {
+                return new Raw(sb.toString());
+            }
+        }
+    }
+
+    private Raw readLiteralString() throws IOException {
+        java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+        bytes.write('(');
+        int depth = 1;
+        while (depth > 0) {
+            int c = read();
+            if (c < 0) {
+                throw new IOException("Unterminated string");
+            }
+            bytes.write(c);
+            if (c == '\\') {
+                int escaped = read();
+                if (escaped < 0) {
+                    throw new IOException("Unterminated string");
+                }
+                bytes.write(escaped);
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            }
+        }
+        return new Raw(bytes.toByteArray());
+    }
+
+    private int skipWhitespaceAndComments() throws IOException {
+        while (true) {
+            int c = read();
+            if (c < 0) {
+                return -1;
+            }
+            if (c == '%') {
+                while (c >= 0 && c != '\n' && c != '\r') {
+                    c = read();
+                }
+                continue;
+            }
+            if (!isWhitespace(c)) {
+                return c;
+            }
+        }
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f' || c == 0;
+    }
+
+    private static boolean isDelimiter(int c) {
+        return c == '(' || c == ')' || c == '<' || c == '>' || c == '['
+            || c == ']' || c == '{' || c == '}' || c == '/' || c == '%';
+    }
+
+    // --- Buffered random access ---
+
+    private void seek(long pos) {
+        position = pos;
+    }
+
+    private int peek() throws IOException {
+        int c = read();
+        if (c >= 0) {
+            position--;
+        }
+        return c;
+    }
+
+    private int read() throws IOException {
+        if (memory != null) {
+            return position < memory.length ? memory[(int) position++] & 0xff : -1;
+        }
+        if (position < bufferStart || position >= bufferStart + bufferLength) {
+            if (position >= fileLength) {
+                return -1;
+            }
+            file.seek(position);
+            bufferStart = position;
+            bufferLength = Math.max(0, file.read(buffer, 0, buffer.length));
+            if (bufferLength == 0) {
+                return -1;
+            }
+        }
+        return buffer[(int) (position++ - bufferStart)] & 0xff;
+    }
+}
@@ -0,0 +1,221 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import com.vetcalculators.plugins.pdfshare.PdfObjectReader.Name;
+import com.vetcalculators.plugins.pdfshare.PdfObjectReader.Raw;
+import com.vetcalculators.plugins.pdfshare.PdfObjectReader.Ref;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sequential PDF writer for values in the {@link PdfObjectReader} model.
+ *
+ * Objects are written in any order as they become available; their offsets are
+ * remembered and the cross-reference table is emitted by {@link #finish}. Numbers
+ * that were never written become free entries.
+ */
+public class PdfObjectWriter implements Closeable {
+
+    /**
+     * Maps object numbers of a source document to numbers in the output
+     */
+    public interface RefMapper {
+        int map(int num);
+    }
+
+    public static final RefMapper IDENTITY = num -> num;
+
+    private final OutputStream out;
+    private long position;
+    private long[] offsets = new long[16];
+
+    public PdfObjectWriter(OutputStream out) {
+        this.out = new BufferedOutputStream(out, 64 * 1024);
+    }
+
+    public void writeHeader() throws IOException {
+        // The binary comment marks the file as binary for transfer tools
+        write("%PDF-1.7\n");
+        write(new byte[] { '%', (byte) 0xE2, (byte) 0xE3, (byte) 0xCF, (byte) 0xD3, '\n' });
+    }
+
+    /**
+     * Write "num 0 obj value endobj"
+     */
+    public void writeObject(int num, Object value, RefMapper mapper) throws IOException {
+        beginObject(num);
+        writeValue(value, mapper);
+        write("\nendobj\n");
+    }
+
+    /**
+     * Write a stream object whose data is produced by {@code data}; /Length is set from
+     * {@code length}, which must match the number of bytes the callback writes
+     */
+    public void writeStreamObject(int num, Map<String, Object> dict, long length, RefMapper mapper,
+                                  StreamData data) throws IOException {
+        dict.put("Length", length);
+        beginObject(num);
+        writeValue(dict, mapper);
+        write("\nstream\n");
+        CountingOutputStream counter = new CountingOutputStream(new NonClosingOutputStream(out));
+        data.writeTo(counter);
+        counter.flush();
+        if (counter.getBytesWritten() != length) {
+            throw new IOException("Stream length mismatch in object " + num);
+        }
+        position += length;
+        write("\nendstream\nendobj\n");
+    }
+
+    public interface StreamData {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Write the cross-reference table and trailer
+     *
+     * @param size one past the highest object number of the document
+     */
+    public void finish(int size, Ref root, Ref info) throws IOException {
+        ensureCapacity(size);
+        long xrefOffset = position;
+        StringBuilder sb = new StringBuilder();
+        sb.append("xref\n0 ").append(size).append('\n');
+
+        // Free entries form a linked list starting at object 0
+        int[] nextFree = new int[size];
+        int next = 0;
+        for (int i = size - 1; i >= 0; i--) {
+            if (i == 0 || offsets[i] <= 0) {
+                nextFree[i] = next;
+                next = i;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            if (i > 0 && offsets[i] > 0) {
+                sb.append(pad(offsets[i], 10)).append(" 00000 n \n");
+            } else {
+                sb.append(pad(nextFree[i], 10)).append(i == 0 ? " 65535 f \n" : " 00001 f \n");
+            }
+        }
+        write(sb.toString());
+
+        write("trailer\n<< /Size " + size + " /Root " + root.num + " 0 R");
+        if (info != null) {
+            write(" /Info " + info.num + " 0 R");
+        }
+        write(" >>\nstartxref\n" + xrefOffset + "\n%%EOF\n");
+        out.flush();
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void beginObject(int num) throws IOException {
+        ensureCapacity(num + 1);
+        offsets[num] = position;
+        write(num + " 0 obj\n");
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeValue(Object value, RefMapper mapper) throws IOException {
+        if (value instanceof Map) {
+            write("<<");
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+                write(" /" + entry.getKey() + " ");
+                writeValue(entry.getValue(), mapper);
+            }
+            write(" >>");
+        } else if (value instanceof List) {
+            write("[");
+            boolean first = true;
+            for (Object item : (List<Object>) value) {
+                if (!first) {
+                    write(" ");
+                }
+                writeValue(item, mapper);
+                first = false;
+            }
+            write("]");
+        } else if (value instanceof Ref) {
+            write(mapper.map(((Ref) value).num) + " 0 R");
+        } else if (value instanceof Name) {
+            write("/" + ((Name) value).value);
+        } else if (value instanceof Raw) {
+            write(((Raw) value).bytes);
+        } else if (value instanceof Long || value instanceof Integer) {
+            write(value.toString());
+        } else if (value instanceof Float || value instanceof Double) {
+            write(formatReal(((Number) value).doubleValue()));
+        } else if (value == null) {
+            write("null");
+        } else {
+            throw new IOException("Unsupported PDF value: " + value.getClass().getSimpleName());
+        }
+    }
+
+    static String formatReal(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        String text = String.format(java.util.Locale.US, "%.4f", value);
+        text = text.replaceAll("0+$", "");
+        return text.endsWith(".") ? text.substring(0, text.length() - 1) : text;
+    }
+
+    private void ensureCapacity(int size) {
+        if (size > offsets.length) {
+            offsets = Arrays.copyOf(offsets, Math.max(size, offsets.length * 2));
+        }
+    }
+
+    private static String pad(long value, int width) {
+        String text = Long.toString(value);
+        StringBuilder sb = new StringBuilder(width);
+        for (int i = text.length(); i < width; i++) {
+            sb.append('0');
+        }
+        return sb.append(text).toString();
+    }
+
+    private void write(String text) throws IOException {
+        write(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        out.write(bytes);
+        position += bytes.length;
+    }
+
+    /**
+     * Lets stream callbacks close what they were given without closing the document
+     */
+    private static final class NonClosingOutputStream extends java.io.FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
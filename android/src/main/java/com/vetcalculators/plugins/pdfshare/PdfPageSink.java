@@ -0,0 +1,37 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import android.graphics.pdf.PdfDocument;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Destination for captured pages.
+ *
+ * {@link #startPage} and {@link #finishPage} are called on the main thread while pages are
+ * captured; {@link #writeTo} is called on a background thread after the last page, possibly
+ * more than once (e.g. every time a share target opens a streamed document), until
+ * {@link #close}.
+ */
+public interface PdfPageSink {
+
+    PdfDocument.Page startPage(PdfDocument.PageInfo pageInfo);
+
+    /**
+     * Finish a page; {@code onReady} is run once the sink can accept the next page
+     */
+    void finishPage(PdfDocument.Page page, Runnable onReady);
+
+    /**
+     * Write the complete document to {@code out}, recording stage timings in {@code timer};
+     * the stream is flushed but not closed
+     *
+     * @return number of bytes written
+     */
+    long writeTo(OutputStream out, StageTimer timer) throws IOException;
+
+    /**
+     * Release everything held by the sink; safe to call more than once
+     */
+    void close();
+}
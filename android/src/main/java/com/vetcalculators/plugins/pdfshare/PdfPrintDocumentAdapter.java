@@ -1,38 +1,53 @@
 package com.vetcalculators.plugins.pdfshare;
 
-import android.content.Context;
 import android.os.Bundle;
 import android.os.CancellationSignal;
 import android.os.ParcelFileDescriptor;
+import android.graphics.pdf.PdfRenderer;
 import android.print.PageRange;
 import android.print.PrintAttributes;
 import android.print.PrintDocumentAdapter;
 import android.print.PrintDocumentInfo;
-import android.print.pdf.PrintedPdfDocument;
-import android.graphics.Canvas;
-import android.graphics.pdf.PdfDocument;
+import android.print.PrintResultCallbacks;
 import android.util.Log;
 
-import com.getcapacitor.PluginCall;
-
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.File;
 
+/**
+ * Vector PDF output through the WebView's own print adapter.
+ *
+ * Wraps {@code WebView.createPrintDocumentAdapter} and can drive it without the system print
+ * UI: {@link #print} runs start, layout and write of the whole document straight into the
+ * caller's ParcelFileDescriptor (the output file or a document URI), written exactly once.
+ * Chromium lays the page out with the print media rules, so the result has selectable text,
+ * vector graphics and real page breaks.
+ *
+ * The result callbacks have hidden constructors and come from {@link PrintResultCallbacks},
+ * which lives in the framework's {@code android.print} package to reach them. That only works
+ * while the runtime does not enforce the package boundary across class loaders, so
+ * {@link #isSupported} checks it once before print mode is used.
+ *
+ * All methods must be called on the main thread.
+ */
 public class PdfPrintDocumentAdapter extends PrintDocumentAdapter {
     private static final String TAG = "PdfPrintAdapter";
 
-    private PrintDocumentAdapter originalAdapter;
-    private File outputFile;
-    private PluginCall pluginCall;
-    private Context context;
-    private PrintedPdfDocument pdfDocument;
+    public interface Callback {
+        /**
+         * The document is complete in the destination; the WebView may be used again
+         */
+        void onWritten();
+
+        void onError(String message);
+    }
+
+    private final PrintDocumentAdapter originalAdapter;
+
+    // Result of the package access check, null until checked
+    private static volatile Boolean supported;
 
-    public PdfPrintDocumentAdapter(PrintDocumentAdapter originalAdapter, File outputFile, PluginCall pluginCall, Context context) {
+    public PdfPrintDocumentAdapter(PrintDocumentAdapter originalAdapter) {
         this.originalAdapter = originalAdapter;
-        this.outputFile = outputFile;
-        this.pluginCall = pluginCall;
-        this.context = context;
     }
 
     @Override
@@ -45,97 +60,113 @@ public class PdfPrintDocumentAdapter extends PrintDocumentAdapter {
     public void onLayout(PrintAttributes oldAttributes, PrintAttributes newAttributes,
                         CancellationSignal cancellationSignal, LayoutResultCallback callback,
                         Bundle extras) {
-
-        Log.d(TAG, "onLayout called");
-
-        if (cancellationSignal.isCanceled()) {
-            callback.onLayoutCancelled();
-            return;
-        }
-
-        // Create a new document with the new attributes
-        pdfDocument = new PrintedPdfDocument(context, newAttributes);
-
-        // Build document info
-        PrintDocumentInfo.Builder builder = new PrintDocumentInfo.Builder(outputFile.getName())
-                .setContentType(PrintDocumentInfo.CONTENT_TYPE_DOCUMENT)
-                .setPageCount(1); // Assume single page for now
-
-        PrintDocumentInfo info = builder.build();
-        callback.onLayoutFinished(info, true);
+        originalAdapter.onLayout(oldAttributes, newAttributes, cancellationSignal, callback, extras);
     }
 
     @Override
     public void onWrite(PageRange[] pages, ParcelFileDescriptor destination,
                        CancellationSignal cancellationSignal, WriteResultCallback callback) {
+        originalAdapter.onWrite(pages, destination, cancellationSignal, callback);
+    }
 
-        Log.d(TAG, "onWrite called");
+    @Override
+    public void onFinish() {
+        Log.d(TAG, "PDF generation finished");
+        originalAdapter.onFinish();
+    }
 
-        try {
-            if (cancellationSignal.isCanceled()) {
-                callback.onWriteCancelled();
-                return;
+    /**
+     * Lay out and write all pages for {@code attributes} into {@code destination}; the
+     * descriptor stays open and belongs to the caller
+     */
+    public void print(PrintAttributes attributes, ParcelFileDescriptor destination,
+                      CancellationSignal cancellationSignal, Callback callback) {
+        Bundle extras = new Bundle();
+        extras.putBoolean(EXTRA_PRINT_PREVIEW, false);
+
+        onStart();
+        onLayout(null, attributes, cancellationSignal, PrintResultCallbacks.layout(new PrintResultCallbacks.LayoutListener() {
+            @Override
+            public void onLayoutFinished(PrintDocumentInfo info, boolean changed) {
+                write(destination, cancellationSignal, callback);
             }
 
-            // Start a page
-            PdfDocument.Page page = pdfDocument.startPage(0);
-
-            if (cancellationSignal.isCanceled()) {
-                callback.onWriteCancelled();
-                pdfDocument.close();
-                return;
+            @Override
+            public void onLayoutFailed(CharSequence error) {
+                finish(callback, "Print layout failed: " + error);
             }
+        }), extras);
+    }
 
-            // Get the canvas to draw on
-            Canvas canvas = page.getCanvas();
-
-            // This is where we would render the WebView content
-            // For now, we'll use the original adapter's approach
-
-            // Finish the page
-            pdfDocument.finishPage(page);
-
-            // Write the document to both the system destination and our file
-            try (FileOutputStream fos = new FileOutputStream(outputFile)) {
-                pdfDocument.writeTo(fos);
-                fos.flush();
-
-                // Also write to the system destination
-                try (FileOutputStream sysFos = new FileOutputStream(destination.getFileDescriptor())) {
-                    pdfDocument.writeTo(sysFos);
-                    sysFos.flush();
+    private void write(ParcelFileDescriptor destination, CancellationSignal cancellationSignal, Callback callback) {
+        onWrite(new PageRange[] { PageRange.ALL_PAGES }, destination, cancellationSignal,
+            PrintResultCallbacks.write(new PrintResultCallbacks.WriteListener() {
+                @Override
+                public void onWriteFinished(PageRange[] pages) {
+                    finish(callback, null);
                 }
 
-                Log.d(TAG, "PDF written successfully to: " + outputFile.getAbsolutePath());
-
-                // Close the document
-                pdfDocument.close();
-
-                // Notify success
-                callback.onWriteFinished(new PageRange[]{PageRange.ALL_PAGES});
+                @Override
+                public void onWriteFailed(CharSequence error) {
+                    finish(callback, "Print write failed: " + error);
+                }
+            }));
+    }
 
-                // Share the file
-                PdfShare.shareFile(outputFile, context, pluginCall);
+    private void finish(Callback callback, String error) {
+        onFinish();
+        if (error == null) {
+            callback.onWritten();
+        } else {
+            Log.e(TAG, "❌ " + error);
+            callback.onError(error);
+        }
+    }
 
-            } catch (IOException e) {
-                Log.e(TAG, "Error writing PDF", e);
-                callback.onWriteFailed(e.toString());
-                pluginCall.reject("Error writing PDF: " + e.getMessage());
+    /**
+     * Whether the print result callbacks can be created on this device; if not, print mode
+     * must not be used. Any thread
+     */
+    public static boolean isSupported() {
+        Boolean result = supported;
+        if (result == null) {
+            try {
+                PrintResultCallbacks.layout(new PrintResultCallbacks.LayoutListener() {
+                    @Override
+                    public void onLayoutFinished(PrintDocumentInfo info, boolean changed) {
+                    }
+
+                    @Override
+                    public void onLayoutFailed(CharSequence error) {
+                    }
+                });
+                PrintResultCallbacks.write(new PrintResultCallbacks.WriteListener() {
+                    @Override
+                    public void onWriteFinished(PageRange[] pages) {
+                    }
+
+                    @Override
+                    public void onWriteFailed(CharSequence error) {
+                    }
+                });
+                result = true;
+            } catch (LinkageError | RuntimeException e) {
+                // IllegalAccessError or VerifyError when the package-private constructors are out of reach
+                Log.w(TAG, "Print result callbacks unavailable, print mode disabled", e);
+                result = false;
             }
-
-        } catch (Exception e) {
-            Log.e(TAG, "Error in onWrite", e);
-            callback.onWriteFailed(e.toString());
-            pluginCall.reject("Error generating PDF: " + e.getMessage());
+            supported = result;
         }
+        return result;
     }
 
-    @Override
-    public void onFinish() {
-        Log.d(TAG, "PDF generation finished");
-        originalAdapter.onFinish();
-        if (pdfDocument != null) {
-            pdfDocument.close();
+    /**
+     * Pages in a written PDF; the layout result of the WebView adapter does not know the count.
+     * Takes ownership of {@code fd}, which must be seekable.
+     */
+    public static int countPages(ParcelFileDescriptor fd) throws IOException {
+        try (PdfRenderer renderer = new PdfRenderer(fd)) {
+            return renderer.getPageCount();
         }
     }
-}
\ No newline at end of file
+}
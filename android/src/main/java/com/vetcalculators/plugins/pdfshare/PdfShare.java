@@ -5,6 +5,7 @@ import android.content.Intent;
 import android.net.Uri;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import androidx.core.content.FileProvider;
 
@@ -16,10 +17,25 @@ import java.io.File;
 public class PdfShare {
     private static final String TAG = "PdfShare";
 
+    public interface Callback {
+        /**
+         * The share sheet was started and the call resolved (main thread)
+         */
+        void onShared(long shareMillis);
+    }
+
     /**
      * Share a PDF file using Android's share intent
      */
     public static void shareFile(File pdfFile, Context context, PluginCall call) {
+        shareFile(pdfFile, context, call, null, null);
+    }
+
+    /**
+     * Share a PDF file, merging {@code extras} (e.g. timings) into the resolved result;
+     * {@code callback} may be null
+     */
+    public static void shareFile(File pdfFile, Context context, PluginCall call, JSObject extras, Callback callback) {
         new Handler(Looper.getMainLooper()).post(() -> {
             try {
                 if (!pdfFile.exists()) {
@@ -38,27 +54,23 @@ public class PdfShare {
                     pdfFile
                 );
 
-                // Create share intent
-                Intent shareIntent = new Intent(Intent.ACTION_SEND);
-                shareIntent.setType("application/pdf");
-                shareIntent.putExtra(Intent.EXTRA_STREAM, contentUri);
-                shareIntent.putExtra(Intent.EXTRA_SUBJECT, "Veterinary Dosage PDF");
-                shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
-
-                // Create chooser
-                Intent chooser = Intent.createChooser(shareIntent, "Share PDF");
-                chooser.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-
-                context.startActivity(chooser);
-
-                // Return success
-                JSObject ret = new JSObject();
-                ret.put("success", true);
-                ret.put("path", pdfFile.getAbsolutePath());
-                call.resolve(ret);
+                startShare(contentUri, context, call, extras, pdfFile.getAbsolutePath(), callback);
 
-                Log.d(TAG, "PDF shared successfully");
+            } catch (Exception e) {
+                Log.e(TAG, "Error sharing PDF", e);
+                call.reject("Error sharing PDF: " + e.getMessage());
+            }
+        });
+    }
 
+    /**
+     * Share a PDF that is already behind a content URI (a caller-provided document or a stream)
+     */
+    public static void shareUri(Uri contentUri, Context context, PluginCall call, JSObject extras, Callback callback) {
+        new Handler(Looper.getMainLooper()).post(() -> {
+            try {
+                Log.d(TAG, "Sharing PDF URI: " + contentUri);
+                startShare(contentUri, context, call, extras, contentUri.toString(), callback);
             } catch (Exception e) {
                 Log.e(TAG, "Error sharing PDF", e);
                 call.reject("Error sharing PDF: " + e.getMessage());
@@ -66,6 +78,42 @@ public class PdfShare {
         });
     }
 
+    private static void startShare(Uri contentUri, Context context, PluginCall call, JSObject extras, String path,
+                                   Callback callback) {
+        long start = SystemClock.elapsedRealtime();
+
+        // Create share intent
+        Intent shareIntent = new Intent(Intent.ACTION_SEND);
+        shareIntent.setType("application/pdf");
+        shareIntent.putExtra(Intent.EXTRA_STREAM, contentUri);
+        shareIntent.putExtra(Intent.EXTRA_SUBJECT, "Veterinary Dosage PDF");
+        shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+
+        // Create chooser
+        Intent chooser = Intent.createChooser(shareIntent, "Share PDF");
+        chooser.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+
+        context.startActivity(chooser);
+        long shareMillis = SystemClock.elapsedRealtime() - start;
+
+        // Return success
+        JSObject ret = extras != null ? extras : new JSObject();
+        // getJSObject returns a copy, the updated timings have to be put back
+        JSObject timings = ret.getJSObject("timings");
+        if (timings != null) {
+            timings.put("shareMs", shareMillis);
+            ret.put("timings", timings);
+        }
+        ret.put("success", true);
+        ret.put("path", path);
+        call.resolve(ret);
+
+        Log.d(TAG, "PDF shared successfully");
+        if (callback != null) {
+            callback.onShared(shareMillis);
+        }
+    }
+
     /**
      * Generate file name with timestamp
      */
@@ -76,36 +124,6 @@ public class PdfShare {
         return baseFileName + "_" + System.currentTimeMillis() + ".pdf";
     }
 
-    /**
-     * Clean up old PDF files to prevent storage bloat
-     */
-    public static void cleanupOldFiles(Context context) {
-        try {
-            File cacheDir = context.getCacheDir();
-            File[] files = cacheDir.listFiles((dir, name) -> name.endsWith(".pdf"));
-
-            if (files != null) {
-                long currentTime = System.currentTimeMillis();
-                int deletedCount = 0;
-
-                for (File file : files) {
-                    // Delete files older than 1 hour
-                    if (currentTime - file.lastModified() > 3600000) {
-                        if (file.delete()) {
-                            deletedCount++;
-                        }
-                    }
-                }
-
-                if (deletedCount > 0) {
-                    Log.d(TAG, "Cleaned up " + deletedCount + " old PDF files");
-                }
-            }
-        } catch (Exception e) {
-            Log.w(TAG, "Error cleaning up old files", e);
-        }
-    }
-
     public String echo(String value) {
         Log.i("Echo", value);
         return value;
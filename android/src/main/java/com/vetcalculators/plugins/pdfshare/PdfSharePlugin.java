@@ -1,350 +1,1577 @@
 package com.vetcalculators.plugins.pdfshare;
 
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
 import android.graphics.pdf.PdfDocument;
+import android.net.Uri;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.OperationCanceledException;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
 import android.util.Log;
 import android.webkit.WebView;
-import android.content.Context;
 
+import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
 import com.getcapacitor.Plugin;
 import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 @CapacitorPlugin(name = "PdfShare")
 public class PdfSharePlugin extends Plugin {
     private static final String TAG = "PdfSharePlugin";
 
+    // Cache subdirectory for page chunks of streaming jobs
+    private static final String CHUNK_DIR = "pdfshare-chunks";
+
+    // Same default as the web implementation
+    private static final String DEFAULT_ELEMENT_ID = "printPage";
+
+    // How long a streamed share stays readable
+    private static final long STREAM_TTL_MS = 10 * 60 * 1000;
+
+    // Bytes between "generationProgress" events of the write stage
+    private static final long PROGRESS_BYTES = 256 * 1024;
+
+    private final ExecutorService pdfExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "PdfShare-writer");
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+
+    // Encodes the pages of "parallel" captures, created on first use (main thread)
+    private ExecutorService pageEncoders;
+    private int parallelism;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final CaptureScheduler captureScheduler = new CaptureScheduler();
+    private PipelineStats stats;
+    private boolean traceSections;
+    private final AtomicLong batchCounter = new AtomicLong();
+
+    // Running jobs and batches by ID, for cancelGeneration
+    private final Map<String, PdfJob> activeJobs = new ConcurrentHashMap<>();
+    private final Map<String, PdfBatch> activeBatches = new ConcurrentHashMap<>();
+    private long defaultTimeoutMs;
+
+    private RenderCache renderCache;
+    private CacheJanitor janitor;
+    private BitmapPool tilePool;
+
+    // Created on first use, main thread only
+    private OffscreenRendererPool rendererPool;
+
+    // The PDF backend and fonts have been initialized on the writer thread
+    private volatile boolean pipelineWarm;
+
+    // Created on first use, pdfExecutor only
+    private TemplateRenderer templateRenderer;
+
+    // Thumbnails render here so they never wait behind an export on the writer
+    private final ExecutorService previewExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "PdfShare-preview");
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+    // previewExecutor only
+    private PreviewRenderer previewRenderer;
+
+    @Override
+    public void load() {
+        super.load();
+        int maxEntries = getConfig().getInt("renderCacheMaxEntries", 16);
+        int maxMegabytes = getConfig().getInt("renderCacheMaxMegabytes", 50);
+        renderCache = new RenderCache(maxEntries, maxMegabytes * 1024L * 1024L);
+
+        CacheJanitor.Limits limits = new CacheJanitor.Limits(
+            getConfig().getInt("cacheMaxAgeMinutes", 60) * 60 * 1000L,
+            getConfig().getInt("cacheMaxMegabytes", 100) * 1024L * 1024L,
+            getConfig().getInt("cacheMaxFiles", 50),
+            getConfig().getInt("cacheCleanupIntervalMinutes", 5) * 60 * 1000L);
+        janitor = new CacheJanitor(getContext().getCacheDir(), limits);
+
+        tilePool = new BitmapPool(getConfig().getInt("rasterTileSize", 512), getConfig().getInt("rasterTilePoolSize", 2));
+
+        defaultTimeoutMs = getConfig().getInt("generationTimeoutSeconds", 120) * 1000L;
+
+        previewRenderer = new PreviewRenderer(getContext().getCacheDir(),
+            getConfig().getInt("previewCacheMegabytes", 20) * 1024L * 1024L);
+
+        // Leave a core for the main thread, which keeps capturing meanwhile
+        int defaultParallelism = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+        parallelism = Math.max(1, getConfig().getInt("parallelism", defaultParallelism));
+
+        stats = new PipelineStats(getConfig().getInt("statsWindow", 100));
+        traceSections = getConfig().getBoolean("traceSections", false);
+
+        if (getConfig().getBoolean("warmUpOnIdle", false)) {
+            boolean offscreen = getConfig().getBoolean("warmUpOffscreen", false);
+            // Runs once, the first time the main thread has nothing else to do after launch
+            Looper.getMainLooper().getQueue().addIdleHandler(() -> {
+                warmUp(offscreen, timings -> Log.d(TAG, "🔥 Idle warm-up done " + timings));
+                return false;
+            });
+        }
+    }
+
+    private interface WarmUpCallback {
+        void onWarm(JSObject timings);
+    }
+
+    /**
+     * Pay the first-export costs ahead of time: the PDF backend and fonts, the print style
+     * helpers in the page and, with {@code offscreen: true}, an offscreen WebView. Parts that
+     * are already warm are skipped. Resolves with the time each part took.
+     */
+    @PluginMethod
+    public void warmUp(PluginCall call) {
+        warmUp(call.getBoolean("offscreen", false), call::resolve);
+    }
+
+    private void warmUp(boolean offscreen, WarmUpCallback callback) {
+        JSObject timings = new JSObject();
+        AtomicInteger pending = new AtomicInteger(offscreen ? 3 : 2);
+        Runnable partDone = () -> {
+            if (pending.decrementAndGet() == 0) {
+                callback.onWarm(timings);
+            }
+        };
+
+        pdfExecutor.execute(() -> {
+            long start = SystemClock.elapsedRealtime();
+            warmPipeline();
+            putTiming(timings, "pipelineMs", start);
+            partDone.run();
+        });
+
+        mainHandler.post(() -> {
+            long start = SystemClock.elapsedRealtime();
+            WebView webView = bridge.getWebView();
+            if (webView == null) {
+                partDone.run();
+            } else {
+                PrintStyles.install(webView, () -> {
+                    putTiming(timings, "scriptsMs", start);
+                    partDone.run();
+                });
+            }
+            if (offscreen) {
+                warmOffscreen(() -> {
+                    putTiming(timings, "offscreenMs", start);
+                    partDone.run();
+                });
+            }
+        });
+    }
+
+    private static void putTiming(JSObject timings, String name, long start) {
+        synchronized (timings) {
+            timings.put(name, SystemClock.elapsedRealtime() - start);
+        }
+    }
+
+    /**
+     * Write a throwaway one-page PDF with text so the PDF backend, Skia and the default
+     * typeface are loaded (pdfExecutor only)
+     */
+    private void warmPipeline() {
+        if (pipelineWarm) {
+            return;
+        }
+        PdfDocument document = new PdfDocument();
+        try {
+            PageGeometry geometry = PageGeometry.fromOptions(new JSObject());
+            PdfDocument.Page page = document.startPage(geometry.createPageInfo(1));
+            Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            page.getCanvas().drawText("PdfShare", 0, paint.getTextSize(), paint);
+            document.finishPage(page);
+            document.writeTo(new ByteArrayOutputStream());
+            pipelineWarm = true;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "⚠️ Could not warm up the PDF pipeline", e);
+        } finally {
+            document.close();
+        }
+    }
+
+    /**
+     * Create an offscreen renderer and load an empty page into it, which starts the WebView
+     * renderer; the renderer goes back to the pool idle (main thread)
+     */
+    private void warmOffscreen(Runnable done) {
+        OffscreenRendererPool pool = rendererPool();
+        if (pool.size() > 0) {
+            done.run();
+            return;
+        }
+        PageGeometry geometry = PageGeometry.fromOptions(new JSObject());
+        int[] size = offscreenSize(geometry);
+        pool.acquire(renderer -> renderer.loadHtml("<!DOCTYPE html><html><body></body></html>", size[0], size[1],
+            new OffscreenRenderer.LoadCallback() {
+                @Override
+                public void onLoaded(WebView webView) {
+                    pool.release(renderer);
+                    done.run();
+                }
+
+                @Override
+                public void onError(String message) {
+                    Log.w(TAG, "⚠️ Could not warm up the offscreen renderer: " + message);
+                    pool.release(renderer);
+                    done.run();
+                }
+            }));
+    }
+
     @PluginMethod
     public void generateAndShare(PluginCall call) {
         call.setKeepAlive(true);
 
-        // Clean up old files first
-        PdfShare.cleanupOldFiles(getContext());
+        generatePdf(call, true);
+    }
 
-        new Handler(Looper.getMainLooper()).post(() -> {
-            WebView webView = null;
-            try {
-                Log.d(TAG, "🔧 Android: Starting PDF generation");
+    @PluginMethod
+    public void generatePdfOnly(PluginCall call) {
+        call.setKeepAlive(true);
 
-                // Get options from call
-                JSObject options = call.getData();
-                String filename = options.optString("filename", "veterinary-dosage");
-                String title = options.optString("title", "Veterinary Dosage");
+        generatePdf(call, false);
+    }
 
-                webView = bridge.getWebView();
-                Context context = getContext();
+    /**
+     * Staged PDF pipeline. Only the WebView snapshot runs on the main looper;
+     * serialization, the disk write and result resolution run on pdfExecutor.
+     * Captures of the app's WebView are serialized through captureScheduler, and a
+     * request identical to one still waiting for the WebView shares its result.
+     */
+    private void generatePdf(PluginCall call, boolean share) {
+        PdfJob job = new PdfJob(call, share);
+        job.completion = callCompletion;
+        job.writeExecutor = pdfExecutor;
+        if (!registerJob(job)) {
+            call.reject("A generation with jobId '" + job.id + "' is already running");
+            return;
+        }
+        job.timer.begin("queue");
 
-                if (webView == null) {
-                    call.reject("WebView not available");
+        mainHandler.post(() -> {
+            try {
+                if (job.isCancelled()) {
                     return;
                 }
+                Log.d(TAG, share ? "🔧 Android: Starting PDF generation" : "🔧 Android: Generating PDF without sharing");
 
-                // Generate unique filename
-                String uniqueFilename = PdfShare.generateFileName(filename);
-                File pdfFile = new File(context.getCacheDir(), uniqueFilename);
+                // Fail fast on invalid options, before the page is touched
+                job.geometry = PageGeometry.fromOptions(job.options);
+                configureOutput(job);
 
-                Log.d(TAG, "📄 Generating PDF: " + pdfFile.getAbsolutePath());
+                // Neither has seen the page yet, so both would capture the same state. Followers
+                // get the leader's file, so it must carry their filename too.
+                String coalesceKey = (share ? "share:" : "pdf:") + renderKey(job) + "|" + outputName(job)
+                    + "|" + job.destinationUri + "|" + job.streamShare;
+                PdfJob leader = captureScheduler.findQueued(coalesceKey);
+                if (leader != null) {
+                    Log.d(TAG, "🔗 Coalesced with queued job " + leader.id);
+                    unregisterJob(job);
+                    leader.followers.add(call);
+                    return;
+                }
+                job.coalesceKey = coalesceKey;
+                captureScheduler.submit(job, () -> startCapture(job));
+
+            } catch (Exception e) {
+                Log.e(TAG, "❌ Error generating PDF", e);
+                job.fail("Error generating PDF: " + e.getMessage());
+            }
+        });
+    }
 
-                // Inject print styles before generating PDF
-                injectPrintStyles(webView);
+    /**
+     * Start a job that holds the app's WebView (main thread)
+     */
+    private void startCapture(PdfJob job) {
+        try {
+            if (job.isCancelled()) {
+                captureScheduler.release(job);
+                return;
+            }
 
-                // Create PDF document
-                PdfDocument document = new PdfDocument();
+            WebView webView = bridge.getWebView();
+            if (webView == null) {
+                job.fail("WebView not available");
+                return;
+            }
 
-                // Get WebView dimensions
-                int webViewWidth = webView.getWidth();
-                int webViewHeight = webView.getHeight();
+            if (job.options.optBoolean("cache", false) && job.writesToFile()) {
+                lookupRenderCache(webView, job);
+            } else {
+                prepareAndCapture(webView, job);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error generating PDF", e);
+            job.fail("Error generating PDF: " + e.getMessage());
+        }
+    }
 
-                if (webViewWidth <= 0 || webViewHeight <= 0) {
-                    Log.w(TAG, "WebView has no dimensions, using defaults");
-                    webViewWidth = 800;
-                    webViewHeight = 1200;
-                }
+    /**
+     * Completion of a single generate call: cache, resolve or share, then schedule cleanup
+     */
+    private final PdfJob.Completion callCompletion = new PdfJob.Completion() {
+        @Override
+        public void onCaptured(PdfJob job) {
+            captureScheduler.release(job);
+        }
 
-                // Define A4 page size in points (72 DPI)
-                int pageWidth = 595;  // A4 width in points
-                int pageHeight = 842; // A4 height in points
+        @Override
+        public void onWritten(PdfJob job) {
+            unregisterJob(job);
+            if (job.cacheKey != null) {
+                renderCache.put(job.cacheKey, job.pdfFile, job.bytes, job.pageCount);
+            }
+            resolveJob(job, false);
 
-                Log.d(TAG, "📐 WebView size: " + webViewWidth + "x" + webViewHeight);
-                Log.d(TAG, "📐 PDF page size: " + pageWidth + "x" + pageHeight);
+            // Cleanup runs after the result is out, on the janitor thread
+            if (job.writesToFile()) {
+                janitor.track(job.pdfFile);
+            }
+            janitor.requestCleanup();
+        }
 
-                // Create page info
-                PdfDocument.PageInfo pageInfo = new PdfDocument.PageInfo.Builder(
-                    pageWidth, pageHeight, 1).create();
+        @Override
+        public void onFailed(PdfJob job, String message) {
+            unregisterJob(job);
+            stats.recordFailure(job);
+            mainHandler.post(() -> captureScheduler.release(job));
+            job.call.reject(message);
+            for (PluginCall follower : job.followers) {
+                follower.reject(message);
+            }
+        }
+    };
 
-                // Start page
-                PdfDocument.Page page = document.startPage(pageInfo);
-                Canvas canvas = page.getCanvas();
+    /**
+     * Track a job for cancelGeneration and arm its deadline ({@code timeoutMs}, or the
+     * {@code generationTimeoutSeconds} config; 0 disables it)
+     *
+     * @return false if another running job has the same ID
+     */
+    private boolean registerJob(PdfJob job) {
+        if (activeJobs.putIfAbsent(job.id, job) != null) {
+            return false;
+        }
+        job.cancellation.setOnCancelListener(() -> mainHandler.post(() -> abortJob(job)));
+        if (traceSections) {
+            job.timer.enableTrace(job.id.hashCode());
+        }
+
+        long timeoutMs = job.options.optLong("timeoutMs", defaultTimeoutMs);
+        if (timeoutMs > 0) {
+            // The job is the token, so unregisterJob drops the deadline with it
+            mainHandler.postAtTime(() -> job.cancel("Generation timed out after " + timeoutMs + " ms"),
+                job, SystemClock.uptimeMillis() + timeoutMs);
+        }
+        return true;
+    }
+
+    private void unregisterJob(PdfJob job) {
+        activeJobs.remove(job.id, job);
+        mainHandler.removeCallbacksAndMessages(job);
+    }
 
-                // Scale the WebView to fit the page
-                float scaleX = (float) pageWidth / webViewWidth;
-                float scaleY = (float) pageHeight / webViewHeight;
-                float scale = Math.min(scaleX, scaleY);
+    /**
+     * Settle a cancelled job, then stop whatever stage it is in and give the page back (main thread).
+     * Stages that are already running notice the cancellation and clean up their own output.
+     */
+    private void abortJob(PdfJob job) {
+        Log.d(TAG, "🛑 Job " + job.id + ": " + job.getCancelReason());
+        job.fail(job.getCancelReason());
+        if (job.capture != null) {
+            // Closes the sink and restores the styles through the capture's onError
+            job.capture.cancel();
+        } else if (job.styleToken != null && !job.captured) {
+            PrintStyles.restore(bridge.getWebView(), job.styleToken);
+        }
+    }
 
-                canvas.scale(scale, scale);
+    /**
+     * Cancel a running generation or batch by the ID from its progress events. Resolves
+     * { cancelled: false } if nothing with that ID is running anymore.
+     */
+    @PluginMethod
+    public void cancelGeneration(PluginCall call) {
+        String id = call.getString("jobId");
+        if (id == null || id.isEmpty()) {
+            call.reject("jobId is required");
+            return;
+        }
 
-                // Draw WebView to canvas
-                webView.draw(canvas);
+        boolean cancelled = false;
+        PdfJob job = activeJobs.get(id);
+        if (job != null) {
+            job.cancel("Generation cancelled");
+            cancelled = true;
+        }
+        PdfBatch batch = activeBatches.get(id);
+        if (batch != null) {
+            mainHandler.post(() -> cancelBatch(batch));
+            cancelled = true;
+        }
 
-                // Finish page
-                document.finishPage(page);
+        JSObject ret = new JSObject();
+        ret.put("cancelled", cancelled);
+        call.resolve(ret);
+    }
 
-                // Write PDF to file
-                try (FileOutputStream fos = new FileOutputStream(pdfFile)) {
-                    document.writeTo(fos);
-                    Log.d(TAG, "✅ PDF written successfully");
-                } catch (IOException e) {
-                    Log.e(TAG, "❌ Error writing PDF", e);
-                    call.reject("Error writing PDF: " + e.getMessage());
+    /**
+     * Hash the page state; serve an identical earlier render or continue with a capture (main thread)
+     */
+    private void lookupRenderCache(WebView webView, PdfJob job) {
+        job.timer.begin("hash");
+        RenderCache.hashContent(webView, contentHash -> {
+            try {
+                if (job.isCancelled()) {
                     return;
-                } finally {
-                    document.close();
                 }
+                if (contentHash == null) {
+                    Log.w(TAG, "⚠️ Could not hash page content, rendering without cache");
+                    prepareAndCapture(webView, job);
+                    return;
+                }
+
+                // The file name is part of what the caller gets back, a hit must not rename it
+                job.cacheKey = RenderCache.key(contentHash, renderKey(job) + "|" + outputName(job),
+                    webView.getWidth(), webView.getHeight());
+                RenderCache.Entry entry = renderCache.get(job.cacheKey);
+                if (entry == null) {
+                    prepareAndCapture(webView, job);
+                    return;
+                }
+
+                if (!job.settle()) {
+                    return;
+                }
+                unregisterJob(job);
+                captureScheduler.release(job);
+                Log.d(TAG, "⚡ Render cache hit: " + entry.file.getAbsolutePath());
+                job.pdfFile = entry.file;
+                job.pageCount = entry.pageCount;
+                job.bytes = entry.bytes;
+                resolveJob(job, true);
+            } catch (Exception e) {
+                Log.e(TAG, "❌ Error generating PDF", e);
+                job.fail("Error generating PDF: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Pick the output: a caller's document URI, a streamed share or (by default) a cache file
+     */
+    private static void configureOutput(PdfJob job) {
+        String destination = job.options.optString("destinationUri", "");
+        if (!destination.isEmpty()) {
+            Uri uri = Uri.parse(destination);
+            if (!"content".equals(uri.getScheme())) {
+                throw new IllegalArgumentException("destinationUri must be a content:// URI");
+            }
+            job.destinationUri = uri;
+        }
+        // The print engine writes into a descriptor during capture, it cannot be replayed into a pipe
+        job.streamShare = job.share && job.destinationUri == null
+            && job.options.optBoolean("streamShare", false)
+            && job.geometry.renderMode != PageGeometry.RenderMode.PRINT;
+    }
+
+    /**
+     * Open the job's output for writing: the caller's document or the cache file
+     */
+    private ParcelFileDescriptor openDestination(PdfJob job) throws IOException {
+        if (job.destinationUri != null) {
+            ParcelFileDescriptor fd = getContext().getContentResolver().openFileDescriptor(job.destinationUri, "wt");
+            if (fd == null) {
+                throw new IOException("Cannot open " + job.destinationUri);
+            }
+            return fd;
+        }
+        return ParcelFileDescriptor.open(job.pdfFile, ParcelFileDescriptor.MODE_WRITE_ONLY
+            | ParcelFileDescriptor.MODE_CREATE | ParcelFileDescriptor.MODE_TRUNCATE);
+    }
+
+    /**
+     * Unique cache dir file for the job's filename option
+     */
+    private void assignOutputFile(PdfJob job) {
+        job.pdfFile = new File(getContext().getCacheDir(), PdfShare.generateFileName(outputName(job)));
+    }
+
+    private static String outputName(PdfJob job) {
+        return job.options.optString("filename", "veterinary-dosage");
+    }
 
-                // Share the file
-                PdfShare.shareFile(pdfFile, context, call);
+    /**
+     * Prepare the page and wait until the prepared frame is committed before drawing (main thread)
+     */
+    private void prepareAndCapture(WebView webView, PdfJob job) {
+        assignOutputFile(job);
+        job.styleToken = PrintStyles.newToken();
 
-                // Automatically restore page after PDF generation
-                restorePageStyles(webView);
+        Log.d(TAG, "📄 Generating PDF: " + job.pdfFile.getAbsolutePath());
 
+        job.timer.begin("prepare");
+        PrintStyles.prepare(webView, job.styleToken, elementId(job), summary -> {
+            job.printStyles = summary;
+            try {
+                if (job.isCancelled()) {
+                    // abortJob has already restored the styles
+                    return;
+                }
+                job.timer.begin("capture");
+                capture(webView, job);
             } catch (Exception e) {
                 Log.e(TAG, "❌ Error generating PDF", e);
                 // Always restore page styles even on error
-                restorePageStyles(webView);
-                call.reject("Error generating PDF: " + e.getMessage());
+                PrintStyles.restore(webView, job.styleToken);
+                job.fail("Error generating PDF: " + e.getMessage());
             }
         });
     }
 
-    @PluginMethod
-    public void generatePdfOnly(PluginCall call) {
-        call.setKeepAlive(true);
+    private static String elementId(PdfJob job) {
+        return job.options.optString("elementId", DEFAULT_ELEMENT_ID);
+    }
+
+    /**
+     * The resolved options that change the PDF's content, in a fixed order; bookkeeping
+     * options (jobId, timeoutMs, filename, progress and cache flags) are left out, callers
+     * that hand out the file add {@link #outputName}
+     */
+    private static String renderKey(PdfJob job) {
+        boolean optimize = job.options.optBoolean("optimizeImages", false);
+        return job.geometry.describe()
+            + "|" + elementId(job)
+            + "|" + (optimize ? Math.max(36, job.options.optInt("imageDpi", 150)) : "-");
+    }
+
+    /**
+     * Run the capture stage with the engine selected by renderMode (main thread). Canvas engines
+     * capture only the elementId element; without an explicit elementId a page lacking the
+     * default element is captured whole.
+     */
+    private void capture(WebView webView, PdfJob job) throws IOException {
+        if (job.geometry.renderMode == PageGeometry.RenderMode.PRINT) {
+            printPages(webView, job);
+            return;
+        }
 
-        new Handler(Looper.getMainLooper()).post(() -> {
-            WebView webView = null;
+        String elementId = elementId(job);
+        ElementRegion.measure(webView, elementId, region -> {
             try {
-                Log.d(TAG, "🔧 Android: Generating PDF without sharing");
+                if (job.isCancelled()) {
+                    return;
+                }
+                if (region == null && job.options.has("elementId")) {
+                    throw new IllegalArgumentException("Element with ID '" + elementId + "' not found");
+                }
+                capturePages(webView, job, region);
+            } catch (Exception e) {
+                Log.e(TAG, "❌ Error generating PDF", e);
+                if (job.styleToken != null) {
+                    PrintStyles.restore(webView, job.styleToken);
+                }
+                job.fail("Error generating PDF: " + e.getMessage());
+            }
+        });
+    }
 
-                JSObject options = call.getData();
-                String filename = options.optString("filename", "veterinary-dosage");
+    /**
+     * Let the WebView print the document as vector PDF straight into the job's destination, then
+     * count the pages and complete the job on the write executor
+     */
+    private void printPages(WebView webView, PdfJob job) throws IOException {
+        Log.d(TAG, "🖨️ Printing PDF via the WebView print adapter (" + job.geometry.format + ")");
 
-                webView = bridge.getWebView();
-                Context context = getContext();
+        PdfPrintDocumentAdapter adapter = new PdfPrintDocumentAdapter(
+            webView.createPrintDocumentAdapter(job.pdfFile.getName()));
+        ParcelFileDescriptor destination = openDestination(job);
 
-                if (webView == null) {
-                    call.reject("WebView not available");
+        adapter.print(job.geometry.createPrintAttributes(), destination, job.cancellation, new PdfPrintDocumentAdapter.Callback() {
+            @Override
+            public void onWritten() {
+                job.timer.end();
+                if (job.styleToken != null) {
+                    PrintStyles.restore(webView, job.styleToken);
+                }
+                if (job.isCancelled()) {
+                    // Cancelled too late for the adapter to notice
+                    closeQuietly(destination);
+                    discardOutput(job);
+                    job.fail(job.getCancelReason());
                     return;
                 }
 
-                String uniqueFilename = PdfShare.generateFileName(filename);
-                File pdfFile = new File(context.getCacheDir(), uniqueFilename);
+                job.captured = true;
+                job.notifyCaptured();
+                job.timer.begin("handoff");
+                job.writeExecutor.execute(() -> {
+                    job.timer.end();
+                    try {
+                        destination.close();
+                        ParcelFileDescriptor written = job.destinationUri != null
+                            ? getContext().getContentResolver().openFileDescriptor(job.destinationUri, "r")
+                            : ParcelFileDescriptor.open(job.pdfFile, ParcelFileDescriptor.MODE_READ_ONLY);
+                        if (written == null) {
+                            throw new IOException("Cannot reopen " + job.getOutputPath());
+                        }
+                        job.bytes = written.getStatSize();
+                        job.pageCount = PdfPrintDocumentAdapter.countPages(written);
+                    } catch (IOException e) {
+                        Log.e(TAG, "❌ Error reading printed PDF", e);
+                        discardOutput(job);
+                        job.fail("Error writing PDF: " + e.getMessage());
+                        return;
+                    }
+                    job.watermark.sample();
+                    Log.d(TAG, "✅ PDF printed successfully (" + job.pageCount + " pages, " + job.bytes + " bytes)");
+                    job.pagesRendered = job.pageCount;
+                    notifyListeners("generationProgress", job.toProgress("write", job.bytes));
+                    optimizeImages(job);
+                    job.written();
+                });
+            }
+
+            @Override
+            public void onError(String message) {
+                closeQuietly(destination);
+                discardOutput(job);
+                if (job.styleToken != null) {
+                    PrintStyles.restore(webView, job.styleToken);
+                }
+                job.fail(job.isCancelled() ? job.getCancelReason() : "Error generating PDF: " + message);
+            }
+        });
+    }
+
+    private static void closeQuietly(ParcelFileDescriptor fd) {
+        try {
+            fd.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Error closing PDF destination", e);
+        }
+    }
+
+    /**
+     * Remove a partially written cache file; a caller's document is left to the caller
+     */
+    private static void discardOutput(PdfJob job) {
+        if (job.writesToFile()) {
+            job.pdfFile.delete();
+        }
+    }
+
+    /**
+     * Capture the full scrollable content page by page, then hand the document to the job's write executor
+     */
+    private void capturePages(WebView webView, PdfJob job, RectF region) {
+        PageGeometry geometry = job.geometry;
+        Log.d(TAG, "📐 PDF page size: " + geometry.pageWidth + "x" + geometry.pageHeight
+            + " (" + geometry.format + ", " + geometry.renderMode + ")");
 
-                // Inject print styles before generating PDF
-                injectPrintStyles(webView);
+        boolean streaming = job.options.optBoolean("streaming", false);
+        String documentKey = job.options.optString("documentKey", "");
+        PageFingerprinter fingerprinter = null;
+        PdfPageSink sink;
+        if (!documentKey.isEmpty()) {
+            // Vector pages are digested after serialization instead
+            if (geometry.renderMode == PageGeometry.RenderMode.RASTER) {
+                fingerprinter = new PageFingerprinter(fingerprintSettings(job, webView));
+            }
+            File pageDir = IncrementalPageSink.pageDir(getContext().getCacheDir(), documentKey);
+            sink = new IncrementalPageSink(pageDir, pdfExecutor, job.watermark, fingerprinter);
+        } else if (job.options.optBoolean("parallel", false)) {
+            File chunkDir = new File(getContext().getCacheDir(), CHUNK_DIR + "/" + job.pdfFile.getName());
+            sink = new ParallelPageSink(chunkDir, pageEncoders(), parallelism, job.watermark);
+        } else if (streaming) {
+            File chunkDir = new File(getContext().getCacheDir(), CHUNK_DIR + "/" + job.pdfFile.getName());
+            sink = new StreamingPageSink(chunkDir, pdfExecutor, job.watermark);
+        } else {
+            sink = new DocumentPageSink();
+        }
 
-                // Same PDF generation logic as above
-                PdfDocument document = new PdfDocument();
+        WebViewPageCapture capture = new WebViewPageCapture(webView, geometry, region, tilePool);
+        capture.setFingerprinter(fingerprinter);
+        job.capture = capture;
+        PageFingerprinter usedFingerprinter = fingerprinter;
 
-                int webViewWidth = webView.getWidth();
-                int webViewHeight = webView.getHeight();
+        capture.start(sink, new WebViewPageCapture.Callback() {
+            @Override
+            public void onPageCaptured(int pageNumber, int pageCount) {
+                job.watermark.sample();
+                job.pagesRendered = pageNumber;
+                job.pageCount = pageCount;
+                notifyListeners("generationProgress", job.toProgress("capture", 0));
+                Log.d(TAG, "📄 Captured page " + pageNumber + "/" + pageCount);
+            }
 
-                if (webViewWidth <= 0 || webViewHeight <= 0) {
-                    webViewWidth = 800;
-                    webViewHeight = 1200;
+            @Override
+            public void onComplete(int pageCount) {
+                job.timer.end();
+                job.pageCount = pageCount;
+                if (usedFingerprinter != null) {
+                    usedFingerprinter.recycle();
+                }
+                if (geometry.renderMode == PageGeometry.RenderMode.RASTER) {
+                    job.tiles = capture.getTileStats();
                 }
 
-                int pageWidth = 595;
-                int pageHeight = 842;
+                // The snapshot is recorded, the page can be restored while we encode
+                if (job.styleToken != null) {
+                    PrintStyles.restore(webView, job.styleToken);
+                }
+
+                job.captured = true;
+                job.notifyCaptured();
+                job.timer.begin("handoff");
+                job.writeExecutor.execute(() -> writePdf(job, sink));
+            }
+
+            @Override
+            public void onError(Exception e) {
+                if (!job.isCancelled()) {
+                    Log.e(TAG, "❌ Error capturing PDF pages", e);
+                }
+                sink.close();
+                if (usedFingerprinter != null) {
+                    usedFingerprinter.recycle();
+                }
+                if (job.styleToken != null) {
+                    PrintStyles.restore(webView, job.styleToken);
+                }
+                job.fail("Error generating PDF: " + e.getMessage());
+            }
+        });
+    }
 
-                PdfDocument.PageInfo pageInfo = new PdfDocument.PageInfo.Builder(
-                    pageWidth, pageHeight, 1).create();
+    /**
+     * Everything besides the content that changes how a page is drawn, for PageFingerprinter
+     */
+    private static String fingerprintSettings(PdfJob job, WebView webView) {
+        return renderKey(job) + "|" + webView.getWidth() + "x" + webView.getHeight();
+    }
 
-                PdfDocument.Page page = document.startPage(pageInfo);
-                Canvas canvas = page.getCanvas();
+    /**
+     * Worker pool of ParallelPageSink, created on first use (main thread)
+     */
+    private ExecutorService pageEncoders() {
+        if (pageEncoders == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            pageEncoders = Executors.newFixedThreadPool(parallelism, runnable -> {
+                Thread thread = new Thread(runnable, "PdfShare-encoder-" + threadCount.incrementAndGet());
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            });
+        }
+        return pageEncoders;
+    }
 
-                float scaleX = (float) pageWidth / webViewWidth;
-                float scaleY = (float) pageHeight / webViewHeight;
-                float scale = Math.min(scaleX, scaleY);
+    /**
+     * Serialize and write the captured pages, then complete the job (write executor only)
+     */
+    private void writePdf(PdfJob job, PdfPageSink sink) {
+        job.timer.end();
+        if (job.isCancelled()) {
+            sink.close();
+            job.fail(job.getCancelReason());
+            return;
+        }
+        if (job.streamShare) {
+            streamPdf(job, sink);
+            return;
+        }
 
-                canvas.scale(scale, scale);
-                webView.draw(canvas);
-                document.finishPage(page);
+        job.timer.beginTraceSection("write");
+        try (OutputStream out = new ParcelFileDescriptor.AutoCloseOutputStream(openDestination(job))) {
+            // Fails the write as soon as the job is cancelled
+            ProgressOutputStream progress = new ProgressOutputStream(out, job.cancellation, PROGRESS_BYTES,
+                bytesWritten -> notifyListeners("generationProgress", job.toProgress("write", bytesWritten)));
+            job.bytes = sink.writeTo(progress, job.timer);
+            job.watermark.sample();
+            if (sink instanceof IncrementalPageSink) {
+                job.pagesReused = ((IncrementalPageSink) sink).getReusedPages();
+                // Ages out with the PDFs once the document is no longer exported
+                janitor.track(((IncrementalPageSink) sink).getPageDir());
+                Log.d(TAG, "♻️ Reused " + job.pagesReused + " unchanged page(s)");
+            } else if (sink instanceof ParallelPageSink) {
+                job.parallel = ((ParallelPageSink) sink).getStats();
+                Log.d(TAG, "🧵 Pages encoded in parallel: " + job.parallel);
+            }
+            notifyListeners("generationProgress", job.toProgress("write", job.bytes));
+            Log.d(TAG, "✅ PDF written successfully (" + job.bytes + " bytes)");
+        } catch (IOException e) {
+            discardOutput(job);
+            if (job.isCancelled()) {
+                job.fail(job.getCancelReason());
+            } else {
+                Log.e(TAG, "❌ Error writing PDF", e);
+                job.fail("Error writing PDF: " + e.getMessage());
+            }
+            return;
+        } finally {
+            sink.close();
+            job.timer.endTraceSection();
+        }
 
-                try (FileOutputStream fos = new FileOutputStream(pdfFile)) {
-                    document.writeTo(fos);
+        optimizeImages(job);
+        job.written();
+    }
 
-                    JSObject ret = new JSObject();
-                    ret.put("success", true);
-                    ret.put("path", pdfFile.getAbsolutePath());
-                    call.resolve(ret);
+    /**
+     * Publish the captured document through PdfStreamProvider without writing it; every reader
+     * of the shared URI gets it serialized straight into a pipe (write executor only)
+     */
+    private void streamPdf(PdfJob job, PdfPageSink sink) {
+        job.streamUri = PdfStreamProvider.register(getContext(), job.pdfFile.getName(), sink, STREAM_TTL_MS);
+        Log.d(TAG, "📤 PDF published for streaming: " + job.streamUri);
+        job.written();
+    }
 
-                } catch (IOException e) {
-                    // Restore page styles even on IO error
-                    restorePageStyles(webView);
-                    call.reject("Error writing PDF: " + e.getMessage());
-                } finally {
-                    document.close();
-                    // Always restore page styles when done
-                    restorePageStyles(webView);
-                }
+    /**
+     * Downsample and recompress the embedded images when {@code optimizeImages} is set; the
+     * original file is kept if that fails or does not make it smaller (write executor only)
+     */
+    private void optimizeImages(PdfJob job) {
+        if (!job.options.optBoolean("optimizeImages", false)) {
+            return;
+        }
+        if (!job.writesToFile()) {
+            // The rewrite needs random access to a file we own
+            Log.w(TAG, "⚠️ optimizeImages is only applied to cache file output");
+            return;
+        }
+        job.timer.begin("optimize");
+        File optimized = new File(job.pdfFile.getPath() + ".tmp");
+        try {
+            int dpi = Math.max(36, job.options.optInt("imageDpi", 150));
+            int quality = Math.max(10, Math.min(95, Math.round(job.geometry.quality * 100)));
+            PdfImageOptimizer.Result result = PdfImageOptimizer.optimize(job.pdfFile, optimized, dpi, quality,
+                new BitmapImageEncoder());
+
+            if (result.bytesAfter < result.bytesBefore && optimized.renameTo(job.pdfFile)) {
+                job.bytes = result.bytesAfter;
+            }
+            job.watermark.sample();
+
+            JSObject report = new JSObject();
+            report.put("bytesBefore", result.bytesBefore);
+            report.put("bytesAfter", job.bytes);
+            report.put("images", result.images);
+            report.put("imagesOptimized", job.bytes < result.bytesBefore ? result.imagesOptimized : 0);
+            job.imageOptimization = report;
+            Log.d(TAG, "🗜️ Images optimized: " + result.bytesBefore + " -> " + job.bytes + " bytes");
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "⚠️ Could not optimize images, keeping the original PDF", e);
+        } finally {
+            optimized.delete();
+            job.timer.end();
+        }
+    }
+
+    /**
+     * Resolve the call with the job result, or hand the file to the share sheet; coalesced
+     * calls get the same result without a share sheet of their own
+     */
+    private void resolveJob(PdfJob job, boolean cacheHit) {
+        JSObject ret = job.toResult();
+        if (job.cacheKey != null) {
+            JSObject cache = renderCache.getStats();
+            cache.put("hit", cacheHit);
+            ret.put("cache", cache);
+        }
+
+        for (PluginCall follower : job.followers) {
+            JSObject copy = job.toResult();
+            copy.put("success", true);
+            copy.put("path", job.getOutputPath());
+            copy.put("coalesced", true);
+            follower.resolve(copy);
+        }
+
+        // Shared jobs are recorded once the share sheet is up, so the stats include it
+        PdfShare.Callback shared = shareMillis -> {
+            job.timer.record("share", shareMillis);
+            stats.record(job, cacheHit);
+        };
+        if (job.share && job.writesToFile()) {
+            PdfShare.shareFile(job.pdfFile, getContext(), job.call, ret, shared);
+        } else if (job.share) {
+            PdfShare.shareUri(Uri.parse(job.getOutputPath()), getContext(), job.call, ret, shared);
+        } else {
+            ret.put("success", true);
+            ret.put("path", job.getOutputPath());
+            job.call.resolve(ret);
+            stats.record(job, cacheHit);
+        }
+    }
 
+    /**
+     * Render an HTML string or a page of the web bundle in an offscreen WebView, leaving the
+     * user's page untouched. Resolves like generatePdfOnly, or shares with {@code share: true}.
+     */
+    @PluginMethod
+    public void generateFromHtml(PluginCall call) {
+        if (call.getString("html") == null && call.getString("url") == null) {
+            call.reject("Either html or url is required");
+            return;
+        }
+        call.setKeepAlive(true);
+
+        PdfJob job = new PdfJob(call, call.getBoolean("share", false));
+        job.completion = callCompletion;
+        job.writeExecutor = pdfExecutor;
+        if (!registerJob(job)) {
+            call.reject("A generation with jobId '" + job.id + "' is already running");
+            return;
+        }
+        job.timer.begin("queue");
+
+        mainHandler.post(() -> {
+            try {
+                if (job.isCancelled()) {
+                    return;
+                }
+                Log.d(TAG, "🔧 Android: Generating PDF offscreen");
+                job.geometry = PageGeometry.fromOptions(job.options);
+                configureOutput(job);
+                renderOffscreen(job);
             } catch (Exception e) {
                 Log.e(TAG, "❌ Error generating PDF", e);
-                // Always restore page styles even on error
-                restorePageStyles(webView);
-                call.reject("Error generating PDF: " + e.getMessage());
+                job.fail("Error generating PDF: " + e.getMessage());
             }
         });
     }
 
+    /**
+     * Lay out a structured document ({@code template}) natively on the writer thread, without
+     * any WebView. Resolves like generatePdfOnly, or shares with {@code share: true}.
+     */
     @PluginMethod
-    public void shareExistingPdf(PluginCall call) {
-        JSObject options = call.getData();
-        String path = options.getString("path");
+    public void generateFromTemplate(PluginCall call) {
+        JSObject template = call.getObject("template");
+        if (template == null) {
+            call.reject("template is required");
+            return;
+        }
+        call.setKeepAlive(true);
 
-        if (path == null || path.isEmpty()) {
-            call.reject("PDF path is required");
+        PdfJob job = new PdfJob(call, call.getBoolean("share", false));
+        job.completion = callCompletion;
+        job.writeExecutor = pdfExecutor;
+        if (!registerJob(job)) {
+            call.reject("A generation with jobId '" + job.id + "' is already running");
             return;
         }
+        job.timer.begin("queue");
+        pdfExecutor.execute(() -> renderTemplate(job, template));
+    }
 
-        File pdfFile = new File(path);
-        if (!pdfFile.exists()) {
-            call.reject("PDF file not found at path: " + path);
+    /**
+     * Lay out the template into an in-memory document and write it (pdfExecutor only)
+     */
+    private void renderTemplate(PdfJob job, JSObject template) {
+        if (job.isCancelled()) {
             return;
         }
+        DocumentPageSink sink = new DocumentPageSink();
+        try {
+            Log.d(TAG, "🔧 Android: Generating PDF from template");
+            job.geometry = PageGeometry.fromOptions(job.options);
+            configureOutput(job);
+            assignOutputFile(job);
 
-        PdfShare.shareFile(pdfFile, getContext(), call);
+            job.timer.begin("layout");
+            if (templateRenderer == null) {
+                templateRenderer = new TemplateRenderer();
+            }
+            job.pageCount = templateRenderer.render(template, job.geometry, sink, job.cancellation);
+            job.pagesRendered = job.pageCount;
+            job.watermark.sample();
+        } catch (OperationCanceledException e) {
+            sink.close();
+            job.fail(job.getCancelReason());
+            return;
+        } catch (Exception e) {
+            sink.close();
+            Log.e(TAG, "❌ Error generating PDF", e);
+            job.fail("Error generating PDF: " + e.getMessage());
+            return;
+        }
+        writePdf(job, sink);
     }
 
     /**
-     * Prepare page for PDF generation without overriding existing styles
-     */
-    private void injectPrintStyles(WebView webView) {
-        Log.d(TAG, "📋 Android: Preparing page for PDF generation (preserving existing styles)");
-
-        String printStylesJS =
-            "console.log('📄 Android: Preparing page for PDF generation');\n" +
-            "\n" +
-            "// Simply hide elements marked with .hidden-print class\n" +
-            "// This respects the app's existing print CSS without overriding styles\n" +
-            "const elementsToHide = document.querySelectorAll('.hidden-print');\n" +
-            "console.log('📄 Android: Found ' + elementsToHide.length + ' elements to hide for PDF');\n" +
-            "\n" +
-            "elementsToHide.forEach((el, index) => {\n" +
-            "    console.log('📄 Android: Hiding element ' + (index + 1) + ':', el.tagName, el.className);\n" +
-            "    el.style.setProperty('display', 'none', 'important');\n" +
-            "});\n" +
-            "\n" +
-            "// Ensure body is visible and properly styled for PDF\n" +
-            "if (document.body) {\n" +
-            "    // Only apply minimal styling if body is completely hidden\n" +
-            "    const bodyStyle = window.getComputedStyle(document.body);\n" +
-            "    if (bodyStyle.display === 'none' || bodyStyle.visibility === 'hidden') {\n" +
-            "        console.log('⚠️ Android: Body was hidden, making it visible for PDF');\n" +
-            "        document.body.style.setProperty('display', 'block', 'important');\n" +
-            "        document.body.style.setProperty('visibility', 'visible', 'important');\n" +
-            "    }\n" +
-            "\n" +
-            "    // Ensure content is visible with basic print-friendly styling\n" +
-            "    document.body.style.setProperty('background-color', '#ffffff', 'important');\n" +
-            "    document.body.style.setProperty('color', '#000000', 'important');\n" +
-            "\n" +
-            "    console.log('✅ Android: Body styling applied for PDF generation');\n" +
-            "}\n" +
-            "\n" +
-            "// Force any dark mode elements to be visible in PDF\n" +
-            "const darkElements = document.querySelectorAll('[class*=\"dark:\"], .dark');\n" +
-            "darkElements.forEach(el => {\n" +
-            "    const computedStyle = window.getComputedStyle(el);\n" +
-            "    if (computedStyle.color === 'rgb(255, 255, 255)' || computedStyle.color === 'white') {\n" +
-            "        el.style.setProperty('color', '#000000', 'important');\n" +
-            "    }\n" +
-            "    if (computedStyle.backgroundColor === 'rgb(0, 0, 0)' || computedStyle.backgroundColor.includes('gray')) {\n" +
-            "        el.style.setProperty('background-color', '#ffffff', 'important');\n" +
-            "    }\n" +
-            "});\n" +
-            "\n" +
-            "console.log('✅ Android: Page prepared for PDF generation - existing styles preserved');\n";
-
-        webView.evaluateJavascript(printStylesJS, result -> {
-            if (result != null) {
-                Log.d(TAG, "✅ Android: Print styles injected successfully");
+     * The offscreen renderer pool, created on first use (main thread)
+     */
+    private OffscreenRendererPool rendererPool() {
+        if (rendererPool == null) {
+            int poolSize = getConfig().getInt("offscreenPoolSize", 2);
+            rendererPool = new OffscreenRendererPool(getActivity(), bridge.getLocalUrl(), poolSize);
+        }
+        return rendererPool;
+    }
+
+    /**
+     * Offscreen layout size { width, height } in view pixels: the printable area in CSS pixels
+     * (96 per inch), one page per viewport
+     */
+    private int[] offscreenSize(PageGeometry geometry) {
+        float density = getContext().getResources().getDisplayMetrics().density;
+        return new int[] {
+            Math.round(geometry.getContentWidth() * 96f / 72f * density),
+            Math.round(geometry.getContentHeight() * 96f / 72f * density)
+        };
+    }
+
+    /**
+     * Load the job's "html" or "url" into a pooled offscreen WebView laid out at the printable
+     * width and capture it; the renderer goes back to the pool once the capture is done (main thread)
+     */
+    private void renderOffscreen(PdfJob job) {
+        OffscreenRendererPool pool = rendererPool();
+        int[] size = offscreenSize(job.geometry);
+        int widthPx = size[0];
+        int heightPx = size[1];
+
+        assignOutputFile(job);
+        job.timer.begin("load");
+        pool.acquire(renderer -> {
+            if (job.isCancelled()) {
+                // Cancelled while waiting for a free renderer
+                pool.release(renderer);
+                return;
+            }
+            // Hand the renderer back as soon as it is no longer drawn from
+            PdfJob.Completion completion = job.completion;
+            job.completion = new PdfJob.Completion() {
+                @Override
+                public void onCaptured(PdfJob job) {
+                    pool.release(renderer);
+                    completion.onCaptured(job);
+                }
+
+                @Override
+                public void onWritten(PdfJob job) {
+                    completion.onWritten(job);
+                }
+
+                @Override
+                public void onFailed(PdfJob job, String message) {
+                    if (!job.captured) {
+                        mainHandler.post(() -> {
+                            // A cancelled job may still be loading
+                            renderer.cancel();
+                            pool.release(renderer);
+                        });
+                    }
+                    completion.onFailed(job, message);
+                }
+            };
+
+            OffscreenRenderer.LoadCallback loaded = new OffscreenRenderer.LoadCallback() {
+                @Override
+                public void onLoaded(WebView webView) {
+                    try {
+                        if (job.isCancelled()) {
+                            return;
+                        }
+                        job.timer.begin("capture");
+                        capture(webView, job);
+                    } catch (Exception e) {
+                        Log.e(TAG, "❌ Error generating PDF", e);
+                        job.fail("Error generating PDF: " + e.getMessage());
+                    }
+                }
+
+                @Override
+                public void onError(String message) {
+                    job.fail(message);
+                }
+            };
+
+            String html = job.options.optString("html", null);
+            if (html != null) {
+                renderer.loadHtml(html, widthPx, heightPx, loaded);
             } else {
-                Log.e(TAG, "❌ Android: Error injecting print styles");
+                renderer.loadBundleUrl(job.options.optString("url"), widthPx, heightPx, loaded);
             }
         });
     }
 
     /**
-     * Restore page styles after PDF generation (internal method)
+     * Generate one PDF per job in a single call. Captures run one at a time on the main thread,
+     * up to {@code concurrency} captured jobs are encoded and written in parallel, and a
+     * "batchProgress" event is emitted as each job finishes.
      */
-    private void restorePageStyles(WebView webView) {
-        if (webView == null) {
-            Log.w(TAG, "⚠️ WebView not available for style restoration");
+    @PluginMethod
+    public void generateBatch(PluginCall call) {
+        JSArray jobs = call.getArray("jobs");
+        if (jobs == null || jobs.length() == 0) {
+            call.reject("At least one job is required");
+            return;
+        }
+
+        int concurrency = Math.max(1, Math.min(4, call.getInt("concurrency", 2)));
+        String id = call.getString("batchId", "");
+        if (id.isEmpty()) {
+            id = "batch-" + System.currentTimeMillis() + "-" + batchCounter.incrementAndGet();
+        }
+        PdfBatch batch = new PdfBatch(id, call, jobs, concurrency);
+        if (activeBatches.putIfAbsent(id, batch) != null) {
+            call.reject("A batch with batchId '" + id + "' is already running");
+            return;
+        }
+        call.setKeepAlive(true);
+        batch.timer.begin("render");
+
+        Log.d(TAG, "📚 Android: Starting batch " + id + " (" + batch.size + " jobs)");
+        mainHandler.post(() -> scheduleBatch(batch));
+    }
+
+    /**
+     * Start the next capture if the WebViews are free and the write queue has room (main thread)
+     */
+    private void scheduleBatch(PdfBatch batch) {
+        if (batch.capturing || batch.pendingWrites >= batch.concurrency || batch.nextIndex >= batch.size) {
+            return;
+        }
+        int index = batch.nextIndex++;
+        batch.capturing = true;
+
+        PdfJob job;
+        try {
+            job = new PdfJob(batch.call, batch.itemOptions(index), false);
+        } catch (Exception e) {
+            PdfJob invalid = new PdfJob(batch.call, new JSObject(), false);
+            finishBatchItem(batch, index, invalid, "Invalid job: " + e.getMessage());
+            return;
+        }
+        job.writeExecutor = batch.workers;
+        job.completion = new PdfJob.Completion() {
+            @Override
+            public void onCaptured(PdfJob job) {
+                captureScheduler.release(job);
+                batch.capturing = false;
+                batch.pendingWrites++;
+                scheduleBatch(batch);
+            }
+
+            @Override
+            public void onWritten(PdfJob job) {
+                unregisterJob(job);
+                stats.record(job, false);
+                if (!batch.merge) {
+                    janitor.track(job.pdfFile);
+                }
+                finishBatchItem(batch, index, job, null);
+            }
+
+            @Override
+            public void onFailed(PdfJob job, String message) {
+                unregisterJob(job);
+                stats.recordFailure(job);
+                mainHandler.post(() -> captureScheduler.release(job));
+                finishBatchItem(batch, index, job, message);
+            }
+        };
+        if (!registerJob(job)) {
+            finishBatchItem(batch, index, job, "A generation with jobId '" + job.id + "' is already running");
             return;
         }
+        if (batch.cancelled) {
+            // Remaining items fail one by one through the regular cancellation path
+            job.cancel("Batch cancelled");
+            return;
+        }
+
+        try {
+            job.geometry = PageGeometry.fromOptions(job.options);
+
+            if (job.options.has("html") || job.options.has("url")) {
+                renderOffscreen(job);
+                return;
+            }
+
+            // Waits for single generate calls that hold the app's WebView
+            captureScheduler.submit(job, () -> startBatchCapture(job));
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error generating PDF", e);
+            job.fail("Error generating PDF: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Capture a batch item from the app's WebView once the scheduler hands it over (main thread)
+     */
+    private void startBatchCapture(PdfJob job) {
+        try {
+            if (job.isCancelled()) {
+                captureScheduler.release(job);
+                return;
+            }
+            WebView webView = bridge.getWebView();
+            if (webView == null) {
+                job.fail("WebView not available");
+                return;
+            }
+            prepareAndCapture(webView, job);
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error generating PDF", e);
+            job.fail("Error generating PDF: " + e.getMessage());
+        }
+    }
 
-        new Handler(Looper.getMainLooper()).post(() -> {
+    /**
+     * Record an item, report progress and keep the queue moving (any thread)
+     */
+    private void finishBatchItem(PdfBatch batch, int index, PdfJob job, String error) {
+        mainHandler.post(() -> {
+            if (job.captured) {
+                batch.pendingWrites--;
+            } else {
+                batch.capturing = false;
+            }
+
+            boolean last = batch.complete(index, job, error);
+            notifyListeners("batchProgress", batch.progress(index));
+
+            if (last) {
+                activeBatches.remove(batch.id, batch);
+                batch.workers.shutdown();
+                pdfExecutor.execute(() -> resolveBatch(batch));
+            } else {
+                scheduleBatch(batch);
+            }
+        });
+    }
+
+    /**
+     * Cancel the item in flight and fail the items not started yet (main thread)
+     */
+    private void cancelBatch(PdfBatch batch) {
+        batch.cancelled = true;
+        for (PdfJob job : activeJobs.values()) {
+            if (job.call == batch.call) {
+                job.cancel("Batch cancelled");
+            }
+        }
+    }
+
+    /**
+     * Optionally merge the item files, then resolve the batch call (pdfExecutor only)
+     */
+    private void resolveBatch(PdfBatch batch) {
+        File merged = null;
+        List<File> files = batch.writtenFiles();
+        if (batch.merge && !files.isEmpty()) {
+            batch.timer.begin("merge");
+            merged = new File(getContext().getCacheDir(), PdfShare.generateFileName(batch.mergedFilename));
             try {
-                Log.d(TAG, "🔄 Android: Restoring page styles after PDF generation");
-
-                String restoreJS =
-                    "console.log('🔄 Android: Restoring page after PDF generation');\n" +
-                    "\n" +
-                    "// Restore .hidden-print elements to visible\n" +
-                    "const hiddenPrintElements = document.querySelectorAll('.hidden-print');\n" +
-                    "console.log('🔄 Android: Restoring ' + hiddenPrintElements.length + ' .hidden-print elements');\n" +
-                    "hiddenPrintElements.forEach((el, index) => {\n" +
-                    "    el.style.removeProperty('display');\n" +
-                    "    console.log('🔄 Android: Restored element ' + (index + 1) + ':', el.tagName, el.className);\n" +
-                    "});\n" +
-                    "\n" +
-                    "// Remove PDF-specific inline styles that were added\n" +
-                    "const allElements = document.querySelectorAll('*');\n" +
-                    "allElements.forEach(el => {\n" +
-                    "    // Only remove styles that we specifically added during PDF generation\n" +
-                    "    const style = el.style;\n" +
-                    "    \n" +
-                    "    // Remove forced white background if it was added for PDF\n" +
-                    "    if (style.backgroundColor === 'rgb(255, 255, 255)' && style.getPropertyPriority('background-color') === 'important') {\n" +
-                    "        el.style.removeProperty('background-color');\n" +
-                    "    }\n" +
-                    "    \n" +
-                    "    // Remove forced black text if it was added for PDF\n" +
-                    "    if (style.color === 'rgb(0, 0, 0)' && style.getPropertyPriority('color') === 'important') {\n" +
-                    "        el.style.removeProperty('color');\n" +
-                    "    }\n" +
-                    "    \n" +
-                    "    // Remove forced display/visibility if it was added for PDF\n" +
-                    "    if (style.getPropertyPriority('display') === 'important') {\n" +
-                    "        el.style.removeProperty('display');\n" +
-                    "    }\n" +
-                    "    if (style.getPropertyPriority('visibility') === 'important') {\n" +
-                    "        el.style.removeProperty('visibility');\n" +
-                    "    }\n" +
-                    "});\n" +
-                    "\n" +
-                    "console.log('✅ Android: Page styles restored successfully');\n";
-
-                webView.evaluateJavascript(restoreJS, result -> {
-                    Log.d(TAG, "✅ Android: Page styles restored successfully");
-                });
+                PdfMerger.merge(files, merged);
+            } catch (IOException e) {
+                Log.e(TAG, "❌ Error merging batch", e);
+                merged.delete();
+                batch.call.reject("Error merging PDFs: " + e.getMessage());
+                return;
+            } finally {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            janitor.track(merged);
+        }
+        batch.timer.end();
+
+        Log.d(TAG, "✅ Batch " + batch.id + " finished");
+        batch.call.resolve(batch.toResult(merged));
+        janitor.requestCleanup();
+    }
+
+    /**
+     * Concatenate existing PDFs ({@code paths}: file paths, file:// or content:// URIs) into one
+     * without re-rendering them. Resolves like generatePdfOnly, or shares with {@code share: true}.
+     */
+    @PluginMethod
+    public void mergePdfs(PluginCall call) {
+        JSArray paths = call.getArray("paths");
+        if (paths == null || paths.length() == 0) {
+            call.reject("At least one path is required");
+            return;
+        }
+        pdfExecutor.execute(() -> mergeFiles(call, paths));
+    }
+
+    /**
+     * Copy content:// inputs to the cache, merge and resolve or share (pdfExecutor only)
+     */
+    private void mergeFiles(PluginCall call, JSArray paths) {
+        StageTimer timer = new StageTimer();
+        List<File> inputs = new ArrayList<>();
+        List<File> copies = new ArrayList<>();
+        File output = null;
+        Uri destination = null;
+        try {
+            timer.begin("copy");
+            for (int i = 0; i < paths.length(); i++) {
+                String path = paths.getString(i);
+                Uri uri = Uri.parse(path);
+                if ("content".equals(uri.getScheme())) {
+                    File copy = File.createTempFile("merge-input", ".pdf", getContext().getCacheDir());
+                    copies.add(copy);
+                    copyUri(uri, copy);
+                    inputs.add(copy);
+                    continue;
+                }
+                File file = "file".equals(uri.getScheme()) ? new File(uri.getPath()) : new File(path);
+                if (!file.isFile()) {
+                    call.reject("PDF file not found at path: " + path);
+                    return;
+                }
+                inputs.add(file);
+            }
+
+            timer.begin("merge");
+            PdfMerger.Result result;
+            String destinationUri = call.getString("destinationUri", "");
+            if (!destinationUri.isEmpty()) {
+                destination = Uri.parse(destinationUri);
+                if (!"content".equals(destination.getScheme())) {
+                    call.reject("destinationUri must be a content:// URI");
+                    return;
+                }
+                try (OutputStream out = getContext().getContentResolver().openOutputStream(destination, "wt")) {
+                    if (out == null) {
+                        throw new IOException("Cannot open " + destination);
+                    }
+                    result = PdfMerger.merge(inputs, out);
+                }
+            } else {
+                String filename = call.getString("filename", "merged");
+                output = new File(getContext().getCacheDir(), PdfShare.generateFileName(filename));
+                result = PdfMerger.merge(inputs, output);
+                janitor.track(output);
+            }
+            timer.end();
+
+            Log.d(TAG, "✅ Merged " + inputs.size() + " PDFs (" + result.pageCount + " pages)");
+            JSObject ret = new JSObject();
+            ret.put("pageCount", result.pageCount);
+            ret.put("bytes", result.bytes);
+            ret.put("timings", timer.toJSObject());
+            if (call.getBoolean("share", false)) {
+                if (output != null) {
+                    PdfShare.shareFile(output, getContext(), call, ret, null);
+                } else {
+                    PdfShare.shareUri(destination, getContext(), call, ret, null);
+                }
+            } else {
+                ret.put("success", true);
+                ret.put("path", output != null ? output.getAbsolutePath() : destination.toString());
+                call.resolve(ret);
+            }
+            janitor.requestCleanup();
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error merging PDFs", e);
+            if (output != null) {
+                output.delete();
+            }
+            call.reject("Error merging PDFs: " + e.getMessage());
+        } finally {
+            for (File copy : copies) {
+                copy.delete();
+            }
+        }
+    }
+
+    private void copyUri(Uri uri, File target) throws IOException {
+        try (InputStream in = getContext().getContentResolver().openInputStream(uri);
+             OutputStream out = new FileOutputStream(target)) {
+            if (in == null) {
+                throw new IOException("Cannot open " + uri);
+            }
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    /**
+     * Rolling per-stage timings, sizes and peak memory of the last jobs, with percentiles
+     */
+    @PluginMethod
+    public void getStats(PluginCall call) {
+        JSObject ret = stats.toJSObject();
+        ret.put("queuedCaptures", captureScheduler.getQueueLength());
+        ret.put("activeJobs", activeJobs.size());
+        call.resolve(ret);
+    }
+
+    /**
+     * Forget the recorded jobs
+     */
+    @PluginMethod
+    public void resetStats(PluginCall call) {
+        stats.clear();
+        call.resolve();
+    }
+
+    /**
+     * Hit/miss counters and size of the render cache
+     */
+    @PluginMethod
+    public void getRenderCacheStats(PluginCall call) {
+        call.resolve(renderCache.getStats());
+    }
+
+    /**
+     * Drop all cached renders and delete their files
+     */
+    @PluginMethod
+    public void clearRenderCache(PluginCall call) {
+        renderCache.clear();
+        // Incremental page chunks go too, except those of exports still running
+        File pageDir = new File(getContext().getCacheDir(), IncrementalPageSink.DIR);
+        pdfExecutor.execute(() -> {
+            File[] documents = pageDir.listFiles();
+            if (documents != null) {
+                for (File document : documents) {
+                    IncrementalPageSink.deleteDirectory(document);
+                }
+            }
+        });
+        previewExecutor.execute(previewRenderer::clear);
+        call.resolve();
+    }
+
+    /**
+     * Thumbnails of pages ({@code pages}, 1-based, default the first) of a written PDF, cached
+     * on disk so repeated previews of an unchanged file skip rendering. Renders off the main
+     * thread and resolves with the thumbnail paths.
+     */
+    @PluginMethod
+    public void renderPreview(PluginCall call) {
+        String path = call.getString("path", "");
+        if (path.isEmpty()) {
+            call.reject("PDF path is required");
+            return;
+        }
+        File pdfFile = new File(path);
+        if (!pdfFile.isFile()) {
+            call.reject("PDF file not found at path: " + path);
+            return;
+        }
+
+        int[] pages;
+        JSArray pageArray = call.getArray("pages");
+        try {
+            if (pageArray == null || pageArray.length() == 0) {
+                pages = new int[] { 1 };
+            } else {
+                pages = new int[pageArray.length()];
+                for (int i = 0; i < pages.length; i++) {
+                    pages[i] = pageArray.getInt(i);
+                }
+            }
+        } catch (Exception e) {
+            call.reject("pages must be page numbers");
+            return;
+        }
+        int width = Math.max(16, Math.min(2048, call.getInt("width", 240)));
+        String format = call.getString("format", "webp");
+        if (!"webp".equals(format) && !"jpeg".equals(format)) {
+            call.reject("format must be 'webp' or 'jpeg'");
+            return;
+        }
+        int quality = Math.max(1, Math.min(100, call.getInt("quality", 80)));
 
+        previewExecutor.execute(() -> {
+            long start = SystemClock.elapsedRealtime();
+            try {
+                List<PreviewRenderer.Preview> previews =
+                    previewRenderer.render(pdfFile, pages, width, "webp".equals(format), quality);
+                JSArray items = new JSArray();
+                for (PreviewRenderer.Preview preview : previews) {
+                    items.put(preview.toJSObject());
+                }
+                JSObject ret = new JSObject();
+                ret.put("previews", items);
+                ret.put("renderMs", SystemClock.elapsedRealtime() - start);
+                ret.put("cache", previewRenderer.getStats());
+                call.resolve(ret);
             } catch (Exception e) {
-                Log.e(TAG, "❌ Error restoring page styles", e);
+                Log.e(TAG, "❌ Error rendering preview", e);
+                call.reject("Error rendering preview: " + e.getMessage());
             }
         });
     }
 
+    @PluginMethod
+    public void shareExistingPdf(PluginCall call) {
+        JSObject options = call.getData();
+        String path = options.getString("path");
+
+        if (path == null || path.isEmpty()) {
+            call.reject("PDF path is required");
+            return;
+        }
+
+        File pdfFile = new File(path);
+        if (!pdfFile.exists()) {
+            call.reject("PDF file not found at path: " + path);
+            return;
+        }
+
+        PdfShare.shareFile(pdfFile, getContext(), call);
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        for (PdfJob job : activeJobs.values()) {
+            job.cancel("Generation cancelled");
+        }
+        pdfExecutor.shutdown();
+        // Streamed shares hold their captured documents in memory
+        PdfStreamProvider.releaseAll();
+        previewExecutor.execute(previewRenderer::release);
+        previewExecutor.shutdown();
+        if (pageEncoders != null) {
+            pageEncoders.shutdown();
+        }
+        janitor.shutdown();
+        if (rendererPool != null) {
+            OffscreenRendererPool pool = rendererPool;
+            rendererPool = null;
+            mainHandler.post(pool::destroy);
+        }
+        mainHandler.post(tilePool::clear);
+        super.handleOnDestroy();
+    }
+
     /**
      * Restore page to normal view after PDF generation (public method for manual calls)
      */
@@ -356,7 +1583,7 @@ public class PdfSharePlugin extends Plugin {
             return;
         }
 
-        restorePageStyles(webView);
+        mainHandler.post(() -> PrintStyles.restoreAll(webView));
         call.resolve();
     }
 }
\ No newline at end of file
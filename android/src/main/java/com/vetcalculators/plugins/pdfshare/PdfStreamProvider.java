@@ -0,0 +1,270 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.provider.OpenableColumns;
+import android.util.Log;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Serves generated documents that were never written to a file.
+ *
+ * A captured {@link PdfPageSink} is registered under a random URI; every time a reader
+ * opens it, the full document is serialized again straight into a pipe, so each read costs
+ * a complete encode. The sink keeps the captured pages in memory until the entry expires:
+ * its release is scheduled when it is registered, and waits for readers still streaming.
+ * {@link #releaseAll} drops every entry when the plugin goes away.
+ */
+public class PdfStreamProvider extends ContentProvider {
+    private static final String TAG = "PdfStreamProvider";
+
+    private static final String AUTHORITY_SUFFIX = ".pdfshare.stream";
+
+    private static final class Entry {
+        final String displayName;
+        final PdfPageSink sink;
+        final Runnable expiry;
+
+        // Guarded by entries
+        int readers;
+        boolean expired;
+
+        Entry(String displayName, PdfPageSink sink, Runnable expiry) {
+            this.displayName = displayName;
+            this.sink = sink;
+            this.expiry = expiry;
+        }
+    }
+
+    // Guarded by itself
+    private static final Map<String, Entry> entries = new HashMap<>();
+
+    private static final Handler handler = new Handler(Looper.getMainLooper());
+
+    // Created on first read, shut down by releaseAll; guarded by entries
+    private static ExecutorService writers;
+
+    /**
+     * Publish {@code sink} as a readable PDF; the provider takes ownership and closes it
+     * {@code ttlMillis} from now
+     */
+    public static Uri register(Context context, String displayName, PdfPageSink sink, long ttlMillis) {
+        String id = UUID.randomUUID().toString();
+        Entry entry = new Entry(displayName, sink, () -> expire(id));
+        synchronized (entries) {
+            entries.put(id, entry);
+        }
+        handler.postDelayed(entry.expiry, ttlMillis);
+        return new Uri.Builder()
+            .scheme("content")
+            .authority(context.getPackageName() + AUTHORITY_SUFFIX)
+            .appendPath(id)
+            .appendPath(displayName)
+            .build();
+    }
+
+    private static void expire(String id) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.remove(id);
+            if (entry == null || !markExpired(entry)) {
+                return;
+            }
+        }
+        entry.sink.close();
+    }
+
+    /**
+     * Forget the entry; true if nobody is reading it and it can be closed now, otherwise the
+     * last reader closes it (holding entries)
+     */
+    private static boolean markExpired(Entry entry) {
+        entry.expired = true;
+        return entry.readers == 0;
+    }
+
+    /**
+     * Close every entry and stop the writer threads; URIs handed out so far stop resolving
+     */
+    public static void releaseAll() {
+        List<Entry> closable = new ArrayList<>();
+        synchronized (entries) {
+            for (Entry entry : entries.values()) {
+                handler.removeCallbacks(entry.expiry);
+                if (markExpired(entry)) {
+                    closable.add(entry);
+                }
+            }
+            entries.clear();
+            if (writers != null) {
+                // Running streams finish, then close their entries
+                writers.shutdown();
+                writers = null;
+            }
+        }
+        for (Entry entry : closable) {
+            entry.sink.close();
+        }
+    }
+
+    private static Entry find(Uri uri) {
+        if (uri.getPathSegments().isEmpty()) {
+            return null;
+        }
+        synchronized (entries) {
+            return entries.get(uri.getPathSegments().get(0));
+        }
+    }
+
+    /**
+     * Count a reader of {@code entry} and return the writer pool, or null if it expired meanwhile
+     */
+    private static ExecutorService startReading(Entry entry) {
+        synchronized (entries) {
+            if (entry.expired) {
+                return null;
+            }
+            entry.readers++;
+            if (writers == null) {
+                writers = Executors.newCachedThreadPool(runnable -> {
+                    Thread thread = new Thread(runnable, "PdfShare-stream");
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                });
+            }
+            return writers;
+        }
+    }
+
+    private static void finishReading(Entry entry) {
+        boolean close;
+        synchronized (entries) {
+            entry.readers--;
+            close = entry.expired && entry.readers == 0;
+        }
+        if (close) {
+            entry.sink.close();
+        }
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        Entry entry = find(uri);
+        if (entry == null || !"r".equals(mode)) {
+            throw new FileNotFoundException(uri.toString());
+        }
+
+        ParcelFileDescriptor[] pipe;
+        try {
+            pipe = ParcelFileDescriptor.createReliablePipe();
+        } catch (IOException e) {
+            throw new FileNotFoundException("Cannot create pipe: " + e.getMessage());
+        }
+
+        ExecutorService pool = startReading(entry);
+        if (pool == null) {
+            closeQuietly(pipe[0]);
+            closeQuietly(pipe[1]);
+            throw new FileNotFoundException(uri.toString());
+        }
+        ParcelFileDescriptor writeSide = pipe[1];
+        try {
+            pool.execute(() -> stream(entry, writeSide));
+        } catch (RejectedExecutionException e) {
+            // Released meanwhile
+            finishReading(entry);
+            closeQuietly(pipe[0]);
+            closeQuietly(writeSide);
+            throw new FileNotFoundException(uri.toString());
+        }
+        return pipe[0];
+    }
+
+    /**
+     * Serialize the whole document into the pipe (writer thread)
+     */
+    private static void stream(Entry entry, ParcelFileDescriptor writeSide) {
+        try (OutputStream out = new ParcelFileDescriptor.AutoCloseOutputStream(writeSide)) {
+            long bytes = entry.sink.writeTo(out, new StageTimer());
+            Log.d(TAG, "📤 Streamed " + bytes + " bytes of " + entry.displayName);
+        } catch (IOException e) {
+            // Also raised when the reader goes away early
+            Log.w(TAG, "Stream of " + entry.displayName + " ended early: " + e.getMessage());
+            try {
+                writeSide.closeWithError(e.getMessage());
+            } catch (IOException ignored) {
+                // Already closed
+            }
+        } finally {
+            finishReading(entry);
+        }
+    }
+
+    private static void closeQuietly(ParcelFileDescriptor fd) {
+        try {
+            fd.close();
+        } catch (IOException ignored) {
+            // Nothing was written to it
+        }
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        Entry entry = find(uri);
+        if (entry == null) {
+            return null;
+        }
+        String[] columns = projection != null ? projection : new String[] { OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE };
+        Object[] row = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            // The size is only known once the document has been serialized
+            row[i] = OpenableColumns.DISPLAY_NAME.equals(columns[i]) ? entry.displayName : null;
+        }
+        MatrixCursor cursor = new MatrixCursor(columns, 1);
+        cursor.addRow(row);
+        return cursor;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return "application/pdf";
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("Read-only provider");
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Read-only provider");
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Read-only provider");
+    }
+}
@@ -0,0 +1,119 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import com.getcapacitor.JSObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Rolling statistics of finished jobs for {@code getStats}: per-stage durations, output size,
+ * page count and peak memory over the last {@code window} jobs, plus lifetime counters.
+ * Jobs are recorded from the main thread and the write executors.
+ */
+public class PipelineStats {
+    private final int window;
+    private final Map<String, RollingSamples> stages = new LinkedHashMap<>();
+    private final RollingSamples totalMillis;
+    private final RollingSamples bytes;
+    private final RollingSamples pageCount;
+    private final RollingSamples peakJavaHeap;
+    private final RollingSamples peakNativeHeap;
+
+    private long completed;
+    private long failed;
+    private long cancelled;
+    private long cacheHits;
+
+    public PipelineStats(int window) {
+        this.window = Math.max(1, window);
+        this.totalMillis = new RollingSamples(this.window);
+        this.bytes = new RollingSamples(this.window);
+        this.pageCount = new RollingSamples(this.window);
+        this.peakJavaHeap = new RollingSamples(this.window);
+        this.peakNativeHeap = new RollingSamples(this.window);
+    }
+
+    /**
+     * Record a job that produced its PDF; stages it skipped get no sample
+     */
+    public synchronized void record(PdfJob job, boolean cacheHit) {
+        completed++;
+        if (cacheHit) {
+            cacheHits++;
+        }
+        for (Map.Entry<String, Long> entry : job.timer.getDurations().entrySet()) {
+            RollingSamples samples = stages.get(entry.getKey());
+            if (samples == null) {
+                samples = new RollingSamples(window);
+                stages.put(entry.getKey(), samples);
+            }
+            samples.add(entry.getValue());
+        }
+        totalMillis.add(job.timer.getTotalMillis());
+        bytes.add(job.bytes);
+        pageCount.add(job.pageCount);
+        peakJavaHeap.add(job.watermark.getPeakJava());
+        peakNativeHeap.add(job.watermark.getPeakNative());
+    }
+
+    public synchronized void recordFailure(PdfJob job) {
+        if (job.isCancelled()) {
+            cancelled++;
+        } else {
+            failed++;
+        }
+    }
+
+    public synchronized void clear() {
+        stages.clear();
+        totalMillis.clear();
+        bytes.clear();
+        pageCount.clear();
+        peakJavaHeap.clear();
+        peakNativeHeap.clear();
+        completed = 0;
+        failed = 0;
+        cancelled = 0;
+        cacheHits = 0;
+    }
+
+    /**
+     * { completed, failed, cancelled, cacheHits, window, stages: { <stage>Ms: summary }, totalMs,
+     * bytes, pageCount, peakJavaHeapBytes, peakNativeHeapBytes } where a summary is
+     * { count, min, mean, p50, p90, p95, p99, max } over the window
+     */
+    public synchronized JSObject toJSObject() {
+        JSObject ret = new JSObject();
+        ret.put("completed", completed);
+        ret.put("failed", failed);
+        ret.put("cancelled", cancelled);
+        ret.put("cacheHits", cacheHits);
+        ret.put("window", window);
+
+        JSObject stageSummaries = new JSObject();
+        for (Map.Entry<String, RollingSamples> entry : stages.entrySet()) {
+            stageSummaries.put(entry.getKey() + "Ms", summarize(entry.getValue()));
+        }
+        ret.put("stages", stageSummaries);
+        ret.put("totalMs", summarize(totalMillis));
+        ret.put("bytes", summarize(bytes));
+        ret.put("pageCount", summarize(pageCount));
+        ret.put("peakJavaHeapBytes", summarize(peakJavaHeap));
+        ret.put("peakNativeHeapBytes", summarize(peakNativeHeap));
+        return ret;
+    }
+
+    private static JSObject summarize(RollingSamples samples) {
+        long[] sorted = samples.sorted();
+        JSObject summary = new JSObject();
+        summary.put("count", sorted.length);
+        summary.put("min", sorted.length == 0 ? 0 : sorted[0]);
+        summary.put("mean", RollingSamples.mean(sorted));
+        summary.put("p50", RollingSamples.percentile(sorted, 50));
+        summary.put("p90", RollingSamples.percentile(sorted, 90));
+        summary.put("p95", RollingSamples.percentile(sorted, 95));
+        summary.put("p99", RollingSamples.percentile(sorted, 99));
+        summary.put("max", sorted.length == 0 ? 0 : sorted[sorted.length - 1]);
+        return summary;
+    }
+}
@@ -0,0 +1,265 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.pdf.PdfRenderer;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
+
+import com.getcapacitor.JSObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Page thumbnails of written PDFs, cached on disk.
+ *
+ * Pages are rendered with {@link PdfRenderer} into one reused bitmap and encoded as WebP or
+ * JPEG into a cache subdirectory. Thumbnails are keyed by the PDF's path, modification time
+ * and size plus the render options, so a rewritten file never serves stale previews and a
+ * repeated preview is a file lookup. The PDF is only opened when a page is missing. The
+ * directory is kept under {@code maxBytes} by deleting the least recently used thumbnails.
+ *
+ * Not thread-safe; the plugin calls it from its preview thread only.
+ */
+public class PreviewRenderer {
+
+    public static final String DIR = "pdfshare-previews";
+
+    public static final class Preview {
+        public final int page;
+        public final File file;
+        public final int width;
+        public final int height;
+        public final boolean cached;
+
+        Preview(int page, File file, int width, int height, boolean cached) {
+            this.page = page;
+            this.file = file;
+            this.width = width;
+            this.height = height;
+            this.cached = cached;
+        }
+
+        public JSObject toJSObject() {
+            JSObject ret = new JSObject();
+            ret.put("page", page);
+            ret.put("path", file.getAbsolutePath());
+            ret.put("width", width);
+            ret.put("height", height);
+            ret.put("cached", cached);
+            return ret;
+        }
+    }
+
+    private final File dir;
+    private final long maxBytes;
+
+    // Reconfigured for each page while it is large enough
+    private Bitmap bitmap;
+    private long hits;
+    private long misses;
+    private long allocations;
+
+    public PreviewRenderer(File cacheDir, long maxBytes) {
+        this.dir = new File(cacheDir, DIR);
+        this.maxBytes = Math.max(1, maxBytes);
+    }
+
+    /**
+     * Thumbnails of {@code pages} (1-based) of {@code pdf}, {@code width} pixels wide
+     *
+     * @param webp WebP instead of JPEG
+     */
+    public List<Preview> render(File pdf, int[] pages, int width, boolean webp, int quality) throws IOException {
+        String extension = webp ? ".webp" : ".jpg";
+        String source = pdf.getAbsolutePath() + "|" + pdf.lastModified() + "|" + pdf.length();
+
+        List<Preview> previews = new ArrayList<>();
+        PdfRenderer renderer = null;
+        ParcelFileDescriptor fd = null;
+        boolean wrote = false;
+        try {
+            for (int page : pages) {
+                String key = key(source + "|" + page + "|" + width + "|" + quality + extension);
+                // The height is part of the name so hits need not open the PDF
+                File cached = findCached(key, extension);
+                if (cached != null) {
+                    hits++;
+                    cached.setLastModified(System.currentTimeMillis());
+                    previews.add(new Preview(page, cached, width, heightOf(cached), true));
+                    continue;
+                }
+
+                misses++;
+                if (renderer == null) {
+                    fd = ParcelFileDescriptor.open(pdf, ParcelFileDescriptor.MODE_READ_ONLY);
+                    renderer = new PdfRenderer(fd);
+                }
+                if (page < 1 || page > renderer.getPageCount()) {
+                    throw new IOException("Page " + page + " out of range 1-" + renderer.getPageCount());
+                }
+                previews.add(renderPage(renderer, page, key, width, webp, quality, extension));
+                wrote = true;
+            }
+        } finally {
+            if (renderer != null) {
+                renderer.close();
+            }
+            if (fd != null) {
+                fd.close();
+            }
+        }
+        if (wrote) {
+            trim();
+        }
+        return previews;
+    }
+
+    private Preview renderPage(PdfRenderer renderer, int pageNumber, String key, int width, boolean webp,
+                               int quality, String extension) throws IOException {
+        Bitmap target;
+        int height;
+        try (PdfRenderer.Page page = renderer.openPage(pageNumber - 1)) {
+            height = Math.max(1, Math.round(width * (float) page.getHeight() / page.getWidth()));
+            target = acquireBitmap(width, height);
+            // PdfRenderer leaves unpainted areas transparent, which JPEG would turn black
+            target.eraseColor(Color.WHITE);
+            page.render(target, null, null, PdfRenderer.Page.RENDER_MODE_FOR_DISPLAY);
+        }
+
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir.getAbsolutePath());
+        }
+        File file = new File(dir, key + "-" + height + extension);
+        // Written aside so a failed encode never leaves a truncated thumbnail behind
+        File partial = new File(dir, file.getName() + ".part");
+        try (FileOutputStream out = new FileOutputStream(partial)) {
+            if (!target.compress(format(webp), quality, out)) {
+                throw new IOException("Thumbnail encoding failed");
+            }
+        }
+        if (!partial.renameTo(file)) {
+            partial.delete();
+            throw new IOException("Cannot rename " + partial.getName());
+        }
+        return new Preview(pageNumber, file, width, height, false);
+    }
+
+    /**
+     * The bitmap resized to {@code width} x {@code height}, reallocated only when it grows
+     */
+    private Bitmap acquireBitmap(int width, int height) {
+        long needed = (long) width * height * 4;
+        if (bitmap != null && bitmap.getAllocationByteCount() >= needed) {
+            if (bitmap.getWidth() != width || bitmap.getHeight() != height) {
+                bitmap.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+            }
+            return bitmap;
+        }
+        if (bitmap != null) {
+            bitmap.recycle();
+        }
+        allocations++;
+        bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        return bitmap;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat format(boolean webp) {
+        if (!webp) {
+            return Bitmap.CompressFormat.JPEG;
+        }
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+            ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+    }
+
+    private File findCached(String key, String extension) {
+        String[] names = dir.list((d, name) -> name.startsWith(key + "-") && name.endsWith(extension));
+        return names == null || names.length == 0 ? null : new File(dir, names[0]);
+    }
+
+    private static int heightOf(File file) {
+        String name = file.getName();
+        return Integer.parseInt(name.substring(name.lastIndexOf('-') + 1, name.lastIndexOf('.')));
+    }
+
+    /**
+     * Delete the least recently used thumbnails until the directory fits in maxBytes
+     */
+    private void trim() {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (total <= maxBytes) {
+                break;
+            }
+            long bytes = file.length();
+            if (file.delete()) {
+                total -= bytes;
+            }
+        }
+    }
+
+    private static String key(String material) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(material.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                sb.append(String.format("%02x", hash[i]));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * { hits, misses, bitmapAllocations }
+     */
+    public JSObject getStats() {
+        JSObject stats = new JSObject();
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("bitmapAllocations", allocations);
+        return stats;
+    }
+
+    /**
+     * Delete every thumbnail
+     */
+    public void clear() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    public void release() {
+        if (bitmap != null) {
+            bitmap.recycle();
+            bitmap = null;
+        }
+    }
+}
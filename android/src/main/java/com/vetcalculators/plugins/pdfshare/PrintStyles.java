@@ -0,0 +1,257 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.webkit.ValueCallback;
+import android.webkit.WebView;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prepares the page for PDF capture and restores it afterwards.
+ *
+ * Prepare records every inline style it changes in a change log keyed by a job token
+ * ({@code window.__pdfShareChanges[token]}), waits for the script to finish and for the
+ * resulting frame to be committed, and only then reports back. Restore replays exactly
+ * that log in reverse instead of scanning the whole document.
+ *
+ * Both scripts are installed once as a versioned helper object ({@code window.__pdfShare})
+ * by {@link #install}, so a job only sends a short call with its options and gets a compact
+ * JSON summary back. A page that has navigated since has lost the helper (or kept one of
+ * another plugin version); prepare notices, installs it again and retries.
+ *
+ * All methods must be called on the main thread.
+ */
+public class PrintStyles {
+    private static final String TAG = "PrintStyles";
+
+    // Upper bound for the script callback and the frame commit, a navigating page never answers
+    private static final long PREPARE_TIMEOUT_MS = 1000;
+
+    // Bump whenever PREPARE_JS or RESTORE_JS change so pages holding the old helper reinstall it
+    private static final int HELPER_VERSION = 2;
+
+    private static final String HELPER_READY =
+        "window.__pdfShare && window.__pdfShare.version === " + HELPER_VERSION;
+
+    private static final AtomicLong tokenCounter = new AtomicLong();
+
+    public interface Callback {
+        /**
+         * @param summary { changes, hidden, recolored, expanded } as reported by the page,
+         *                null if the page did not answer
+         */
+        void onPrepared(JSONObject summary);
+    }
+
+    private static final String PREPARE_JS =
+        "(function (options) {\n" +
+        "  var log = [];\n" +
+        "  var hidden = 0, recolored = 0, expanded = false;\n" +
+        "  function set(el, prop, value) {\n" +
+        "    log.push([el, prop, el.style.getPropertyValue(prop), el.style.getPropertyPriority(prop)]);\n" +
+        "    el.style.setProperty(prop, value, 'important');\n" +
+        "  }\n" +
+        "\n" +
+        "  // Hide elements marked with .hidden-print, respecting the app's own print CSS\n" +
+        "  document.querySelectorAll('.hidden-print').forEach(function (el) { set(el, 'display', 'none'); hidden++; });\n" +
+        "\n" +
+        "  // Ensure body is visible with basic print-friendly colors\n" +
+        "  var body = document.body;\n" +
+        "  if (body) {\n" +
+        "    var bodyStyle = window.getComputedStyle(body);\n" +
+        "    if (bodyStyle.display === 'none') { set(body, 'display', 'block'); }\n" +
+        "    if (bodyStyle.visibility === 'hidden') { set(body, 'visibility', 'visible'); }\n" +
+        "    set(body, 'background-color', '#ffffff');\n" +
+        "    set(body, 'color', '#000000');\n" +
+        "  }\n" +
+        "\n" +
+        "  // Force dark mode elements to be readable in the PDF\n" +
+        "  document.querySelectorAll('[class*=\"dark:\"], .dark').forEach(function (el) {\n" +
+        "    var computed = window.getComputedStyle(el);\n" +
+        "    var before = log.length;\n" +
+        "    if (computed.color === 'rgb(255, 255, 255)' || computed.color === 'white') { set(el, 'color', '#000000'); }\n" +
+        "    if (computed.backgroundColor === 'rgb(0, 0, 0)' || computed.backgroundColor.indexOf('gray') >= 0) {\n" +
+        "      set(el, 'background-color', '#ffffff');\n" +
+        "    }\n" +
+        "    if (log.length > before) { recolored++; }\n" +
+        "  });\n" +
+        "\n" +
+        "  // Let a scrolling capture element grow to its full content height\n" +
+        "  var target = options.elementId && document.getElementById(options.elementId);\n" +
+        "  if (target && target.scrollHeight > target.clientHeight) {\n" +
+        "    set(target, 'height', 'auto');\n" +
+        "    set(target, 'max-height', 'none');\n" +
+        "    set(target, 'overflow', 'visible');\n" +
+        "    expanded = true;\n" +
+        "  }\n" +
+        "\n" +
+        "  window.__pdfShareChanges = window.__pdfShareChanges || {};\n" +
+        "  window.__pdfShareChanges[options.token] = log;\n" +
+        "  return { changes: log.length, hidden: hidden, recolored: recolored, expanded: expanded };\n" +
+        "})";
+
+    private static final String RESTORE_JS =
+        "(function (token) {\n" +
+        "  var store = window.__pdfShareChanges;\n" +
+        "  if (!store) { return 0; }\n" +
+        "  var tokens = token === null ? Object.keys(store) : [token];\n" +
+        "  var restored = 0;\n" +
+        "  tokens.forEach(function (t) {\n" +
+        "    var log = store[t];\n" +
+        "    if (!log) { return; }\n" +
+        "    // Reverse order so repeated changes of one property unwind to the original value\n" +
+        "    for (var i = log.length - 1; i >= 0; i--) {\n" +
+        "      var c = log[i];\n" +
+        "      if (c[2]) { c[0].style.setProperty(c[1], c[2], c[3]); } else { c[0].style.removeProperty(c[1]); }\n" +
+        "    }\n" +
+        "    restored += log.length;\n" +
+        "    delete store[t];\n" +
+        "  });\n" +
+        "  return restored;\n" +
+        "})";
+
+    private static final String INSTALL_JS =
+        "window.__pdfShare = { version: " + HELPER_VERSION + ", prepare: " + PREPARE_JS + ", restore: " + RESTORE_JS
+            + " }; 1";
+
+    /**
+     * Define the helper object in the page, replacing an earlier one;
+     * {@code done} runs once they are in place (or the page did not answer), may be null
+     */
+    public static void install(WebView webView, Runnable done) {
+        webView.evaluateJavascript(INSTALL_JS, result -> {
+            Log.d(TAG, "📦 Android: Print style helpers installed");
+            if (done != null) {
+                done.run();
+            }
+        });
+    }
+
+    /**
+     * Unique token identifying one prepare/restore pair
+     */
+    public static String newToken() {
+        return "pdf-" + System.currentTimeMillis() + "-" + tokenCounter.incrementAndGet();
+    }
+
+    /**
+     * Apply print styles and call back once the changed page has been committed for drawing
+     *
+     * @param elementId element to be captured, expanded to its full height if it scrolls; may be null
+     */
+    public static void prepare(WebView webView, String token, String elementId, Callback callback) {
+        Handler handler = new Handler(Looper.getMainLooper());
+        final boolean[] done = { false };
+        final JSONObject[] summary = { null };
+
+        Runnable complete = () -> {
+            if (done[0]) {
+                return;
+            }
+            done[0] = true;
+            if (summary[0] == null) {
+                Log.w(TAG, "⚠️ Android: Page did not confirm print preparation, capturing anyway");
+            }
+            callback.onPrepared(summary[0]);
+        };
+        handler.postDelayed(complete, PREPARE_TIMEOUT_MS);
+
+        JSONObject options = new JSONObject();
+        try {
+            options.put("token", token);
+            options.put("elementId", elementId == null ? JSONObject.NULL : elementId);
+        } catch (JSONException e) {
+            // Only thrown for non-finite numbers
+            throw new IllegalStateException(e);
+        }
+        // "null" tells a page without the current helper apart from a summary object
+        String call = "(" + HELPER_READY + ") ? window.__pdfShare.prepare(" + options + ") : null";
+        ValueCallback<String> prepared = new ValueCallback<String>() {
+            private boolean retried;
+
+            @Override
+            public void onReceiveValue(String result) {
+                JSONObject parsed = parseSummary(result);
+                if (parsed == null && !retried) {
+                    // Install and prepare in the same round trip
+                    retried = true;
+                    webView.evaluateJavascript(INSTALL_JS + "; " + call, this);
+                    return;
+                }
+                summary[0] = parsed;
+                Log.d(TAG, "📋 Android: Page prepared for PDF generation " + parsed);
+
+                // Wait until a frame reflecting the DOM change is ready to be drawn
+                webView.postVisualStateCallback(0, new WebView.VisualStateCallback() {
+                    @Override
+                    public void onComplete(long requestId) {
+                        handler.removeCallbacks(complete);
+                        complete.run();
+                    }
+                });
+            }
+        };
+        webView.evaluateJavascript(call, prepared);
+    }
+
+    /**
+     * Undo the changes recorded for {@code token}
+     */
+    public static void restore(WebView webView, String token) {
+        if (webView == null) {
+            Log.w(TAG, "⚠️ WebView not available for style restoration");
+            return;
+        }
+        evaluateRestore(webView, quote(token));
+    }
+
+    /**
+     * Undo the changes of every job that has not been restored yet
+     */
+    public static void restoreAll(WebView webView) {
+        if (webView == null) {
+            Log.w(TAG, "⚠️ WebView not available for style restoration");
+            return;
+        }
+        evaluateRestore(webView, "null");
+    }
+
+    private static void evaluateRestore(WebView webView, String tokenLiteral) {
+        try {
+            // A page without the helpers has navigated away and has nothing to restore
+            webView.evaluateJavascript("(" + HELPER_READY + ") ? window.__pdfShare.restore(" + tokenLiteral + ") : 0",
+                result -> Log.d(TAG, "🔄 Android: Page styles restored (" + parseCount(result) + " style changes)"));
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error restoring page styles", e);
+        }
+    }
+
+    private static JSONObject parseSummary(String result) {
+        if (result == null || !result.startsWith("{")) {
+            return null;
+        }
+        try {
+            return new JSONObject(result);
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    private static int parseCount(String result) {
+        try {
+            return result == null ? -1 : Integer.parseInt(result.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String quote(String token) {
+        // Tokens are generated by newToken and never contain quotes
+        return "'" + token + "'";
+    }
+}
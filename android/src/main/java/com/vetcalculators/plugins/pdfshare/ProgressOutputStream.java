@@ -0,0 +1,64 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import android.os.CancellationSignal;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream of a job's write stage: fails the write as soon as the job is cancelled
+ * and reports the bytes written every {@code reportEvery} bytes.
+ */
+public class ProgressOutputStream extends FilterOutputStream {
+
+    public interface Listener {
+        void onProgress(long bytesWritten);
+    }
+
+    private final CancellationSignal cancellation;
+    private final long reportEvery;
+    private final Listener listener;
+    private long bytesWritten;
+    private long nextReport;
+
+    public ProgressOutputStream(OutputStream out, CancellationSignal cancellation, long reportEvery, Listener listener) {
+        super(out);
+        this.cancellation = cancellation;
+        this.reportEvery = reportEvery;
+        this.listener = listener;
+        this.nextReport = reportEvery;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        checkCancelled();
+        out.write(b);
+        advance(1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        checkCancelled();
+        out.write(b, off, len);
+        advance(len);
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    private void checkCancelled() throws IOException {
+        if (cancellation.isCanceled()) {
+            throw new IOException("Write cancelled");
+        }
+    }
+
+    private void advance(long len) {
+        bytesWritten += len;
+        if (bytesWritten >= nextReport) {
+            nextReport = bytesWritten + reportEvery;
+            listener.onProgress(bytesWritten);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import android.webkit.ValueCallback;
+import android.webkit.WebView;
+
+import com.getcapacitor.JSObject;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of generated PDFs keyed by the page content and the render options.
+ *
+ * Entries point at files already written to the cache dir; they are validated on lookup
+ * because the cache dir may be cleaned behind our back. Bounded by entry count and total
+ * bytes, evicted files are deleted. Accessed from the main thread and the executor.
+ */
+public class RenderCache {
+
+    public static class Entry {
+        public final File file;
+        public final long bytes;
+        public final int pageCount;
+
+        Entry(File file, long bytes, int pageCount) {
+            this.file = file;
+            this.bytes = bytes;
+            this.pageCount = pageCount;
+        }
+    }
+
+    // Two independent 32-bit hashes over the markup, form values and layout size
+    private static final String CONTENT_HASH_JS =
+        "(function () {\n" +
+        "  var h1 = 0x811c9dc5, h2 = 5381;\n" +
+        "  function add(s) {\n" +
+        "    for (var i = 0; i < s.length; i++) {\n" +
+        "      var c = s.charCodeAt(i);\n" +
+        "      h1 = Math.imul(h1 ^ c, 16777619);\n" +
+        "      h2 = (Math.imul(h2, 33) + c) | 0;\n" +
+        "    }\n" +
+        "  }\n" +
+        "  add(document.documentElement.outerHTML);\n" +
+        "  // Form values are not part of the markup\n" +
+        "  document.querySelectorAll('input, select, textarea').forEach(function (el) {\n" +
+        "    add('\\u0000' + (el.type === 'checkbox' || el.type === 'radio' ? el.checked : el.value));\n" +
+        "  });\n" +
+        "  add('\\u0000' + document.documentElement.scrollHeight + 'x' + window.innerWidth);\n" +
+        "  return (h1 >>> 0).toString(16) + '-' + (h2 >>> 0).toString(16);\n" +
+        "})()";
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public RenderCache(int maxEntries, long maxBytes) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.maxBytes = Math.max(1, maxBytes);
+    }
+
+    /**
+     * Cache key for a page state hash and the canonical render options of a request (only the
+     * options that change the output, in a fixed order)
+     */
+    public static String key(String contentHash, String renderOptions, int viewWidth, int viewHeight) {
+        String material = contentHash + "|" + viewWidth + "x" + viewHeight + "|" + renderOptions;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(material.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                sb.append(String.format("%02x", hash[i]));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is mandatory on Android, fall back to something usable anyway
+            return Integer.toHexString(material.hashCode()) + Integer.toHexString(material.length());
+        }
+    }
+
+    /**
+     * Hash the current page state; the callback receives null if the page did not answer (main thread)
+     */
+    public static void hashContent(WebView webView, ValueCallback<String> callback) {
+        webView.evaluateJavascript(CONTENT_HASH_JS, result -> {
+            if (result == null || result.length() < 3 || !result.startsWith("\"")) {
+                callback.onReceiveValue(null);
+            } else {
+                callback.onReceiveValue(result.substring(1, result.length() - 1));
+            }
+        });
+    }
+
+    public synchronized Entry get(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && (!entry.file.isFile() || entry.file.length() != entry.bytes)) {
+            remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return entry;
+    }
+
+    public synchronized void put(String key, File file, long bytes, int pageCount) {
+        Entry previous = entries.put(key, new Entry(file, bytes, pageCount));
+        if (previous != null) {
+            totalBytes -= previous.bytes;
+            if (!previous.file.equals(file)) {
+                previous.file.delete();
+            }
+        }
+        totalBytes += bytes;
+        trim();
+    }
+
+    public synchronized void clear() {
+        for (Entry entry : entries.values()) {
+            entry.file.delete();
+        }
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    public synchronized JSObject getStats() {
+        JSObject ret = new JSObject();
+        ret.put("hits", hits);
+        ret.put("misses", misses);
+        ret.put("evictions", evictions);
+        ret.put("entries", entries.size());
+        ret.put("bytes", totalBytes);
+        ret.put("maxEntries", maxEntries);
+        ret.put("maxBytes", maxBytes);
+        return ret;
+    }
+
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            totalBytes -= entry.bytes;
+        }
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        // Never evict the newest entry, even when it alone exceeds the byte budget
+        while ((entries.size() > maxEntries || totalBytes > maxBytes) && entries.size() > 1 && it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            it.remove();
+            totalBytes -= eldest.bytes;
+            eldest.file.delete();
+            evictions++;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size window of the most recent values of one metric, with percentiles over the
+ * window. Not thread-safe; {@link PipelineStats} guards it.
+ */
+public class RollingSamples {
+    private final long[] values;
+    private int size;
+    private int next;
+
+    public RollingSamples(int capacity) {
+        this.values = new long[Math.max(1, capacity)];
+    }
+
+    public void add(long value) {
+        values[next] = value;
+        next = (next + 1) % values.length;
+        if (size < values.length) {
+            size++;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Values in the window in ascending order
+     */
+    public long[] sorted() {
+        long[] copy = Arrays.copyOf(values, size);
+        Arrays.sort(copy);
+        return copy;
+    }
+
+    /**
+     * Nearest-rank percentile of {@code sorted} (from {@link #sorted}), 0 when empty
+     *
+     * @param percent 0 to 100
+     */
+    public static long percentile(long[] sorted, double percent) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+
+    public static long mean(long[] values) {
+        if (values.length == 0) {
+            return 0;
+        }
+        long sum = 0;
+        for (long value : values) {
+            sum += value;
+        }
+        return Math.round((double) sum / values.length);
+    }
+
+    public void clear() {
+        size = 0;
+        next = 0;
+    }
+}
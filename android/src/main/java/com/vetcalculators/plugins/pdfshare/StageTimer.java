@@ -0,0 +1,118 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import android.os.Build;
+import android.os.SystemClock;
+import android.os.Trace;
+
+import com.getcapacitor.JSObject;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records wall-clock durations of the named stages of a PDF job.
+ * Stages are sequential: starting a new stage ends the current one.
+ * A timer is handed from the UI thread to the background executor,
+ * so it is only ever touched by one thread at a time.
+ *
+ * With {@link #enableTrace} every stage is also emitted as an {@link Trace} async section
+ * named "PdfShare:" plus the stage (API 29+), so it shows up in system traces even when it
+ * begins on one thread and ends on another.
+ */
+public class StageTimer {
+    private static final String TRACE_PREFIX = "PdfShare:";
+
+    private final long startMillis;
+    private final Map<String, Long> durations = new LinkedHashMap<>();
+
+    private String currentStage;
+    private long currentStart;
+    private boolean trace;
+    private int traceCookie;
+
+    public StageTimer() {
+        this.startMillis = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Start timing a stage, ending the previous one if still running
+     */
+    public void begin(String stage) {
+        end();
+        currentStage = stage;
+        currentStart = SystemClock.elapsedRealtime();
+        if (trace) {
+            Trace.beginAsyncSection(TRACE_PREFIX + stage, traceCookie);
+        }
+    }
+
+    /**
+     * End the currently running stage, if any
+     */
+    public void end() {
+        if (currentStage == null) {
+            return;
+        }
+        record(currentStage, SystemClock.elapsedRealtime() - currentStart);
+        if (trace) {
+            Trace.endAsyncSection(TRACE_PREFIX + currentStage, traceCookie);
+        }
+        currentStage = null;
+    }
+
+    /**
+     * Add a duration measured elsewhere (e.g. time spent inside an output stream)
+     */
+    public void record(String stage, long millis) {
+        Long previous = durations.get(stage);
+        durations.put(stage, previous == null ? millis : previous + millis);
+    }
+
+    /**
+     * Emit the stages begun from now on as trace sections; {@code cookie} tells concurrent jobs apart
+     */
+    public void enableTrace(int cookie) {
+        trace = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q;
+        traceCookie = cookie;
+    }
+
+    /**
+     * Trace section on the current thread around work that is timed by {@link #record}
+     */
+    public void beginTraceSection(String stage) {
+        if (trace) {
+            Trace.beginSection(TRACE_PREFIX + stage);
+        }
+    }
+
+    public void endTraceSection() {
+        if (trace) {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * Durations of the finished stages by name, in the order they first ran
+     */
+    public Map<String, Long> getDurations() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(durations));
+    }
+
+    public long getTotalMillis() {
+        return SystemClock.elapsedRealtime() - startMillis;
+    }
+
+    /**
+     * Timings as { <stage>Ms: number, ..., totalMs: number }
+     */
+    public JSObject toJSObject() {
+        end();
+        JSObject ret = new JSObject();
+        for (Map.Entry<String, Long> entry : durations.entrySet()) {
+            ret.put(entry.getKey() + "Ms", entry.getValue());
+        }
+        ret.put("totalMs", getTotalMillis());
+        return ret;
+    }
+}
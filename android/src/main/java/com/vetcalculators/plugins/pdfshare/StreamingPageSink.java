@@ -0,0 +1,121 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import android.graphics.pdf.PdfDocument;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Streams every page to disk as soon as it is finished.
+ *
+ * Each page is recorded into its own single-page PdfDocument, which is written to a chunk
+ * file on the background executor and closed. The capture of the next page waits until
+ * the previous chunk is on disk, so at most one finished page is held in memory. The
+ * chunks are concatenated with {@link PdfMerger} at the end.
+ */
+public class StreamingPageSink implements PdfPageSink {
+    private static final String TAG = "StreamingPageSink";
+
+    private final File chunkDir;
+    private final Executor executor;
+    private final MemoryWatermark watermark;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Chunk files in page order; only touched on the main thread before writeTo
+    private final List<File> chunks = new ArrayList<>();
+    private PdfDocument currentChunk;
+
+    // Written by the executor; writeTo reads them after the last onReady, so every chunk write
+    // has completed and is visible even when writeTo runs on another executor
+    private long encodeMillis;
+    private IOException failure;
+    private boolean closed;
+
+    public StreamingPageSink(File chunkDir, Executor executor, MemoryWatermark watermark) {
+        this.chunkDir = chunkDir;
+        this.executor = executor;
+        this.watermark = watermark;
+    }
+
+    @Override
+    public PdfDocument.Page startPage(PdfDocument.PageInfo pageInfo) {
+        currentChunk = new PdfDocument();
+        return currentChunk.startPage(pageInfo);
+    }
+
+    @Override
+    public void finishPage(PdfDocument.Page page, Runnable onReady) {
+        PdfDocument chunk = currentChunk;
+        currentChunk = null;
+        chunk.finishPage(page);
+
+        File chunkFile = new File(chunkDir, "page-" + (chunks.size() + 1) + ".pdf");
+        chunks.add(chunkFile);
+
+        executor.execute(() -> {
+            long start = SystemClock.elapsedRealtime();
+            try {
+                if (failure == null) {
+                    if (!chunkDir.isDirectory() && !chunkDir.mkdirs()) {
+                        throw new IOException("Cannot create " + chunkDir.getAbsolutePath());
+                    }
+                    try (FileOutputStream out = new FileOutputStream(chunkFile)) {
+                        chunk.writeTo(out);
+                    }
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "❌ Error writing page chunk", e);
+                failure = e;
+            } finally {
+                chunk.close();
+                encodeMillis += SystemClock.elapsedRealtime() - start;
+                watermark.sample();
+                mainHandler.post(onReady);
+            }
+        });
+    }
+
+    @Override
+    public synchronized long writeTo(OutputStream output, StageTimer timer) throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        if (closed) {
+            throw new IOException("Page chunks already released");
+        }
+        timer.record("encode", encodeMillis);
+
+        long mergeStart = SystemClock.elapsedRealtime();
+        PdfMerger.Result result = PdfMerger.merge(chunks, output);
+        timer.record("merge", SystemClock.elapsedRealtime() - mergeStart);
+        return result.bytes;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (currentChunk != null) {
+            currentChunk.close();
+            currentChunk = null;
+        }
+        // Chunk writes still queued on the executor run before this cleanup when called from it
+        executor.execute(() -> {
+            for (File chunk : chunks) {
+                chunk.delete();
+            }
+            chunkDir.delete();
+        });
+    }
+}
@@ -0,0 +1,402 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.graphics.pdf.PdfDocument;
+import android.os.CancellationSignal;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.util.LruCache;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.EnumMap;
+
+/**
+ * Lays out a structured document straight onto PdfDocument pages, without a WebView.
+ *
+ * The model is the {@code template} option: {@code { blocks, fontSize?, footer? }}, where each
+ * block is one of
+ * <ul>
+ *   <li>{@code { type: "heading", text, level? }} (level 1 to 3)</li>
+ *   <li>{@code { type: "text", text }}</li>
+ *   <li>{@code { type: "keyValue", rows: [{ label, value }], labelWidth? }}</li>
+ *   <li>{@code { type: "table", columns: [string], rows: [[string]], widths? }}</li>
+ *   <li>{@code { type: "divider" }} and {@code { type: "spacer", height? }}</li>
+ * </ul>
+ * Blocks flow down the printable area and break onto a new page where they no longer fit:
+ * text between lines, key/value and table rows between rows (a table repeats its header),
+ * and a heading is never left alone at the bottom of a page. A single row taller than a
+ * page is clipped. The footer is drawn on every page with "{page}" replaced by the page number.
+ *
+ * Paints are created once per font size and text layouts are cached by style, width and
+ * text, since dosage sheets repeat the same labels and column headers. Pages are finished
+ * synchronously, so the sink must be a {@link DocumentPageSink}. Not thread-safe; the plugin
+ * only uses it on its writer thread.
+ */
+public class TemplateRenderer {
+
+    public static final float DEFAULT_FONT_SIZE = 10f;
+
+    private static final float LINE_SPACING = 1.15f;
+    private static final float BLOCK_GAP = 8f;
+    private static final float HEADING_GAP = 4f;
+    private static final float ROW_PADDING = 3f;
+    private static final float CELL_PADDING = 4f;
+    private static final float COLUMN_GAP = 8f;
+    private static final float DIVIDER_SPACE = 12f;
+    private static final float DEFAULT_SPACER = 12f;
+    private static final float FOOTER_GAP = 6f;
+    private static final int LAYOUT_CACHE_SIZE = 256;
+
+    private enum Style {
+        H1(1.8f, true),
+        H2(1.4f, true),
+        H3(1.2f, true),
+        BODY(1f, false),
+        LABEL(1f, true),
+        HEADER(0.9f, true),
+        CELL(0.9f, false),
+        FOOTER(0.8f, false);
+
+        final float sizeFactor;
+        final boolean bold;
+
+        Style(float sizeFactor, boolean bold) {
+            this.sizeFactor = sizeFactor;
+            this.bold = bold;
+        }
+    }
+
+    private final EnumMap<Style, TextPaint> paints = new EnumMap<>(Style.class);
+    private final LruCache<String, StaticLayout> layouts = new LruCache<>(LAYOUT_CACHE_SIZE);
+    private final Paint rulePaint = new Paint();
+    private final Paint headerFill = new Paint();
+    private float fontSize;
+
+    public TemplateRenderer() {
+        rulePaint.setColor(Color.rgb(0x99, 0x99, 0x99));
+        rulePaint.setStyle(Paint.Style.STROKE);
+        rulePaint.setStrokeWidth(0.5f);
+        headerFill.setColor(Color.rgb(0xEE, 0xEE, 0xEE));
+        headerFill.setStyle(Paint.Style.FILL);
+    }
+
+    /**
+     * Lay out {@code template} on pages of {@code geometry} and add them to {@code sink}
+     *
+     * @return number of pages
+     * @throws IllegalArgumentException if the template is malformed
+     * @throws android.os.OperationCanceledException if {@code cancellation} is cancelled
+     */
+    public int render(JSONObject template, PageGeometry geometry, PdfPageSink sink, CancellationSignal cancellation) {
+        JSONArray blocks = template.optJSONArray("blocks");
+        if (blocks == null) {
+            throw new IllegalArgumentException("template.blocks is required");
+        }
+        setFontSize((float) template.optDouble("fontSize", DEFAULT_FONT_SIZE));
+
+        String footer = template.optString("footer", "");
+        Flow flow = new Flow(geometry, sink, footer.isEmpty() ? null : footer);
+        for (int i = 0; i < blocks.length(); i++) {
+            cancellation.throwIfCanceled();
+            JSONObject block = blocks.optJSONObject(i);
+            if (block == null) {
+                throw new IllegalArgumentException("template.blocks[" + i + "] must be an object");
+            }
+            drawBlock(flow, block, blocks.optJSONObject(i + 1));
+        }
+        // An empty template still produces a page
+        flow.ensurePage();
+        flow.finishPage();
+        return flow.pageNumber;
+    }
+
+    private void setFontSize(float size) {
+        if (Float.isNaN(size) || size < 4f || size > 72f) {
+            size = DEFAULT_FONT_SIZE;
+        }
+        if (size == fontSize) {
+            return;
+        }
+        fontSize = size;
+        layouts.evictAll();
+        for (Style style : Style.values()) {
+            TextPaint paint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+            paint.setTypeface(style.bold ? Typeface.DEFAULT_BOLD : Typeface.DEFAULT);
+            paint.setTextSize(size * style.sizeFactor);
+            paint.setColor(style == Style.FOOTER ? Color.rgb(0x66, 0x66, 0x66) : Color.BLACK);
+            paints.put(style, paint);
+        }
+    }
+
+    private StaticLayout layout(String text, Style style, float width) {
+        int layoutWidth = Math.max(1, (int) width);
+        String key = style.ordinal() + ":" + layoutWidth + ":" + text;
+        StaticLayout layout = layouts.get(key);
+        if (layout == null) {
+            layout = StaticLayout.Builder.obtain(text, 0, text.length(), paints.get(style), layoutWidth)
+                .setLineSpacing(0, LINE_SPACING)
+                .setIncludePad(false)
+                .build();
+            layouts.put(key, layout);
+        }
+        return layout;
+    }
+
+    private void drawBlock(Flow flow, JSONObject block, JSONObject next) {
+        String type = block.optString("type", "");
+        switch (type) {
+            case "heading":
+                drawHeading(flow, block, next);
+                break;
+            case "text":
+                drawText(flow, layout(block.optString("text", ""), Style.BODY, flow.width), BLOCK_GAP);
+                break;
+            case "keyValue":
+                drawKeyValue(flow, block);
+                break;
+            case "table":
+                drawTable(flow, block);
+                break;
+            case "divider":
+                flow.fit(DIVIDER_SPACE);
+                float y = flow.y + DIVIDER_SPACE / 2;
+                flow.canvas.drawLine(0, y, flow.width, y, rulePaint);
+                flow.y += DIVIDER_SPACE;
+                break;
+            case "spacer":
+                flow.ensurePage();
+                // Space is not carried over to the next page
+                flow.y = Math.min(flow.height, flow.y + (float) block.optDouble("height", DEFAULT_SPACER));
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported template block type: " + type);
+        }
+    }
+
+    private void drawHeading(Flow flow, JSONObject block, JSONObject next) {
+        int level = Math.max(1, Math.min(3, block.optInt("level", 1)));
+        Style style = level == 1 ? Style.H1 : level == 2 ? Style.H2 : Style.H3;
+        StaticLayout layout = layout(block.optString("text", ""), style, flow.width);
+
+        // Keep the heading with the first lines of whatever follows it
+        float keepWithNext = next == null ? 0 : 2 * paints.get(Style.BODY).getFontSpacing() * LINE_SPACING;
+        flow.fit(Math.min(flow.height, layout.getHeight() + HEADING_GAP + keepWithNext));
+        drawText(flow, layout, HEADING_GAP);
+    }
+
+    /**
+     * Draw a layout from the current position, continuing on new pages between lines
+     */
+    private void drawText(Flow flow, StaticLayout layout, float gapAfter) {
+        int lineCount = layout.getLineCount();
+        int line = 0;
+        while (line < lineCount) {
+            flow.ensurePage();
+            float top = layout.getLineTop(line);
+            int end = line;
+            while (end < lineCount && layout.getLineBottom(end) - top <= flow.height - flow.y) {
+                end++;
+            }
+            if (end == line) {
+                if (flow.y > 0) {
+                    flow.newPage();
+                    continue;
+                }
+                // A line taller than the page, draw it clipped
+                end = line + 1;
+            }
+            float bottom = layout.getLineBottom(end - 1);
+
+            Canvas canvas = flow.canvas;
+            canvas.save();
+            canvas.translate(0, flow.y - top);
+            // The clip also limits drawing to these lines
+            canvas.clipRect(0, top, layout.getWidth(), bottom);
+            layout.draw(canvas);
+            canvas.restore();
+
+            flow.y += bottom - top;
+            line = end;
+        }
+        flow.y = Math.min(flow.height, flow.y + gapAfter);
+    }
+
+    private void drawKeyValue(Flow flow, JSONObject block) {
+        JSONArray rows = block.optJSONArray("rows");
+        if (rows == null) {
+            throw new IllegalArgumentException("keyValue blocks need rows");
+        }
+        float labelRatio = (float) Math.max(0.1, Math.min(0.9, block.optDouble("labelWidth", 0.35)));
+        float labelWidth = flow.width * labelRatio - COLUMN_GAP / 2;
+        float valueX = flow.width * labelRatio + COLUMN_GAP / 2;
+        float valueWidth = flow.width - valueX;
+
+        for (int i = 0; i < rows.length(); i++) {
+            JSONObject row = rows.optJSONObject(i);
+            if (row == null) {
+                continue;
+            }
+            StaticLayout label = layout(row.optString("label", ""), Style.LABEL, labelWidth);
+            StaticLayout value = layout(row.optString("value", ""), Style.BODY, valueWidth);
+            float rowHeight = Math.max(label.getHeight(), value.getHeight()) + 2 * ROW_PADDING;
+
+            flow.fit(rowHeight);
+            drawAt(flow.canvas, label, 0, flow.y + ROW_PADDING);
+            drawAt(flow.canvas, value, valueX, flow.y + ROW_PADDING);
+            flow.y += rowHeight;
+            flow.canvas.drawLine(0, flow.y, flow.width, flow.y, rulePaint);
+        }
+        flow.y = Math.min(flow.height, flow.y + BLOCK_GAP);
+    }
+
+    private void drawTable(Flow flow, JSONObject block) {
+        JSONArray columns = block.optJSONArray("columns");
+        JSONArray rows = block.optJSONArray("rows");
+        if (columns == null || columns.length() == 0 || rows == null) {
+            throw new IllegalArgumentException("table blocks need columns and rows");
+        }
+        float[] x = columnEdges(columns.length(), block.optJSONArray("widths"), flow.width);
+
+        StaticLayout[] header = new StaticLayout[columns.length()];
+        for (int c = 0; c < header.length; c++) {
+            header[c] = layout(columns.optString(c, ""), Style.HEADER, x[c + 1] - x[c] - 2 * CELL_PADDING);
+        }
+        float headerHeight = rowHeight(header);
+
+        boolean headerDrawn = false;
+        StaticLayout[] cells = new StaticLayout[columns.length()];
+        for (int r = 0; r < rows.length(); r++) {
+            JSONArray row = rows.optJSONArray(r);
+            if (row == null) {
+                continue;
+            }
+            for (int c = 0; c < cells.length; c++) {
+                cells[c] = layout(row.optString(c, ""), Style.CELL, x[c + 1] - x[c] - 2 * CELL_PADDING);
+            }
+            float height = rowHeight(cells);
+
+            boolean newPage = headerDrawn ? flow.fit(height) : flow.fit(headerHeight + height);
+            if (newPage || !headerDrawn) {
+                flow.canvas.drawRect(0, flow.y, flow.width, flow.y + headerHeight, headerFill);
+                drawRow(flow, header, x, headerHeight);
+                headerDrawn = true;
+            }
+            drawRow(flow, cells, x, height);
+        }
+        flow.y = Math.min(flow.height, flow.y + BLOCK_GAP);
+    }
+
+    /**
+     * Left edge of every column plus the right edge of the last one; {@code widths} are
+     * relative weights, equal columns if missing
+     */
+    private static float[] columnEdges(int count, JSONArray widths, float totalWidth) {
+        float[] weights = new float[count];
+        float sum = 0;
+        for (int c = 0; c < count; c++) {
+            double weight = widths != null ? widths.optDouble(c, 1) : 1;
+            weights[c] = Double.isNaN(weight) || weight <= 0 ? 1 : (float) weight;
+            sum += weights[c];
+        }
+        float[] edges = new float[count + 1];
+        for (int c = 0; c < count; c++) {
+            edges[c + 1] = edges[c] + totalWidth * weights[c] / sum;
+        }
+        return edges;
+    }
+
+    private static float rowHeight(StaticLayout[] cells) {
+        float height = 0;
+        for (StaticLayout cell : cells) {
+            height = Math.max(height, cell.getHeight());
+        }
+        return height + 2 * CELL_PADDING;
+    }
+
+    private void drawRow(Flow flow, StaticLayout[] cells, float[] x, float height) {
+        for (int c = 0; c < cells.length; c++) {
+            flow.canvas.drawRect(x[c], flow.y, x[c + 1], flow.y + height, rulePaint);
+            drawAt(flow.canvas, cells[c], x[c] + CELL_PADDING, flow.y + CELL_PADDING);
+        }
+        flow.y += height;
+    }
+
+    private static void drawAt(Canvas canvas, StaticLayout layout, float x, float y) {
+        canvas.save();
+        canvas.translate(x, y);
+        layout.draw(canvas);
+        canvas.restore();
+    }
+
+    /**
+     * Current page and position while laying out; coordinates are relative to the printable area
+     */
+    private final class Flow {
+        final PageGeometry geometry;
+        final PdfPageSink sink;
+        final String footer;
+        final float width;
+        // Printable height above the footer
+        final float height;
+
+        PdfDocument.Page page;
+        Canvas canvas;
+        float y;
+        int pageNumber;
+
+        Flow(PageGeometry geometry, PdfPageSink sink, String footer) {
+            this.geometry = geometry;
+            this.sink = sink;
+            this.footer = footer;
+            this.width = geometry.getContentWidth();
+            float footerHeight = footer == null ? 0 : layout(footer, Style.FOOTER, width).getHeight() + FOOTER_GAP;
+            this.height = geometry.getContentHeight() - footerHeight;
+        }
+
+        void ensurePage() {
+            if (page == null) {
+                newPage();
+            }
+        }
+
+        void newPage() {
+            finishPage();
+            pageNumber++;
+            page = sink.startPage(geometry.createPageInfo(pageNumber));
+            canvas = page.getCanvas();
+            y = 0;
+        }
+
+        /**
+         * Make room for {@code needed} points, on a new page unless this one is still empty
+         *
+         * @return true if a new page was started
+         */
+        boolean fit(float needed) {
+            if (page != null && (y == 0 || y + needed <= height)) {
+                return false;
+            }
+            newPage();
+            return true;
+        }
+
+        void finishPage() {
+            if (page == null) {
+                return;
+            }
+            if (footer != null) {
+                String text = footer.replace("{page}", String.valueOf(pageNumber));
+                StaticLayout layout = layout(text, Style.FOOTER, width);
+                drawAt(canvas, layout, 0, geometry.getContentHeight() - layout.getHeight());
+            }
+            sink.finishPage(page, () -> { });
+            page = null;
+            canvas = null;
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.pdf.PdfDocument;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
+import android.util.Log;
+import android.webkit.WebView;
+
+import com.getcapacitor.JSObject;
+
+/**
+ * Paginated capture of a region of the WebView content, by default the full scrollable page.
+ *
+ * The region is scaled to the printable width and its height is sliced into page-height tiles. Each tile is drawn into its
+ * own page of a {@link PdfPageSink}, scrolling the WebView band by band (a band is at
+ * most one viewport high) and waiting for the scrolled frame to be committed before
+ * drawing. Every page is finished, and accepted by the sink, before the next one is
+ * started.
+ *
+ * In {@link PageGeometry.RenderMode#RASTER} mode each band is drawn as fixed-size tiles at
+ * the geometry's raster density. Tiles come from a {@link BitmapPool} and go back to it as
+ * soon as they are placed on the page (the page recording keeps its own copy), so a capture
+ * needs one tile bitmap at a time whatever the page size.
+ *
+ * With a {@link PageFingerprinter} (raster mode), every tile placed on a page is also added
+ * to the fingerprint of that page.
+ *
+ * All methods must be called on the main thread.
+ */
+public class WebViewPageCapture {
+    private static final String TAG = "WebViewPageCapture";
+
+    // Upper bound for waiting on a committed frame after scrolling
+    private static final long FRAME_TIMEOUT_MS = 500;
+
+    public interface Callback {
+        void onPageCaptured(int pageNumber, int pageCount);
+
+        void onComplete(int pageCount);
+
+        void onError(Exception e);
+    }
+
+    private final WebView webView;
+    private final PageGeometry geometry;
+    private final RectF requestedRegion;
+    private final BitmapPool tilePool;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private PdfPageSink sink;
+    private Callback callback;
+    private PageFingerprinter fingerprinter;
+    private boolean stopped;
+
+    private int viewWidth;
+    private int viewHeight;
+    private int contentHeight;
+    private float regionLeft;
+    private float regionTop;
+    private float regionRight;
+    private float regionBottom;
+    private float scale;
+    private float pageHeightPx;
+    private int pageCount;
+    private int originalScrollX;
+    private int originalScrollY;
+
+    private int pageIndex;
+    private PdfDocument.Page currentPage;
+    private float bandTop;
+    private long visualStateRequestId;
+
+    // Raster mode only
+    private float bitmapScale;
+    private int tilesDrawn;
+    private long allocationsAtStart;
+    private long reusesAtStart;
+    private final Paint bitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    /**
+     * @param region area to capture in content pixels (see {@link ElementRegion}), null for the whole page
+     * @param tilePool tile bitmaps for raster mode
+     */
+    public WebViewPageCapture(WebView webView, PageGeometry geometry, RectF region, BitmapPool tilePool) {
+        this.webView = webView;
+        this.geometry = geometry;
+        this.requestedRegion = region;
+        this.tilePool = tilePool;
+    }
+
+    /**
+     * Raster tile counters of this capture: { tileSize, poolSize, tilesDrawn, bitmapsAllocated, bitmapsReused }
+     */
+    public JSObject getTileStats() {
+        JSObject stats = new JSObject();
+        stats.put("tileSize", tilePool.tileSize);
+        stats.put("poolSize", tilePool.maxSize);
+        stats.put("tilesDrawn", tilesDrawn);
+        stats.put("bitmapsAllocated", tilePool.getAllocations() - allocationsAtStart);
+        stats.put("bitmapsReused", tilePool.getReuses() - reusesAtStart);
+        return stats;
+    }
+
+    /**
+     * Also hash the tiles of every page into {@code fingerprinter}; its fingerprint is final
+     * when the page is handed to the sink. Raster mode only, must be set before {@link #start}
+     */
+    public void setFingerprinter(PageFingerprinter fingerprinter) {
+        this.fingerprinter = fingerprinter;
+    }
+
+    /**
+     * Measure the content and start capturing pages into {@code sink}
+     */
+    public void start(PdfPageSink sink, Callback callback) {
+        this.sink = sink;
+        this.callback = callback;
+
+        viewWidth = webView.getWidth();
+        viewHeight = webView.getHeight();
+
+        if (viewWidth <= 0 || viewHeight <= 0) {
+            Log.w(TAG, "WebView has no dimensions, using defaults");
+            viewWidth = 800;
+            viewHeight = 1200;
+        }
+
+        contentHeight = measureContentHeight();
+        originalScrollX = webView.getScrollX();
+        originalScrollY = webView.getScrollY();
+        resolveRegion();
+
+        // Fit the region width to the printable area, the height is paginated
+        scale = (float) geometry.getContentWidth() / (regionRight - regionLeft);
+        pageHeightPx = geometry.getContentHeight() / scale;
+        pageCount = Math.max(1, (int) Math.ceil((regionBottom - regionTop) / pageHeightPx));
+
+        // View pixels -> bitmap pixels at the requested density
+        bitmapScale = geometry.getContentWidth() * geometry.getRasterDensity() / (regionRight - regionLeft);
+        allocationsAtStart = tilePool.getAllocations();
+        reusesAtStart = tilePool.getReuses();
+
+        Log.d(TAG, "📐 Region " + (int) (regionRight - regionLeft) + "x" + (int) (regionBottom - regionTop)
+            + "px of " + viewWidth + "x" + contentHeight + "px -> " + pageCount + " page(s)");
+
+        pageIndex = 0;
+        try {
+            startPage();
+        } catch (Exception e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Content height in view pixels, never smaller than the viewport
+     */
+    private int measureContentHeight() {
+        float density = webView.getResources().getDisplayMetrics().density;
+        int height = (int) Math.ceil(webView.getContentHeight() * density);
+        return Math.max(height, viewHeight);
+    }
+
+    /**
+     * Clip the requested region to the content; only the horizontally visible part can be drawn
+     */
+    private void resolveRegion() {
+        regionLeft = originalScrollX;
+        regionRight = originalScrollX + viewWidth;
+        regionTop = 0;
+        regionBottom = contentHeight;
+
+        RectF region = requestedRegion;
+        if (region != null) {
+            float left = Math.max(region.left, regionLeft);
+            float right = Math.min(region.right, regionRight);
+            float top = Math.max(region.top, 0);
+            float bottom = Math.min(region.bottom, contentHeight);
+            if (right - left >= 1 && bottom - top >= 1) {
+                regionLeft = left;
+                regionRight = right;
+                regionTop = top;
+                regionBottom = bottom;
+            } else {
+                Log.w(TAG, "Element region " + region + " is empty or off screen, capturing the whole page");
+            }
+        }
+    }
+
+    private float pageTop() {
+        return regionTop + pageIndex * pageHeightPx;
+    }
+
+    private void startPage() {
+        currentPage = sink.startPage(geometry.createPageInfo(pageIndex + 1));
+        if (fingerprinter != null) {
+            fingerprinter.startPage();
+        }
+        bandTop = pageTop();
+        captureBand();
+    }
+
+    private void captureBand() {
+        if (stopped) {
+            return;
+        }
+        int targetScroll = (int) bandTop;
+        if (webView.getScrollY() == targetScroll) {
+            drawBand();
+            return;
+        }
+
+        webView.scrollTo(originalScrollX, targetScroll);
+        awaitFrame(this::drawBand);
+    }
+
+    /**
+     * Run {@code next} once the WebView has committed a frame for the current scroll position
+     */
+    private void awaitFrame(Runnable next) {
+        final long requestId = ++visualStateRequestId;
+        final boolean[] done = { false };
+        Runnable once = () -> {
+            if (done[0] || requestId != visualStateRequestId) {
+                return;
+            }
+            done[0] = true;
+            next.run();
+        };
+
+        webView.postVisualStateCallback(requestId, new WebView.VisualStateCallback() {
+            @Override
+            public void onComplete(long id) {
+                once.run();
+            }
+        });
+        // A detached or invisible WebView never commits a frame, don't wait forever
+        handler.postDelayed(once, FRAME_TIMEOUT_MS);
+    }
+
+    private void drawBand() {
+        if (stopped) {
+            return;
+        }
+        try {
+            float pageTop = pageTop();
+            float pageBottom = Math.min(pageTop + pageHeightPx, regionBottom);
+            float bandBottom = Math.min(bandTop + viewHeight, pageBottom);
+
+            // The page canvas origin is the top-left corner of the printable area
+            Canvas canvas = currentPage.getCanvas();
+            if (geometry.renderMode == PageGeometry.RenderMode.RASTER) {
+                drawBandRaster(canvas, pageTop, bandBottom);
+            } else {
+                // WebView.draw renders in content coordinates around the current scroll position
+                canvas.save();
+                canvas.scale(scale, scale);
+                canvas.translate(-regionLeft, -pageTop);
+                canvas.clipRect(regionLeft, bandTop, regionRight, bandBottom);
+                webView.draw(canvas);
+                canvas.restore();
+            }
+
+            if (bandBottom < pageBottom) {
+                bandTop = bandBottom;
+                captureBand();
+                return;
+            }
+
+            if (fingerprinter != null) {
+                fingerprinter.finishPage();
+            }
+            PdfDocument.Page page = currentPage;
+            currentPage = null;
+            sink.finishPage(page, () -> handler.post(this::nextPage));
+        } catch (Exception e) {
+            fail(e);
+        }
+    }
+
+    private void drawBandRaster(Canvas pageCanvas, float pageTop, float bandBottom) {
+        // Tile edge in view pixels; the last tile of a row or column is partially used
+        float tileSpan = tilePool.tileSize / bitmapScale;
+        for (float y = bandTop; y < bandBottom; y += tileSpan) {
+            float tileBottom = Math.min(y + tileSpan, bandBottom);
+            for (float x = regionLeft; x < regionRight; x += tileSpan) {
+                float tileRight = Math.min(x + tileSpan, regionRight);
+                drawTile(pageCanvas, pageTop, x, y, tileRight, tileBottom);
+            }
+        }
+    }
+
+    private void drawTile(Canvas pageCanvas, float pageTop, float left, float top, float right, float bottom) {
+        BitmapPool.Tile tile = tilePool.acquire();
+        try {
+            tile.bitmap.eraseColor(Color.WHITE);
+            Canvas tileCanvas = tile.canvas;
+            tileCanvas.save();
+            tileCanvas.scale(bitmapScale, bitmapScale);
+            tileCanvas.translate(-left, -top);
+            tileCanvas.clipRect(left, top, right, bottom);
+            webView.draw(tileCanvas);
+            tileCanvas.restore();
+
+            int usedWidth = Math.min(tilePool.tileSize, (int) Math.ceil((right - left) * bitmapScale));
+            int usedHeight = Math.min(tilePool.tileSize, (int) Math.ceil((bottom - top) * bitmapScale));
+            Rect src = new Rect(0, 0, usedWidth, usedHeight);
+            RectF dst = new RectF((left - regionLeft) * scale, (top - pageTop) * scale,
+                (left - regionLeft + usedWidth / bitmapScale) * scale, (top - pageTop + usedHeight / bitmapScale) * scale);
+            pageCanvas.drawBitmap(tile.bitmap, src, dst, bitmapPaint);
+            if (fingerprinter != null) {
+                fingerprinter.addTile(tile.bitmap, usedWidth, usedHeight, dst);
+            }
+            tilesDrawn++;
+        } finally {
+            tilePool.release(tile);
+        }
+    }
+
+    private void nextPage() {
+        if (stopped) {
+            return;
+        }
+        try {
+            callback.onPageCaptured(pageIndex + 1, pageCount);
+
+            pageIndex++;
+            if (pageIndex < pageCount) {
+                startPage();
+            } else {
+                finish();
+            }
+        } catch (Exception e) {
+            fail(e);
+        }
+    }
+
+    private void finish() {
+        stopped = true;
+        webView.scrollTo(originalScrollX, originalScrollY);
+        callback.onComplete(pageCount);
+    }
+
+    /**
+     * Stop a running capture; it reports {@link Callback#onError} like any other failure
+     */
+    public void cancel() {
+        if (!stopped) {
+            fail(new OperationCanceledException("Capture cancelled"));
+        }
+    }
+
+    private void fail(Exception e) {
+        stopped = true;
+        // An unfinished page is released together with the sink by the caller
+        currentPage = null;
+        webView.scrollTo(originalScrollX, originalScrollY);
+        callback.onError(e);
+    }
+}
@@ -0,0 +1,157 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal JVM benchmark harness for the pure-Java parts of the pipeline.
+ *
+ * Each iteration runs an untimed setup, then the timed operation on the calling thread,
+ * recording its latency and the bytes it allocated (HotSpot thread allocation counters).
+ * Results are printed and written as JSON to {@code pdfshare.benchmark.dir}; when
+ * {@code pdfshare.benchmark.baseline} points to a directory of earlier results, a median
+ * latency or allocation more than {@code pdfshare.benchmark.tolerance} (default 0.25) above
+ * the baseline fails the benchmark.
+ *
+ * Benchmarks only run with {@code -Pbenchmark}, see android/build.gradle.
+ */
+public final class MicroBenchmark {
+
+    public static final boolean ENABLED = Boolean.getBoolean("pdfshare.benchmark");
+
+    public interface Operation {
+        void run() throws Exception;
+    }
+
+    /**
+     * Untimed setup of one iteration, returning the operation to time
+     */
+    public interface Setup {
+        Operation prepare() throws Exception;
+    }
+
+    public static final class Result {
+        public final String name;
+        public final int iterations;
+        public final int opsPerIteration;
+        public final long p50Nanos;
+        public final long p90Nanos;
+        public final long p99Nanos;
+        public final long meanNanos;
+        public final double opsPerSecond;
+        // -1 if the JVM cannot count allocations
+        public final long allocatedBytesPerOp;
+
+        Result(String name, int iterations, int opsPerIteration, long[] sortedNanos, long allocatedBytes) {
+            this.name = name;
+            this.iterations = iterations;
+            this.opsPerIteration = opsPerIteration;
+            this.p50Nanos = RollingSamples.percentile(sortedNanos, 50) / opsPerIteration;
+            this.p90Nanos = RollingSamples.percentile(sortedNanos, 90) / opsPerIteration;
+            this.p99Nanos = RollingSamples.percentile(sortedNanos, 99) / opsPerIteration;
+            this.meanNanos = RollingSamples.mean(sortedNanos) / opsPerIteration;
+            this.opsPerSecond = meanNanos == 0 ? 0 : 1e9 / meanNanos;
+            this.allocatedBytesPerOp = allocatedBytes < 0 ? -1 : allocatedBytes / ((long) iterations * opsPerIteration);
+        }
+
+        String toJson() {
+            return String.format(Locale.ROOT,
+                "{\"name\":\"%s\",\"iterations\":%d,\"opsPerIteration\":%d,\"p50Nanos\":%d,\"p90Nanos\":%d,"
+                    + "\"p99Nanos\":%d,\"meanNanos\":%d,\"opsPerSecond\":%.1f,\"allocatedBytesPerOp\":%d}\n",
+                name, iterations, opsPerIteration, p50Nanos, p90Nanos, p99Nanos, meanNanos, opsPerSecond,
+                allocatedBytesPerOp);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-32s p50 %10.3f ms  p90 %10.3f ms  p99 %10.3f ms  %12.1f ops/s  %10d B/op",
+                name, p50Nanos / 1e6, p90Nanos / 1e6, p99Nanos / 1e6, opsPerSecond, allocatedBytesPerOp);
+        }
+    }
+
+    private MicroBenchmark() {
+    }
+
+    /**
+     * Run {@code warmup} untimed and {@code iterations} timed iterations of an operation that
+     * performs {@code opsPerIteration} operations, then report and check against the baseline
+     */
+    public static Result run(String name, int warmup, int iterations, int opsPerIteration, Setup setup) throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            setup.prepare().run();
+        }
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocations = threads instanceof com.sun.management.ThreadMXBean
+            ? (com.sun.management.ThreadMXBean) threads : null;
+        long threadId = Thread.currentThread().getId();
+
+        RollingSamples nanos = new RollingSamples(iterations);
+        long allocated = allocations == null ? -1 : 0;
+        for (int i = 0; i < iterations; i++) {
+            Operation operation = setup.prepare();
+            long allocatedBefore = allocations == null ? 0 : allocations.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            operation.run();
+            nanos.add(System.nanoTime() - start);
+            if (allocations != null) {
+                allocated += allocations.getThreadAllocatedBytes(threadId) - allocatedBefore;
+            }
+        }
+
+        Result result = new Result(name, iterations, opsPerIteration, nanos.sorted(), allocated);
+        System.out.println("[benchmark] " + result);
+        write(result);
+        checkBaseline(result);
+        return result;
+    }
+
+    private static void write(Result result) throws IOException {
+        File dir = new File(System.getProperty("pdfshare.benchmark.dir", "build/benchmarks"));
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        try (FileWriter writer = new FileWriter(new File(dir, result.name + ".json"))) {
+            writer.write(result.toJson());
+        }
+    }
+
+    private static void checkBaseline(Result result) throws IOException {
+        String baselineDir = System.getProperty("pdfshare.benchmark.baseline");
+        if (baselineDir == null || baselineDir.isEmpty()) {
+            return;
+        }
+        File baselineFile = new File(baselineDir, result.name + ".json");
+        if (!baselineFile.isFile()) {
+            System.out.println("[benchmark] no baseline for " + result.name);
+            return;
+        }
+        String json = new String(Files.readAllBytes(baselineFile.toPath()), StandardCharsets.UTF_8);
+        double tolerance = Double.parseDouble(System.getProperty("pdfshare.benchmark.tolerance", "0.25"));
+
+        long baselineP50 = field(json, "p50Nanos");
+        if (baselineP50 > 0 && result.p50Nanos > baselineP50 * (1 + tolerance)) {
+            fail(result.name + ": median latency " + result.p50Nanos + " ns regressed over baseline " + baselineP50 + " ns");
+        }
+        long baselineAllocated = field(json, "allocatedBytesPerOp");
+        if (baselineAllocated > 0 && result.allocatedBytesPerOp > baselineAllocated * (1 + tolerance)) {
+            fail(result.name + ": allocation " + result.allocatedBytesPerOp + " B/op regressed over baseline "
+                + baselineAllocated + " B/op");
+        }
+    }
+
+    private static long field(String json, String name) {
+        Matcher matcher = Pattern.compile("\"" + name + "\":(-?\\d+)").matcher(json);
+        return matcher.find() ? Long.parseLong(matcher.group(1)) : -1;
+    }
+}
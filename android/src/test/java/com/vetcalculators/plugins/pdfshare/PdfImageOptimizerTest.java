@@ -0,0 +1,185 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import static org.junit.Assert.*;
+
+import com.vetcalculators.plugins.pdfshare.PdfObjectReader.Name;
+import com.vetcalculators.plugins.pdfshare.PdfObjectReader.PdfObject;
+import com.vetcalculators.plugins.pdfshare.PdfObjectReader.Ref;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PdfImageOptimizerTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final byte[] FAKE_JPEG = "fake jpeg".getBytes(StandardCharsets.ISO_8859_1);
+
+    /**
+     * Records the requested sizes and returns a tiny stand-in for the JPEG
+     */
+    private static class RecordingEncoder implements PdfImageOptimizer.ImageEncoder {
+        final List<int[]> calls = new ArrayList<>();
+
+        @Override
+        public byte[] encodeJpeg(PdfImageOptimizer.Image image, int targetWidth, int targetHeight, int quality) {
+            calls.add(new int[] { image.width, image.height, targetWidth, targetHeight, quality });
+            return FAKE_JPEG;
+        }
+    }
+
+    /**
+     * One page drawing image object 3 through {@code content}; object 6 is an optional form
+     */
+    private static File writeDocument(File file, Map<String, Object> image, byte[] imageData, String content,
+                                      String formContent, List<Object> formMatrix) throws IOException {
+        try (PdfObjectWriter writer = new PdfObjectWriter(new FileOutputStream(file))) {
+            writer.writeHeader();
+            writer.writeStreamObject(3, image, imageData.length, PdfObjectWriter.IDENTITY, out -> out.write(imageData));
+
+            Map<String, Object> xObjects = new LinkedHashMap<>();
+            xObjects.put("Im1", new Ref(3, 0));
+            if (formContent != null) {
+                byte[] data = formContent.getBytes(StandardCharsets.ISO_8859_1);
+                Map<String, Object> form = new LinkedHashMap<>();
+                form.put("Type", new Name("XObject"));
+                form.put("Subtype", new Name("Form"));
+                form.put("Matrix", formMatrix);
+                Map<String, Object> formXObjects = new LinkedHashMap<>();
+                formXObjects.put("Im1", new Ref(3, 0));
+                Map<String, Object> formResources = new LinkedHashMap<>();
+                formResources.put("XObject", formXObjects);
+                form.put("Resources", formResources);
+                writer.writeStreamObject(6, form, data.length, PdfObjectWriter.IDENTITY, out -> out.write(data));
+                xObjects.put("Fm1", new Ref(6, 0));
+            }
+
+            byte[] contentData = deflate(content.getBytes(StandardCharsets.ISO_8859_1));
+            Map<String, Object> contentDict = new LinkedHashMap<>();
+            contentDict.put("Filter", new Name("FlateDecode"));
+            writer.writeStreamObject(4, contentDict, contentData.length, PdfObjectWriter.IDENTITY, out -> out.write(contentData));
+
+            Map<String, Object> resources = new LinkedHashMap<>();
+            resources.put("XObject", xObjects);
+            Map<String, Object> page = new LinkedHashMap<>();
+            page.put("Type", new Name("Page"));
+            page.put("Parent", new Ref(1, 0));
+            page.put("Resources", resources);
+            page.put("Contents", new Ref(4, 0));
+            writer.writeObject(5, page, PdfObjectWriter.IDENTITY);
+
+            Map<String, Object> pages = new LinkedHashMap<>();
+            pages.put("Type", new Name("Pages"));
+            pages.put("Kids", new ArrayList<>(Arrays.asList(new Ref(5, 0))));
+            pages.put("Count", 1L);
+            pages.put("MediaBox", new ArrayList<>(Arrays.asList(0L, 0L, 595L, 842L)));
+            writer.writeObject(1, pages, PdfObjectWriter.IDENTITY);
+
+            Map<String, Object> catalog = new LinkedHashMap<>();
+            catalog.put("Type", new Name("Catalog"));
+            catalog.put("Pages", new Ref(1, 0));
+            writer.writeObject(2, catalog, PdfObjectWriter.IDENTITY);
+
+            writer.finish(formContent != null ? 7 : 6, new Ref(2, 0), null);
+        }
+        return file;
+    }
+
+    private static Map<String, Object> imageDict(int width, int height, String filter) {
+        Map<String, Object> image = new LinkedHashMap<>();
+        image.put("Type", new Name("XObject"));
+        image.put("Subtype", new Name("Image"));
+        image.put("Width", (long) width);
+        image.put("Height", (long) height);
+        image.put("ColorSpace", new Name("DeviceRGB"));
+        image.put("BitsPerComponent", 8L);
+        image.put("Filter", new Name(filter));
+        return image;
+    }
+
+    private static byte[] deflate(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(out)) {
+            deflater.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static Map<String, Object> readImage(File file) throws IOException {
+        try (PdfObjectReader reader = new PdfObjectReader(file)) {
+            assertEquals(1, PdfMerger.countPages(file));
+            return reader.readObject(3).dict();
+        }
+    }
+
+    @Test
+    public void downsamplesToTargetDpiAtDisplayedSize() throws Exception {
+        byte[] pixels = deflate(new byte[1000 * 500 * 3]);
+        File input = writeDocument(tmp.newFile("in.pdf"), imageDict(1000, 500, "FlateDecode"), pixels,
+            "q 100 0 0 50 20 700 cm /Im1 Do Q", null, null);
+        File output = tmp.newFile("out.pdf");
+        RecordingEncoder encoder = new RecordingEncoder();
+
+        PdfImageOptimizer.Result result = PdfImageOptimizer.optimize(input, output, 144, 80, encoder);
+
+        // 100x50 points at 144 dpi
+        assertArrayEquals(new int[] { 1000, 500, 200, 100, 80 }, encoder.calls.get(0));
+        assertEquals(1, result.images);
+        assertEquals(1, result.imagesOptimized);
+        assertEquals(input.length(), result.bytesBefore);
+        assertEquals(output.length(), result.bytesAfter);
+
+        Map<String, Object> image = readImage(output);
+        assertEquals(200L, image.get("Width"));
+        assertEquals(100L, image.get("Height"));
+        assertEquals(new Name("DCTDecode"), image.get("Filter"));
+        assertEquals((long) FAKE_JPEG.length, image.get("Length"));
+    }
+
+    @Test
+    public void followsFormMatrices() throws Exception {
+        byte[] pixels = deflate(new byte[1000 * 500 * 3]);
+        File input = writeDocument(tmp.newFile("in.pdf"), imageDict(1000, 500, "FlateDecode"), pixels,
+            "q 2 0 0 2 0 0 cm /Fm1 Do Q", "q 100 0 0 50 0 0 cm /Im1 Do Q",
+            new ArrayList<>(Arrays.asList(new PdfObjectReader.Raw("0.25"), 0L, 0L, new PdfObjectReader.Raw("0.25"), 0L, 0L)));
+        RecordingEncoder encoder = new RecordingEncoder();
+
+        PdfImageOptimizer.optimize(input, tmp.newFile("out.pdf"), 144, 80, encoder);
+
+        // 100x50 scaled by 0.25 then 2: 50x25 points
+        assertArrayEquals(new int[] { 1000, 500, 100, 50, 80 }, encoder.calls.get(0));
+    }
+
+    @Test
+    public void leavesJpegsAloneWhenNoDownsamplingIsNeeded() throws Exception {
+        byte[] jpeg = new byte[4096];
+        File input = writeDocument(tmp.newFile("in.pdf"), imageDict(100, 50, "DCTDecode"), jpeg,
+            "q 100 0 0 50 0 0 cm /Im1 Do Q", null, null);
+        File output = tmp.newFile("out.pdf");
+        RecordingEncoder encoder = new RecordingEncoder();
+
+        PdfImageOptimizer.Result result = PdfImageOptimizer.optimize(input, output, 72, 80, encoder);
+
+        assertTrue(encoder.calls.isEmpty());
+        assertEquals(0, result.imagesOptimized);
+        try (PdfObjectReader reader = new PdfObjectReader(output)) {
+            PdfObject image = reader.readObject(3);
+            assertEquals(100L, image.dict().get("Width"));
+            assertEquals(jpeg.length, reader.readStream(image).length);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import static org.junit.Assert.*;
+
+import com.vetcalculators.plugins.pdfshare.PdfObjectReader.Name;
+import com.vetcalculators.plugins.pdfshare.PdfObjectReader.PdfObject;
+import com.vetcalculators.plugins.pdfshare.PdfObjectReader.Ref;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PdfMergerTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /**
+     * Write a document with {@code pageCount} pages, each with a content stream naming the page
+     */
+    static File writeDocument(File file, String label, int pageCount) throws IOException {
+        try (PdfObjectWriter writer = new PdfObjectWriter(new FileOutputStream(file))) {
+            writer.writeHeader();
+            List<Object> kids = new ArrayList<>();
+            int num = 3;
+            for (int i = 0; i < pageCount; i++) {
+                byte[] content = ("BT (" + label + " page " + (i + 1) + ") Tj ET").getBytes(StandardCharsets.ISO_8859_1);
+                Map<String, Object> stream = new LinkedHashMap<>();
+                writer.writeStreamObject(num, stream, content.length, PdfObjectWriter.IDENTITY, out -> out.write(content));
+
+                Map<String, Object> page = new LinkedHashMap<>();
+                page.put("Type", new Name("Page"));
+                page.put("Parent", new Ref(1, 0));
+                page.put("Contents", new Ref(num, 0));
+                writer.writeObject(num + 1, page, PdfObjectWriter.IDENTITY);
+                kids.add(new Ref(num + 1, 0));
+                num += 2;
+            }
+
+            // MediaBox is only on the tree root and must be inherited by merged pages
+            Map<String, Object> pages = new LinkedHashMap<>();
+            pages.put("Type", new Name("Pages"));
+            pages.put("Kids", kids);
+            pages.put("Count", (long) pageCount);
+            pages.put("MediaBox", new ArrayList<>(Arrays.asList(0L, 0L, 595L, 842L)));
+            writer.writeObject(1, pages, PdfObjectWriter.IDENTITY);
+
+            Map<String, Object> catalog = new LinkedHashMap<>();
+            catalog.put("Type", new Name("Catalog"));
+            catalog.put("Pages", new Ref(1, 0));
+            writer.writeObject(2, catalog, PdfObjectWriter.IDENTITY);
+
+            writer.finish(num, new Ref(2, 0), null);
+        }
+        return file;
+    }
+
+    /**
+     * Write a one-page PDF 1.5 document whose catalog, page tree and page live in an object
+     * stream, indexed by a cross-reference stream (optionally PNG "Up" predicted). A hybrid
+     * document also has a classic table listing the compressed objects as free, with the
+     * stream referenced through /XRefStm, as Office writes them.
+     */
+    static File writeCompressedDocument(File file, String label, boolean predictor, boolean hybrid) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(latin1("%PDF-1.5\n"));
+
+        byte[] content = latin1("BT (" + label + " page 1) Tj ET");
+        long contentOffset = out.size();
+        out.write(latin1("3 0 obj\n<< /Length " + content.length + " >>\nstream\n"));
+        out.write(content);
+        out.write(latin1("\nendstream\nendobj\n"));
+
+        String pages = "<< /Type /Pages /Kids [4 0 R] /Count 1 /MediaBox [0 0 595 842] >>";
+        String catalog = "<< /Type /Catalog /Pages 1 0 R >>";
+        String page = "<< /Type /Page /Parent 1 0 R /Contents 3 0 R >>";
+        String header = "1 0 2 " + (pages.length() + 1) + " 4 " + (pages.length() + catalog.length() + 2) + "\n";
+        byte[] objects = deflate(latin1(header + pages + "\n" + catalog + "\n" + page + "\n"));
+        long objectStreamOffset = out.size();
+        out.write(latin1("5 0 obj\n<< /Type /ObjStm /N 3 /First " + header.length()
+            + " /Filter /FlateDecode /Length " + objects.length + " >>\nstream\n"));
+        out.write(objects);
+        out.write(latin1("\nendstream\nendobj\n"));
+
+        // W [1 4 2]: type, offset or object stream number, generation or index
+        long xrefOffset = out.size();
+        long[][] entries = {
+            { 0, 0, 65535 }, { 2, 5, 0 }, { 2, 5, 1 }, { 1, contentOffset, 0 }, { 2, 5, 2 },
+            { 1, objectStreamOffset, 0 }, { 1, xrefOffset, 0 },
+        };
+        ByteArrayOutputStream rows = new ByteArrayOutputStream();
+        byte[] previous = new byte[7];
+        for (long[] entry : entries) {
+            byte[] row = {
+                (byte) entry[0], (byte) (entry[1] >>> 24), (byte) (entry[1] >>> 16), (byte) (entry[1] >>> 8),
+                (byte) entry[1], (byte) (entry[2] >>> 8), (byte) entry[2],
+            };
+            if (predictor) {
+                rows.write(2);
+                for (int i = 0; i < row.length; i++) {
+                    rows.write(row[i] - previous[i]);
+                }
+                previous = row;
+            } else {
+                rows.write(row);
+            }
+        }
+        byte[] xref = deflate(rows.toByteArray());
+        out.write(latin1("6 0 obj\n<< /Type /XRef /Size 7 /W [1 4 2] /Root 2 0 R /Filter /FlateDecode "
+            + (predictor ? "/DecodeParms << /Predictor 12 /Columns 7 >> " : "") + "/Length " + xref.length + " >>\nstream\n"));
+        out.write(xref);
+        out.write(latin1("\nendstream\nendobj\n"));
+
+        long startXref = xrefOffset;
+        if (hybrid) {
+            startXref = out.size();
+            StringBuilder table = new StringBuilder("xref\n0 7\n");
+            for (long[] entry : entries) {
+                boolean inUse = entry[0] == 1;
+                table.append(String.format("%010d %05d %s \n", inUse ? entry[1] : 0, inUse ? entry[2] : 65535,
+                    inUse ? "n" : "f"));
+            }
+            table.append("trailer\n<< /Size 7 /Root 2 0 R /XRefStm ").append(xrefOffset).append(" >>\n");
+            out.write(latin1(table.toString()));
+        }
+        out.write(latin1("startxref\n" + startXref + "\n%%EOF\n"));
+
+        try (FileOutputStream fileOut = new FileOutputStream(file)) {
+            out.writeTo(fileOut);
+        }
+        return file;
+    }
+
+    private static byte[] latin1(String text) {
+        return text.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] deflate(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(out)) {
+            deflater.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void mergeKeepsPagesInInputOrder() throws Exception {
+        File a = writeDocument(tmp.newFile("a.pdf"), "A", 2);
+        File b = writeDocument(tmp.newFile("b.pdf"), "B", 3);
+        File merged = tmp.newFile("merged.pdf");
+
+        PdfMerger.Result result = PdfMerger.merge(Arrays.asList(a, b), merged);
+
+        assertEquals(5, result.pageCount);
+        assertEquals(merged.length(), result.bytes);
+        assertEquals(5, PdfMerger.countPages(merged));
+        assertEquals(Arrays.asList("A page 1", "A page 2", "B page 1", "B page 2", "B page 3"), pageLabels(merged));
+    }
+
+    @Test
+    public void mergedPagesInheritAttributesAndPointToNewRoot() throws Exception {
+        File a = writeDocument(tmp.newFile("a.pdf"), "A", 1);
+        File merged = tmp.newFile("merged.pdf");
+
+        PdfMerger.merge(Arrays.asList(a, a), merged);
+
+        try (PdfObjectReader reader = new PdfObjectReader(merged)) {
+            Map<?, ?> catalog = (Map<?, ?>) reader.resolve(reader.getTrailer().get("Root"));
+            Ref rootRef = (Ref) catalog.get("Pages");
+            Map<?, ?> root = (Map<?, ?>) reader.resolve(rootRef);
+            for (Object kid : (List<?>) root.get("Kids")) {
+                Map<?, ?> page = (Map<?, ?>) reader.resolve(kid);
+                assertEquals(rootRef, page.get("Parent"));
+                assertNotNull(page.get("MediaBox"));
+            }
+        }
+    }
+
+    @Test
+    public void literalStringsAreCopiedVerbatim() throws Exception {
+        File a = writeDocument(tmp.newFile("a.pdf"), "(nested) 1 0 R \\) text", 1);
+        File merged = tmp.newFile("merged.pdf");
+
+        PdfMerger.merge(Arrays.asList(a), merged);
+
+        assertEquals(Arrays.asList("(nested) 1 0 R \\) text page 1"), pageLabels(merged));
+    }
+
+    @Test
+    public void mergesDocumentsWithCrossReferenceAndObjectStreams() throws Exception {
+        File a = writeCompressedDocument(tmp.newFile("a.pdf"), "A", true, false);
+        File b = writeCompressedDocument(tmp.newFile("b.pdf"), "B", false, false);
+        File c = writeDocument(tmp.newFile("c.pdf"), "C", 1);
+        File merged = tmp.newFile("merged.pdf");
+
+        PdfMerger.Result result = PdfMerger.merge(Arrays.asList(a, b, c), merged);
+
+        assertEquals(3, result.pageCount);
+        assertEquals(Arrays.asList("A page 1", "B page 1", "C page 1"), pageLabels(merged));
+    }
+
+    @Test
+    public void objectAndCrossReferenceStreamsAreNotCopied() throws Exception {
+        File a = writeCompressedDocument(tmp.newFile("a.pdf"), "A", true, false);
+
+        try (PdfObjectReader reader = new PdfObjectReader(a)) {
+            // Content stream first, then the objects of the object stream in stream order
+            assertEquals(Arrays.asList(3, 1, 2, 4), reader.getObjectNumbersInFileOrder());
+            assertEquals(new Name("Page"), reader.readObject(4).dict().get("Type"));
+        }
+    }
+
+    @Test
+    public void hybridFilesResolveCompressedObjectsThroughTheStream() throws Exception {
+        File a = writeCompressedDocument(tmp.newFile("a.pdf"), "A", false, true);
+        File b = writeDocument(tmp.newFile("b.pdf"), "B", 1);
+        File merged = tmp.newFile("merged.pdf");
+
+        try (PdfObjectReader reader = new PdfObjectReader(a)) {
+            assertEquals(new Name("Page"), reader.readObject(4).dict().get("Type"));
+            assertEquals(Arrays.asList(3, 1, 2, 4), reader.getObjectNumbersInFileOrder());
+        }
+        PdfMerger.Result result = PdfMerger.merge(Arrays.asList(a, b), merged);
+
+        assertEquals(2, result.pageCount);
+        assertEquals(Arrays.asList("A page 1", "B page 1"), pageLabels(merged));
+    }
+
+    @Test
+    public void unpredictPngUndoesRowFilters() throws Exception {
+        byte[] predicted = {
+            0, 1, 2, 3,
+            1, 5, 1, 1,     // Sub: 5 6 7
+            2, 1, 1, 1,     // Up: 6 7 8
+        };
+        byte[] expected = { 1, 2, 3, 5, 6, 7, 6, 7, 8 };
+        assertArrayEquals(expected, PdfObjectReader.unpredictPng(predicted, 3, 1));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsFilesWithoutCrossReference() throws Exception {
+        File bogus = tmp.newFile("bogus.pdf");
+        try (FileOutputStream out = new FileOutputStream(bogus)) {
+            out.write("%PDF-1.4\nnot really a pdf\n".getBytes(StandardCharsets.ISO_8859_1));
+        }
+        PdfMerger.merge(Arrays.asList(bogus), tmp.newFile("out.pdf"));
+    }
+
+    private static List<String> pageLabels(File file) throws IOException {
+        List<String> labels = new ArrayList<>();
+        try (PdfObjectReader reader = new PdfObjectReader(file)) {
+            Map<?, ?> catalog = (Map<?, ?>) reader.resolve(reader.getTrailer().get("Root"));
+            Map<?, ?> root = (Map<?, ?>) reader.resolve(catalog.get("Pages"));
+            for (Object kid : (List<?>) root.get("Kids")) {
+                Map<?, ?> page = (Map<?, ?>) reader.resolve(kid);
+                PdfObject content = reader.readObject(((Ref) page.get("Contents")).num);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                reader.copyStream(content.streamOffset, content.streamLength, out);
+                String text = new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+                labels.add(text.substring("BT (".length(), text.length() - ") Tj ET".length()));
+            }
+        }
+        return labels;
+    }
+}
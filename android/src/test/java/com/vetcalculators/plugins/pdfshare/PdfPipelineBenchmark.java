@@ -0,0 +1,189 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import com.vetcalculators.plugins.pdfshare.PdfObjectReader.Name;
+import com.vetcalculators.plugins.pdfshare.PdfObjectReader.Ref;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Encode path of long reports on synthetic multi-page content: serializing pages,
+ * concatenating streamed page chunks and the image optimization pass. Drawing into a
+ * PdfDocument needs a device, so the pages are written with PdfObjectWriter instead.
+ * Run with {@code ./gradlew testDebugUnitTest --tests '*Benchmark' -Pbenchmark}.
+ */
+public class PdfPipelineBenchmark {
+
+    private static final int PAGES = 50;
+    private static final int ROWS_PER_PAGE = 60;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Before
+    public void enabled() {
+        assumeTrue(MicroBenchmark.ENABLED);
+    }
+
+    /**
+     * Discards everything, so only the encoding is measured
+     */
+    private static final OutputStream NULL_OUTPUT = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    /**
+     * Flate-compressed content stream with a table of dosage rows, like a captured report page
+     */
+    private static byte[] pageContent(int page) throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int row = 0; row < ROWS_PER_PAGE; row++) {
+            content.append("BT /F1 10 Tf 50 ").append(800 - row * 12).append(" Td (Page ").append(page)
+                .append(" row ").append(row).append(": Amoxicillin 12.5 mg/kg q12h PO) Tj ET\n");
+            content.append("0.8 g 50 ").append(796 - row * 12).append(" 495 0.5 re f\n");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(out)) {
+            deflater.write(content.toString().getBytes(StandardCharsets.ISO_8859_1));
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Write {@code pageCount} pages starting at {@code firstPage}; with {@code imageSize} > 0
+     * every page also shows its own Flate RGB image of that many pixels square
+     */
+    private static void writeDocument(OutputStream output, int firstPage, int pageCount, int imageSize) throws IOException {
+        try (PdfObjectWriter writer = new PdfObjectWriter(output)) {
+            writer.writeHeader();
+            List<Object> kids = new ArrayList<>();
+            int num = 3;
+            for (int i = 0; i < pageCount; i++) {
+                Map<String, Object> resources = new LinkedHashMap<>();
+                byte[] content = pageContent(firstPage + i);
+                if (imageSize > 0) {
+                    byte[] pixels = new byte[imageSize * imageSize * 3];
+                    for (int p = 0; p < pixels.length; p++) {
+                        pixels[p] = (byte) (p * 31 + i);
+                    }
+                    ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+                    try (DeflaterOutputStream deflater = new DeflaterOutputStream(deflated)) {
+                        deflater.write(pixels);
+                    }
+                    byte[] imageData = deflated.toByteArray();
+                    Map<String, Object> image = new LinkedHashMap<>();
+                    image.put("Type", new Name("XObject"));
+                    image.put("Subtype", new Name("Image"));
+                    image.put("Width", (long) imageSize);
+                    image.put("Height", (long) imageSize);
+                    image.put("ColorSpace", new Name("DeviceRGB"));
+                    image.put("BitsPerComponent", 8L);
+                    image.put("Filter", new Name("FlateDecode"));
+                    writer.writeStreamObject(num, image, imageData.length, PdfObjectWriter.IDENTITY, out -> out.write(imageData));
+                    Map<String, Object> xObjects = new LinkedHashMap<>();
+                    xObjects.put("Im1", new Ref(num, 0));
+                    resources.put("XObject", xObjects);
+                    num++;
+
+                    ByteArrayOutputStream withImage = new ByteArrayOutputStream();
+                    try (DeflaterOutputStream deflater = new DeflaterOutputStream(withImage)) {
+                        deflater.write("q 200 0 0 200 50 50 cm /Im1 Do Q\n".getBytes(StandardCharsets.ISO_8859_1));
+                    }
+                    content = withImage.toByteArray();
+                }
+
+                Map<String, Object> stream = new LinkedHashMap<>();
+                stream.put("Filter", new Name("FlateDecode"));
+                byte[] data = content;
+                writer.writeStreamObject(num, stream, data.length, PdfObjectWriter.IDENTITY, out -> out.write(data));
+
+                Map<String, Object> page = new LinkedHashMap<>();
+                page.put("Type", new Name("Page"));
+                page.put("Parent", new Ref(1, 0));
+                page.put("Resources", resources);
+                page.put("Contents", new Ref(num, 0));
+                writer.writeObject(num + 1, page, PdfObjectWriter.IDENTITY);
+                kids.add(new Ref(num + 1, 0));
+                num += 2;
+            }
+
+            Map<String, Object> pages = new LinkedHashMap<>();
+            pages.put("Type", new Name("Pages"));
+            pages.put("Kids", kids);
+            pages.put("Count", (long) pageCount);
+            pages.put("MediaBox", new ArrayList<>(Arrays.asList(0L, 0L, 595L, 842L)));
+            writer.writeObject(1, pages, PdfObjectWriter.IDENTITY);
+
+            Map<String, Object> catalog = new LinkedHashMap<>();
+            catalog.put("Type", new Name("Catalog"));
+            catalog.put("Pages", new Ref(1, 0));
+            writer.writeObject(2, catalog, PdfObjectWriter.IDENTITY);
+
+            writer.finish(num, new Ref(2, 0), null);
+        }
+    }
+
+    @Test
+    public void encodeMultiPageDocument() throws Exception {
+        MicroBenchmark.run("encode-" + PAGES + "-pages", 5, 20, PAGES, () -> () -> writeDocument(NULL_OUTPUT, 1, PAGES, 0));
+    }
+
+    @Test
+    public void mergeStreamedPageChunks() throws Exception {
+        // The chunks StreamingPageSink leaves on disk, one page each
+        List<File> chunks = new ArrayList<>();
+        for (int i = 0; i < PAGES; i++) {
+            File chunk = tmp.newFile("page-" + (i + 1) + ".pdf");
+            try (FileOutputStream out = new FileOutputStream(chunk)) {
+                writeDocument(out, i + 1, 1, 0);
+            }
+            chunks.add(chunk);
+        }
+
+        MicroBenchmark.Result result = MicroBenchmark.run("mergeChunks-" + PAGES + "-pages", 5, 20, PAGES,
+            () -> () -> assertEquals(PAGES, PdfMerger.merge(chunks, NULL_OUTPUT).pageCount));
+        assertTrue(result.p50Nanos > 0);
+    }
+
+    @Test
+    public void optimizeImages() throws Exception {
+        int pages = 10;
+        File input = tmp.newFile("images.pdf");
+        try (FileOutputStream out = new FileOutputStream(input)) {
+            writeDocument(out, 1, pages, 600);
+        }
+        File output = tmp.newFile("optimized.pdf");
+        // Stands in for Bitmap.compress, which needs a device
+        byte[] jpeg = new byte[16 * 1024];
+        PdfImageOptimizer.ImageEncoder encoder = (image, width, height, quality) -> jpeg;
+
+        MicroBenchmark.run("optimizeImages-" + pages + "-pages", 2, 10, pages, () -> () -> {
+            PdfImageOptimizer.Result result = PdfImageOptimizer.optimize(input, output, 150, 80, encoder);
+            assertEquals(pages, result.images);
+        });
+    }
+}
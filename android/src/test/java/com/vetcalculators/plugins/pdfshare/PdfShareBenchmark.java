@@ -0,0 +1,77 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * File naming and cache cleanup over large synthetic cache dirs.
+ * Run with {@code ./gradlew testDebugUnitTest --tests '*Benchmark' -Pbenchmark}.
+ */
+public class PdfShareBenchmark {
+
+    private static final int CACHE_FILES = 2000;
+    private static final long HOUR_MS = 60 * 60 * 1000;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Before
+    public void enabled() {
+        assumeTrue(MicroBenchmark.ENABLED);
+    }
+
+    /**
+     * A cache dir with {@code count} small PDFs, every other one older than an hour, plus
+     * unrelated files the cleanup must skip
+     */
+    private File syntheticCacheDir(int count) throws IOException {
+        File dir = tmp.newFolder();
+        long now = System.currentTimeMillis();
+        byte[] content = new byte[4 * 1024];
+        for (int i = 0; i < count; i++) {
+            File pdf = new File(dir, "veterinary-dosage_" + i + ".pdf");
+            try (FileOutputStream out = new FileOutputStream(pdf)) {
+                out.write(content);
+            }
+            assertTrue(pdf.setLastModified(i % 2 == 0 ? now - 2 * HOUR_MS - i : now - 2 * 60 * 1000 - i));
+            if (i % 10 == 0) {
+                assertTrue(new File(dir, "other_" + i + ".tmp").createNewFile());
+            }
+        }
+        return dir;
+    }
+
+    @Test
+    public void generateFileName() throws Exception {
+        int ops = 10000;
+        MicroBenchmark.run("generateFileName", 20, 50, ops, () -> () -> {
+            for (int i = 0; i < ops; i++) {
+                PdfShare.generateFileName("veterinary-dosage");
+            }
+        });
+    }
+
+    @Test
+    public void janitorSweepWithBudgets() throws Exception {
+        // First sweep adopts the directory, later ones only read the index
+        MicroBenchmark.run("janitorSweep-" + CACHE_FILES, 1, 5, 1, () -> {
+            File dir = syntheticCacheDir(CACHE_FILES);
+            CacheJanitor janitor = new CacheJanitor(dir,
+                new CacheJanitor.Limits(HOUR_MS, 2 * 1024 * 1024, 50, 0));
+            return () -> {
+                janitor.sweep();
+                janitor.sweep();
+                janitor.shutdown();
+            };
+        });
+    }
+}
@@ -0,0 +1,57 @@
+package com.vetcalculators.plugins.pdfshare;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class RollingSamplesTest {
+
+    @Test
+    public void emptyWindowReportsZero() {
+        RollingSamples samples = new RollingSamples(10);
+        long[] sorted = samples.sorted();
+
+        assertEquals(0, samples.size());
+        assertEquals(0, RollingSamples.percentile(sorted, 50));
+        assertEquals(0, RollingSamples.mean(sorted));
+    }
+
+    @Test
+    public void percentilesUseNearestRank() {
+        RollingSamples samples = new RollingSamples(100);
+        // Added out of order on purpose
+        for (int i = 100; i >= 1; i--) {
+            samples.add(i);
+        }
+        long[] sorted = samples.sorted();
+
+        assertEquals(1, RollingSamples.percentile(sorted, 0));
+        assertEquals(50, RollingSamples.percentile(sorted, 50));
+        assertEquals(90, RollingSamples.percentile(sorted, 90));
+        assertEquals(99, RollingSamples.percentile(sorted, 99));
+        assertEquals(100, RollingSamples.percentile(sorted, 100));
+        assertEquals(51, RollingSamples.mean(sorted));
+    }
+
+    @Test
+    public void keepsOnlyTheMostRecentValues() {
+        RollingSamples samples = new RollingSamples(3);
+        samples.add(1000);
+        samples.add(1);
+        samples.add(2);
+        samples.add(3);
+
+        assertEquals(3, samples.size());
+        assertArrayEquals(new long[] { 1, 2, 3 }, samples.sorted());
+    }
+
+    @Test
+    public void clearEmptiesTheWindow() {
+        RollingSamples samples = new RollingSamples(3);
+        samples.add(5);
+        samples.clear();
+        samples.add(7);
+
+        assertArrayEquals(new long[] { 7 }, samples.sorted());
+    }
+}
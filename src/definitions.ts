@@ -1,6 +1,10 @@
+import type { PluginListenerHandle } from '@capacitor/core';
+
 export interface PdfShareOptions {
   /**
-   * HTML element ID to convert to PDF. Defaults to 'printPage'
+   * HTML element ID to convert to PDF. Defaults to 'printPage'.
+   * On Android a page without the default element is captured whole, and
+   * renderMode 'print' always prints the whole document
    */
   elementId?: string;
 
@@ -35,7 +39,8 @@ export interface PdfShareOptions {
   };
 
   /**
-   * Image quality (0.1 to 1.0). Defaults to 0.98
+   * Image quality (0.1 to 1.0). Defaults to 0.98.
+   * On Android in raster mode it further reduces the raster density.
    */
   quality?: number;
 
@@ -45,9 +50,87 @@ export interface PdfShareOptions {
   includeBackground?: boolean;
 
   /**
-   * Scale factor for rendering. Defaults to 2
+   * Scale factor for rendering. Defaults to 2.
+   * On Android in raster mode it is the raster density in pixels per point (1 = 72 dpi).
    */
   scale?: number;
+
+  /**
+   * How the Android engine draws the page. 'vector' draws the WebView straight into the PDF,
+   * 'raster' renders bitmaps at the resolution given by `scale` and `quality`, trading
+   * sharpness for smaller files and faster generation. 'print' lets the WebView print the
+   * document itself with its print CSS: selectable text, real page breaks and the smallest
+   * files for text-heavy reports; on devices where the print adapter cannot be driven
+   * without the system print UI it falls back to 'raster'. Defaults to 'vector'
+   */
+  renderMode?: 'vector' | 'raster' | 'print';
+
+  /**
+   * Stream pages to disk as they are captured so peak memory stays bounded by one page,
+   * for very long reports (Android only). Defaults to false
+   */
+  streaming?: boolean;
+
+  /**
+   * Serialize captured pages on several threads (plugin config `parallelism`) while the
+   * capture continues, then join them in page order. Mostly pays off for long raster
+   * documents; takes precedence over `streaming` (Android only). Defaults to false
+   */
+  parallel?: boolean;
+
+  /**
+   * Identifies a document that is exported repeatedly, e.g. 'dosage-sheet'. Pages whose
+   * content is identical to a page of the previous export of this key reuse its stored
+   * copy: raster pages are compared by their exact pixels and skip encoding, vector pages
+   * by their encoded bytes. Stored pages age out with the cache limits. Takes precedence
+   * over `parallel` and `streaming`; ignored with renderMode 'print' (Android only)
+   */
+  documentKey?: string;
+
+  /**
+   * Reuse the previous PDF when the page content and options are identical (Android only).
+   * Defaults to false
+   */
+  cache?: boolean;
+
+  /**
+   * Downsample embedded images to `imageDpi` and recompress them as JPEG with a quality
+   * derived from `quality`, keeping the result only if it is smaller (Android only).
+   * Defaults to false
+   */
+  optimizeImages?: boolean;
+
+  /**
+   * Target resolution of images at their printed size when `optimizeImages` is set.
+   * Defaults to 150
+   */
+  imageDpi?: number;
+
+  /**
+   * Writable content:// URI to write the PDF to instead of the app cache, e.g. a document
+   * picked with the Storage Access Framework. The result `path` is this URI (Android only)
+   */
+  destinationUri?: string;
+
+  /**
+   * With `share`, hand the share target a URI that streams the PDF as it is read instead
+   * of writing a file first. Every read encodes the whole document again, and the captured
+   * pages stay in memory until the URI expires after 10 minutes. Ignored with renderMode
+   * 'print', `cache` and `optimizeImages` do not apply (Android only). Defaults to false
+   */
+  streamShare?: boolean;
+
+  /**
+   * ID for `cancelGeneration` and `generationProgress` events; must not be in use by a
+   * running generation. Defaults to a generated ID (Android only)
+   */
+  jobId?: string;
+
+  /**
+   * Reject with a timeout error if the PDF is not ready after this many milliseconds, 0 for
+   * no deadline. Defaults to the plugin config `generationTimeoutSeconds` (120 s) (Android only)
+   */
+  timeoutMs?: number;
 }
 
 export interface PdfShareResult {
@@ -56,6 +139,17 @@ export interface PdfShareResult {
    */
   success: boolean;
 
+  /**
+   * ID of the generation job (Android only)
+   */
+  jobId?: string;
+
+  /**
+   * True when this call was identical to one still waiting for the WebView and shares its
+   * PDF and `jobId` instead of capturing the page again (Android only)
+   */
+  coalesced?: boolean;
+
   /**
    * File path or URL (web only)
    */
@@ -70,6 +164,669 @@ export interface PdfShareResult {
    * Success message with details about the operation
    */
   message?: string;
+
+  /**
+   * Number of pages in the generated PDF (Android only)
+   */
+  pageCount?: number;
+
+  /**
+   * Size of the written PDF in bytes (Android only)
+   */
+  bytes?: number;
+
+  /**
+   * Per-stage timings of the generation pipeline (Android only)
+   */
+  timings?: PdfShareTimings;
+
+  /**
+   * Peak process memory observed during generation (Android only)
+   */
+  peakMemory?: PdfShareMemory;
+
+  /**
+   * Render cache outcome and counters, when `cache` was requested (Android only)
+   */
+  cache?: PdfShareCacheStats & { hit: boolean };
+
+  /**
+   * Tile bitmap usage of raster captures (Android only)
+   */
+  tiles?: PdfShareTileStats;
+
+  /**
+   * Outcome of `optimizeImages` (Android only)
+   */
+  imageOptimization?: PdfShareImageStats;
+
+  /**
+   * Pages reused from the previous export of the `documentKey` (Android only)
+   */
+  pagesReused?: number;
+
+  /**
+   * Encode stats of a `parallel` capture (Android only)
+   */
+  parallel?: PdfShareParallelStats;
+
+  /**
+   * Print style changes applied to the app's WebView before capturing, absent for offscreen
+   * and cached PDFs or if the page did not answer (Android only)
+   */
+  printStyles?: PdfSharePrintStyles;
+}
+
+export interface PdfShareParallelStats {
+  /**
+   * Pages encoded at once
+   */
+  parallelism: number;
+
+  pages: number;
+
+  /**
+   * Encode time summed over all pages, i.e. what encoding them one by one would take
+   */
+  busyMs: number;
+
+  /**
+   * Elapsed time from the first page encode starting to the last one finishing
+   */
+  wallMs: number;
+
+  /**
+   * busyMs / wallMs
+   */
+  speedup: number;
+}
+
+export interface PdfSharePrintStyles {
+  /**
+   * Style properties changed, all restored after the capture
+   */
+  changes: number;
+
+  /**
+   * `.hidden-print` elements hidden
+   */
+  hidden: number;
+
+  /**
+   * Dark mode elements recolored for print
+   */
+  recolored: number;
+
+  /**
+   * Whether the scrolling capture element was expanded to its full height
+   */
+  expanded: boolean;
+}
+
+export interface PdfShareImageStats {
+  /**
+   * PDF size before the optimization
+   */
+  bytesBefore: number;
+
+  /**
+   * PDF size after the optimization (unchanged if it did not help)
+   */
+  bytesAfter: number;
+
+  /**
+   * Images found in the PDF
+   */
+  images: number;
+
+  /**
+   * Images downsampled or recompressed
+   */
+  imagesOptimized: number;
+}
+
+export interface PdfShareTileStats {
+  /**
+   * Tile edge in bitmap pixels (plugin config `rasterTileSize`)
+   */
+  tileSize: number;
+
+  /**
+   * Idle tiles kept for reuse (plugin config `rasterTilePoolSize`)
+   */
+  poolSize: number;
+
+  /**
+   * Tiles drawn into the PDF
+   */
+  tilesDrawn: number;
+
+  /**
+   * Tile bitmaps created for this PDF
+   */
+  bitmapsAllocated: number;
+
+  /**
+   * Tiles served from the pool for this PDF
+   */
+  bitmapsReused: number;
+}
+
+export interface PdfShareCacheStats {
+  /**
+   * Requests served from the cache
+   */
+  hits: number;
+
+  /**
+   * Cache-enabled requests that had to render
+   */
+  misses: number;
+
+  /**
+   * Entries dropped to stay within the budget
+   */
+  evictions: number;
+
+  /**
+   * Cached PDFs currently held
+   */
+  entries: number;
+
+  /**
+   * Total size of the cached PDFs
+   */
+  bytes: number;
+
+  /**
+   * Entry budget (plugin config `renderCacheMaxEntries`)
+   */
+  maxEntries: number;
+
+  /**
+   * Byte budget (plugin config `renderCacheMaxMegabytes`)
+   */
+  maxBytes: number;
+}
+
+export interface PdfShareMemory {
+  /**
+   * Peak Java heap in use
+   */
+  javaHeapBytes: number;
+
+  /**
+   * Peak native heap in use (holds the PDF page recordings)
+   */
+  nativeHeapBytes: number;
+
+  /**
+   * Growth of the Java heap over the start of the job
+   */
+  javaHeapDeltaBytes: number;
+
+  /**
+   * Growth of the native heap over the start of the job
+   */
+  nativeHeapDeltaBytes: number;
+}
+
+export interface PdfShareTimings {
+  /**
+   * Time spent waiting for the main thread and for earlier captures of the app's WebView
+   */
+  queueMs?: number;
+
+  /**
+   * Time spent hashing the page for the render cache (main thread)
+   */
+  hashMs?: number;
+
+  /**
+   * Time spent loading HTML into the offscreen WebView (main thread)
+   */
+  loadMs?: number;
+
+  /**
+   * Time spent preparing the page styles (main thread)
+   */
+  prepareMs?: number;
+
+  /**
+   * Time spent drawing the WebView into the PDF (main thread)
+   */
+  captureMs?: number;
+
+  /**
+   * Time spent laying out and drawing a template (background thread)
+   */
+  layoutMs?: number;
+
+  /**
+   * Time spent waiting for the background writer
+   */
+  handoffMs?: number;
+
+  /**
+   * Time spent serializing the PDF (background thread)
+   */
+  encodeMs?: number;
+
+  /**
+   * Time spent copying content:// inputs of `mergePdfs` to the cache (background thread)
+   */
+  copyMs?: number;
+
+  /**
+   * Time spent concatenating page chunks (streaming and parallel modes) or the
+   * `mergePdfs` inputs
+   */
+  mergeMs?: number;
+
+  /**
+   * Time spent writing the PDF to disk (background thread)
+   */
+  writeMs?: number;
+
+  /**
+   * Time spent optimizing images (background thread)
+   */
+  optimizeMs?: number;
+
+  /**
+   * Time spent starting the share sheet (main thread)
+   */
+  shareMs?: number;
+
+  /**
+   * Total time from the native call to the written file
+   */
+  totalMs: number;
+}
+
+export interface PdfStatSummary {
+  /**
+   * Samples in the window
+   */
+  count: number;
+  min: number;
+  mean: number;
+  p50: number;
+  p90: number;
+  p95: number;
+  p99: number;
+  max: number;
+}
+
+export interface PdfShareStats {
+  /**
+   * Jobs that produced a PDF since the last reset, including cache hits
+   */
+  completed: number;
+
+  /**
+   * Jobs that failed
+   */
+  failed: number;
+
+  /**
+   * Jobs that were cancelled or timed out
+   */
+  cancelled: number;
+
+  /**
+   * Jobs served from the render cache
+   */
+  cacheHits: number;
+
+  /**
+   * Number of most recent jobs the summaries cover (plugin config `statsWindow`)
+   */
+  window: number;
+
+  /**
+   * Duration summaries per stage, keyed like `PdfShareTimings`
+   */
+  stages: { [stage: string]: PdfStatSummary };
+
+  totalMs: PdfStatSummary;
+
+  bytes: PdfStatSummary;
+
+  pageCount: PdfStatSummary;
+
+  peakJavaHeapBytes: PdfStatSummary;
+
+  peakNativeHeapBytes: PdfStatSummary;
+
+  /**
+   * Jobs waiting for the app's WebView right now
+   */
+  queuedCaptures: number;
+
+  /**
+   * Jobs running right now
+   */
+  activeJobs: number;
+}
+
+export interface PdfWarmUpResult {
+  /**
+   * Time spent loading the PDF backend and fonts; 0 if they were already loaded
+   */
+  pipelineMs?: number;
+
+  /**
+   * Time spent installing the print style helpers into the page
+   */
+  scriptsMs?: number;
+
+  /**
+   * Time spent starting an offscreen WebView, only with `offscreen: true`
+   */
+  offscreenMs?: number;
+}
+
+export interface PdfTemplateOptions extends PdfShareOptions {
+  /**
+   * Document to lay out natively. `elementId`, `renderMode` and `cache` do not apply
+   */
+  template: PdfTemplate;
+
+  /**
+   * Open the share sheet for the generated PDF. Defaults to false
+   */
+  share?: boolean;
+}
+
+export interface PdfTemplate {
+  /**
+   * Blocks in reading order, broken across pages where they no longer fit
+   */
+  blocks: PdfTemplateBlock[];
+
+  /**
+   * Body text size in points; headings and tables scale from it. Defaults to 10
+   */
+  fontSize?: number;
+
+  /**
+   * Drawn at the bottom of every page, '{page}' is replaced by the page number
+   */
+  footer?: string;
+}
+
+export type PdfTemplateBlock =
+  | { type: 'heading'; text: string; level?: 1 | 2 | 3 }
+  | { type: 'text'; text: string }
+  | {
+      type: 'keyValue';
+      rows: { label: string; value: string }[];
+      /**
+       * Share of the width taken by the labels, 0.1 to 0.9. Defaults to 0.35
+       */
+      labelWidth?: number;
+    }
+  | {
+      type: 'table';
+      columns: string[];
+      rows: string[][];
+      /**
+       * Relative column widths, equal if omitted
+       */
+      widths?: number[];
+    }
+  | { type: 'divider' }
+  | { type: 'spacer'; height?: number };
+
+export interface PdfHtmlOptions extends PdfShareOptions {
+  /**
+   * HTML to render. Relative URLs resolve against the app's web bundle
+   */
+  html?: string;
+
+  /**
+   * Page of the app's web bundle to render instead of `html`,
+   * e.g. 'reports/daily.html'
+   */
+  url?: string;
+
+  /**
+   * Open the share sheet for the generated PDF. Defaults to false
+   */
+  share?: boolean;
+}
+
+export interface PdfBatchJob extends PdfShareOptions {
+  /**
+   * HTML to render in an offscreen WebView instead of capturing the current page.
+   * Defaults to capturing the current page
+   */
+  html?: string;
+
+  /**
+   * Page of the app's web bundle to render in an offscreen WebView instead of `html`
+   */
+  url?: string;
+}
+
+export interface PdfBatchOptions {
+  /**
+   * Documents to generate, in order
+   */
+  jobs: PdfBatchJob[];
+
+  /**
+   * ID for `cancelGeneration` and progress events. Defaults to a generated ID
+   */
+  batchId?: string;
+
+  /**
+   * Combine all documents into one PDF and delete the individual files. Defaults to false
+   */
+  merge?: boolean;
+
+  /**
+   * Name of the merged PDF, and prefix of jobs without their own filename.
+   * Defaults to 'veterinary-dosage'
+   */
+  filename?: string;
+
+  /**
+   * Documents encoded and written in parallel (1 to 4). Defaults to 2
+   */
+  concurrency?: number;
+}
+
+export interface PdfBatchItemResult {
+  /**
+   * Position of the job in `jobs`
+   */
+  index: number;
+
+  /**
+   * Whether this document was generated
+   */
+  success: boolean;
+
+  /**
+   * File path of the document (omitted when merged)
+   */
+  path?: string;
+
+  /**
+   * Number of pages in the document
+   */
+  pageCount?: number;
+
+  /**
+   * Size of the document in bytes
+   */
+  bytes?: number;
+
+  /**
+   * Error message if this document failed
+   */
+  error?: string;
+}
+
+export interface PdfBatchResult {
+  /**
+   * Whether every document was generated
+   */
+  success: boolean;
+
+  /**
+   * Identifies the batch in progress events
+   */
+  batchId: string;
+
+  /**
+   * Paths of the generated documents in job order, or the merged PDF alone
+   */
+  paths: string[];
+
+  /**
+   * Merged PDF path, when `merge` was requested
+   */
+  path?: string;
+
+  /**
+   * Per-job outcome in job order
+   */
+  items: PdfBatchItemResult[];
+
+  /**
+   * Number of failed jobs
+   */
+  failed: number;
+
+  /**
+   * Time spent rendering all jobs and merging them
+   */
+  timings: { renderMs?: number; mergeMs?: number; totalMs: number };
+}
+
+export interface PdfBatchProgress {
+  batchId: string;
+
+  /**
+   * Jobs finished so far, including this one
+   */
+  completed: number;
+
+  total: number;
+
+  item: PdfBatchItemResult;
+}
+
+export interface PdfMergeOptions {
+  /**
+   * PDFs to concatenate, in order: file paths, file:// or content:// URIs
+   */
+  paths: string[];
+
+  /**
+   * Prefix of the merged file name in the cache directory. Defaults to 'merged'
+   */
+  filename?: string;
+
+  /**
+   * content:// URI to write the merged PDF to instead of the cache directory,
+   * e.g. from a document picker
+   */
+  destinationUri?: string;
+
+  /**
+   * Open the share sheet with the merged PDF. Defaults to false
+   */
+  share?: boolean;
+}
+
+export interface PdfPreviewOptions {
+  /**
+   * Path of a written PDF, e.g. the `path` returned by `generatePdfOnly`
+   */
+  path: string;
+
+  /**
+   * Pages to render, 1-based. Defaults to [1]
+   */
+  pages?: number[];
+
+  /**
+   * Thumbnail width in pixels (16 to 2048); the height follows the page. Defaults to 240
+   */
+  width?: number;
+
+  /**
+   * Defaults to 'webp'
+   */
+  format?: 'webp' | 'jpeg';
+
+  /**
+   * Encoder quality (1 to 100). Defaults to 80
+   */
+  quality?: number;
+}
+
+export interface PdfPreview {
+  page: number;
+
+  /**
+   * Thumbnail file path, displayable with `Capacitor.convertFileSrc`
+   */
+  path: string;
+
+  width: number;
+  height: number;
+
+  /**
+   * Served from the thumbnail cache without rendering
+   */
+  cached: boolean;
+}
+
+export interface PdfPreviewResult {
+  /**
+   * One thumbnail per requested page, in request order
+   */
+  previews: PdfPreview[];
+
+  /**
+   * Time spent looking up, rendering and encoding the thumbnails
+   */
+  renderMs: number;
+
+  /**
+   * Thumbnail cache counters since launch; the cache size is set by the plugin config
+   * `previewCacheMegabytes` (default 20)
+   */
+  cache: { hits: number; misses: number; bitmapAllocations: number };
+}
+
+export interface PdfGenerationProgress {
+  jobId: string;
+
+  /**
+   * 'capture' after each page is drawn, 'write' while the PDF is written
+   */
+  stage: 'capture' | 'write';
+
+  /**
+   * Pages drawn so far
+   */
+  pagesRendered: number;
+
+  /**
+   * Pages in the document
+   */
+  pageCount: number;
+
+  /**
+   * Bytes written so far (write stage)
+   */
+  bytesWritten: number;
 }
 
 export enum PdfShareError {
@@ -96,4 +853,85 @@ export interface PdfSharePlugin {
    * Share an existing PDF file
    */
   shareExistingPdf(options: { path: string; title?: string }): Promise<PdfShareResult>;
-}
\ No newline at end of file
+
+  /**
+   * Render page thumbnails of a written PDF off the UI thread. Thumbnails are cached on disk
+   * by file path, modification time and size, so repeated previews are instant (Android only)
+   */
+  renderPreview(options: PdfPreviewOptions): Promise<PdfPreviewResult>;
+
+  /**
+   * Hit/miss counters and size of the render cache (Android only)
+   */
+  getRenderCacheStats(): Promise<PdfShareCacheStats>;
+
+  /**
+   * Drop all cached renders, `documentKey` pages and preview thumbnails and delete their
+   * files (Android only)
+   */
+  clearRenderCache(): Promise<void>;
+
+  /**
+   * Generate a PDF from an HTML string or bundled page in an offscreen WebView,
+   * without touching the current page (Android only)
+   */
+  generateFromHtml(options: PdfHtmlOptions): Promise<PdfShareResult>;
+
+  /**
+   * Generate a PDF from a structured document (headings, text, key/value rows, tables) drawn
+   * natively on a background thread, without any WebView (Android only)
+   */
+  generateFromTemplate(options: PdfTemplateOptions): Promise<PdfShareResult>;
+
+  /**
+   * Generate several PDFs in one native call, optionally merged into one (Android only)
+   */
+  generateBatch(options: PdfBatchOptions): Promise<PdfBatchResult>;
+
+  /**
+   * Concatenate existing PDFs into one without re-rendering them: objects are copied across
+   * and only the page tree and cross-reference table are rewritten (Android only)
+   */
+  mergePdfs(options: PdfMergeOptions): Promise<PdfShareResult>;
+
+  /**
+   * Rolling per-stage timings, sizes and peak memory of the most recent jobs. With the plugin
+   * config `traceSections` the stages are also emitted as system trace sections (Android only)
+   */
+  getStats(): Promise<PdfShareStats>;
+
+  /**
+   * Forget the recorded jobs (Android only)
+   */
+  resetStats(): Promise<void>;
+
+  /**
+   * Load the PDF pipeline and install the print style helpers ahead of the first export,
+   * optionally starting an offscreen WebView too. The plugin config `warmUpOnIdle` does
+   * this automatically once the app is idle after launch (Android only)
+   */
+  warmUp(options?: { offscreen?: boolean }): Promise<PdfWarmUpResult>;
+
+  /**
+   * Cancel a running generation or batch. A generation rejects with 'Generation cancelled',
+   * a batch resolves with its unfinished items failed as 'Batch cancelled'. Resolves
+   * `cancelled: false` if nothing with this ID is running (Android only)
+   */
+  cancelGeneration(options: { jobId: string }): Promise<{ cancelled: boolean }>;
+
+  /**
+   * Listen for each finished job of a running batch (Android only)
+   */
+  addListener(
+    eventName: 'batchProgress',
+    listenerFunc: (progress: PdfBatchProgress) => void,
+  ): Promise<PluginListenerHandle>;
+
+  /**
+   * Listen for pages drawn and bytes written by running generations (Android only)
+   */
+  addListener(
+    eventName: 'generationProgress',
+    listenerFunc: (progress: PdfGenerationProgress) => void,
+  ): Promise<PluginListenerHandle>;
+}
@@ -1,7 +1,15 @@
 import { WebPlugin } from '@capacitor/core';
 // @ts-ignore
 import html2pdf from 'html2pdf.js';
-import type { PdfShareOptions, PdfShareResult } from './definitions';
+import type {
+  PdfBatchResult,
+  PdfPreviewResult,
+  PdfShareCacheStats,
+  PdfShareOptions,
+  PdfShareResult,
+  PdfShareStats,
+  PdfWarmUpResult,
+} from './definitions';
 
 export class PdfShareWeb extends WebPlugin {
   private originalElementStates: Map<Element, { display: string; visibility: string }> = new Map();
@@ -334,6 +342,50 @@ export class PdfShareWeb extends WebPlugin {
     }
   }
 
+  async getRenderCacheStats(): Promise<PdfShareCacheStats> {
+    throw this.unimplemented('Render cache is not available on web.');
+  }
+
+  async clearRenderCache(): Promise<void> {
+    throw this.unimplemented('Render cache is not available on web.');
+  }
+
+  async generateFromHtml(): Promise<PdfShareResult> {
+    throw this.unimplemented('Offscreen rendering is not available on web.');
+  }
+
+  async generateFromTemplate(): Promise<PdfShareResult> {
+    throw this.unimplemented('Template rendering is not available on web.');
+  }
+
+  async generateBatch(): Promise<PdfBatchResult> {
+    throw this.unimplemented('Batch generation is not available on web.');
+  }
+
+  async renderPreview(): Promise<PdfPreviewResult> {
+    throw this.unimplemented('Previews are not available on web.');
+  }
+
+  async mergePdfs(): Promise<PdfShareResult> {
+    throw this.unimplemented('Merging PDFs is not available on web.');
+  }
+
+  async getStats(): Promise<PdfShareStats> {
+    throw this.unimplemented('Pipeline stats are not available on web.');
+  }
+
+  async resetStats(): Promise<void> {
+    throw this.unimplemented('Pipeline stats are not available on web.');
+  }
+
+  async cancelGeneration(): Promise<{ cancelled: boolean }> {
+    throw this.unimplemented('Cancelling generations is not available on web.');
+  }
+
+  async warmUp(): Promise<PdfWarmUpResult> {
+    throw this.unimplemented('Warm-up is not available on web.');
+  }
+
   /**
    * Apply print styles to the cloned document for PDF generation
    */